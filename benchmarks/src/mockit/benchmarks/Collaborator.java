@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.benchmarks;
+
+/**
+ * The class mocked by most benchmarks, with methods of increasing parameter count.
+ */
+public class Collaborator
+{
+   public int noArgs() { return 1; }
+
+   public int threeArgs(int i, String s, double d) { return i + s.length() + (int) d; }
+
+   @SuppressWarnings("MethodWithTooManyParameters")
+   public int tenArgs(int i, long l, double d, boolean b, char c, byte bt, short sh, float f, String s, Object o)
+   {
+      return i + (int) l + (int) d + (b ? 1 : 0) + c + bt + sh + (int) f + s.length() + o.hashCode();
+   }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.benchmarks;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import mockit.*;
+
+/**
+ * Measures the dispatch of calls to {@code MockUp} mock methods, with and without an {@link Invocation} context
+ * parameter, and when proceeding into the real implementation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MockUpDispatchBenchmark
+{
+   @State(Scope.Thread)
+   public static class PlainMockUp
+   {
+      final Collaborator collaborator = new Collaborator();
+
+      @Setup
+      public void applyMockUp()
+      {
+         new MockUp<Collaborator>() {
+            @Mock int noArgs() { return 0; }
+            @Mock int threeArgs(int i, String s, double d) { return i; }
+         };
+      }
+
+      @TearDown
+      public void tearDownMockUp() { Mockit.tearDownMocks(Collaborator.class); }
+   }
+
+   @State(Scope.Thread)
+   public static class MockUpWithInvocation
+   {
+      final Collaborator collaborator = new Collaborator();
+
+      @Setup
+      public void applyMockUp()
+      {
+         new MockUp<Collaborator>() {
+            @Mock int noArgs(Invocation inv) { return inv.getInvocationCount(); }
+            @Mock int threeArgs(Invocation inv, int i, String s, double d) { return inv.<Integer>proceed(); }
+         };
+      }
+
+      @TearDown
+      public void tearDownMockUp() { Mockit.tearDownMocks(Collaborator.class); }
+   }
+
+   @Benchmark
+   public int callMockMethodWithNoArgs(PlainMockUp state) { return state.collaborator.noArgs(); }
+
+   @Benchmark
+   public int callMockMethodWithThreeArgs(PlainMockUp state) { return state.collaborator.threeArgs(1, "two", 3.0); }
+
+   @Benchmark
+   public int callMockMethodWithInvocation(MockUpWithInvocation state) { return state.collaborator.noArgs(); }
+
+   @Benchmark
+   public int proceedIntoRealMethod(MockUpWithInvocation state)
+   {
+      return state.collaborator.threeArgs(1, "two", 3.0);
+   }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.benchmarks;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import mockit.*;
+
+/**
+ * Measures the replay of a mocked call with zero, three and ten arguments, from the call site through
+ * {@code MockedBridge} and {@code RecordAndReplayExecution} down to the matching of the recorded expectation.
+ * <p/>
+ * Each benchmark invocation corresponds to a single test, which performs {@link #CALLS_PER_TEST} calls; the recording
+ * of expectations and the end-of-test cleanup are done outside of the measured code.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(MockedCallBenchmark.CALLS_PER_TEST)
+public class MockedCallBenchmark
+{
+   static final int CALLS_PER_TEST = 1000;
+
+   final Collaborator mock = new Collaborator();
+   final Object tenthArg = "ten";
+   private final SimulatedTest test = new SimulatedTest(this);
+
+   @Setup(Level.Invocation)
+   public void recordExpectations()
+   {
+      test.begin();
+
+      new NonStrictExpectations(mock) {{
+         mock.noArgs(); result = 0;
+         mock.threeArgs(1, "two", 3.0); result = 3;
+         mock.tenArgs(1, 2L, 3.0, true, '5', (byte) 6, (short) 7, 8.0F, "nine", tenthArg); result = 10;
+      }};
+   }
+
+   @TearDown(Level.Invocation)
+   public void endTest() { test.end(); }
+
+   @Benchmark
+   public int callWithNoArgs()
+   {
+      int sum = 0;
+
+      for (int i = 0; i < CALLS_PER_TEST; i++) {
+         sum += mock.noArgs();
+      }
+
+      return sum;
+   }
+
+   @Benchmark
+   public int callWithThreeArgs()
+   {
+      int sum = 0;
+
+      for (int i = 0; i < CALLS_PER_TEST; i++) {
+         sum += mock.threeArgs(1, "two", 3.0);
+      }
+
+      return sum;
+   }
+
+   @Benchmark
+   public int callWithTenArgs()
+   {
+      int sum = 0;
+
+      for (int i = 0; i < CALLS_PER_TEST; i++) {
+         sum += mock.tenArgs(1, 2L, 3.0, true, '5', (byte) 6, (short) 7, 8.0F, "nine", tenthArg);
+      }
+
+      return sum;
+   }
+}
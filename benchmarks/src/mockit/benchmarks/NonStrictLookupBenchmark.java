@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.benchmarks;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import mockit.*;
+
+/**
+ * Measures how the lookup of the matching non-strict expectation for a replayed call scales with the number of
+ * expectations recorded for the same method.
+ * The first and the last recorded expectations are looked up, since the search cost depends on their position.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(NonStrictLookupBenchmark.CALLS_PER_TEST)
+public class NonStrictLookupBenchmark
+{
+   static final int CALLS_PER_TEST = 1000;
+
+   @Param({"10", "100", "1000"})
+   public int expectations;
+
+   final Collaborator mock = new Collaborator();
+   private final SimulatedTest test = new SimulatedTest(this);
+
+   @Setup(Level.Invocation)
+   public void recordExpectations()
+   {
+      test.begin();
+
+      new NonStrictExpectations(mock) {{
+         for (int i = 0; i < expectations; i++) {
+            mock.threeArgs(i, "arg", 0.0); result = i;
+         }
+      }};
+   }
+
+   @TearDown(Level.Invocation)
+   public void endTest() { test.end(); }
+
+   @Benchmark
+   public int lookUpFirstRecorded()
+   {
+      int sum = 0;
+
+      for (int i = 0; i < CALLS_PER_TEST; i++) {
+         sum += mock.threeArgs(0, "arg", 0.0);
+      }
+
+      return sum;
+   }
+
+   @Benchmark
+   public int lookUpLastRecorded()
+   {
+      int last = expectations - 1;
+      int sum = 0;
+
+      for (int i = 0; i < CALLS_PER_TEST; i++) {
+         sum += mock.threeArgs(last, "arg", 0.0);
+      }
+
+      return sum;
+   }
+}
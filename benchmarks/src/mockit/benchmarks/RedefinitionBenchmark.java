@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.benchmarks;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import mockit.*;
+import mockit.internal.state.*;
+
+/**
+ * Measures the redefinition of a three-level class hierarchy followed by the restoration of the original class
+ * definitions, as happens at least once for every test which mocks such classes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedefinitionBenchmark
+{
+   public static class Base
+   {
+      protected int value;
+      public int getValue() { return value; }
+      public void setValue(int value) { this.value = value; }
+   }
+
+   public static class Middle extends Base
+   {
+      public int doubled() { return 2 * getValue(); }
+      @Override public int getValue() { return super.getValue() + 1; }
+   }
+
+   public static class Leaf extends Middle
+   {
+      private final String name;
+      public Leaf() { name = "leaf"; }
+      public String getName() { return name; }
+      @Override public int doubled() { return super.doubled() + name.length(); }
+   }
+
+   private static final Class<?>[] HIERARCHY = {Base.class, Middle.class, Leaf.class};
+
+   private final SimulatedTest test = new SimulatedTest(this);
+
+   @Setup(Level.Invocation)
+   public void beginTest() { test.begin(); }
+
+   @TearDown(Level.Invocation)
+   public void endTest() { test.end(); }
+
+   @Benchmark
+   public void stubOutAndRestoreHierarchy()
+   {
+      Mockit.stubOut(HIERARCHY);
+      Mockit.tearDownMocks(HIERARCHY);
+   }
+
+   @Benchmark
+   public void applyAndTearDownMockUpsOnHierarchy()
+   {
+      new MockUp<Base>() { @Mock int getValue() { return 1; } };
+      new MockUp<Middle>() { @Mock int doubled() { return 2; } };
+      new MockUp<Leaf>() { @Mock String getName() { return "mock"; } };
+      Mockit.tearDownMocks(HIERARCHY);
+   }
+
+   @Benchmark
+   public void mockAndRestoreHierarchyThroughRollback()
+   {
+      SavePoint savePoint = new SavePoint();
+      final Leaf leaf = new Leaf();
+
+      new NonStrictExpectations(Base.class, Middle.class, Leaf.class) {{
+         leaf.getName(); result = "mock";
+      }};
+
+      savePoint.rollback();
+   }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.benchmarks;
+
+import mockit.integration.internal.*;
+import mockit.internal.expectations.*;
+import mockit.internal.state.*;
+
+/**
+ * Brackets a unit of benchmarked work the same way the JUnit/TestNG integration brackets a test method, so that the
+ * recorded expectations, the replay log and any classes redefined during the "test" are discarded at its end.
+ * Without this, state accumulated by the mocking runtime would grow for the whole duration of a benchmark run, skewing
+ * the measurements.
+ * <p/>
+ * The benchmark instance plays the part of the test class instance: its class becomes the current test class the first
+ * time a "test" begins, which is also when its mock fields get set up, just as for a real test class.
+ */
+final class SimulatedTest extends TestRunnerDecorator
+{
+   private final Object benchmark;
+   private SavePoint savePoint;
+
+   SimulatedTest(Object benchmark) { this.benchmark = benchmark; }
+
+   void begin()
+   {
+      TestRun.enterNoMockingZone();
+
+      try {
+         updateTestClassState(benchmark, benchmark.getClass());
+         prepareForNextTest();
+         TestRun.setRunningIndividualTest(benchmark);
+      }
+      finally {
+         TestRun.exitNoMockingZone();
+      }
+
+      savePoint = new SavePoint();
+      TestRun.setSavePointForTestMethod(savePoint);
+   }
+
+   void end()
+   {
+      Error expectationsFailure = RecordAndReplayExecution.endCurrentReplayIfAny();
+      savePoint.rollback();
+      TestRun.finishCurrentTestExecution(true);
+
+      if (expectationsFailure != null) {
+         throw expectationsFailure;
+      }
+   }
+}
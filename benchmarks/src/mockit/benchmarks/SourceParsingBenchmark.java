@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.benchmarks;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import mockit.coverage.reporting.parsing.*;
+
+/**
+ * Measures the parsing of Java source files into code, comment and separator segments, as done by the coverage tool
+ * for every source file included in an HTML report.
+ * The parsed files are those of the JMockit sources themselves, found under the directory given by the
+ * "jmockit-benchmarks.sourceDir" system property, or "../main/src" by default.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SourceParsingBenchmark
+{
+   private final List<char[]> sourceFiles = new ArrayList<char[]>();
+
+   @Setup(Level.Trial)
+   public void readSourceFiles() throws IOException
+   {
+      File sourceDir = new File(System.getProperty("jmockit-benchmarks.sourceDir", "../main/src"));
+      readSourceFiles(sourceDir);
+
+      if (sourceFiles.isEmpty()) {
+         throw new IllegalStateException("No Java source files found under " + sourceDir.getAbsolutePath());
+      }
+   }
+
+   private void readSourceFiles(File dir) throws IOException
+   {
+      File[] files = dir.listFiles();
+
+      if (files == null) {
+         return;
+      }
+
+      for (File file : files) {
+         if (file.isDirectory()) {
+            readSourceFiles(file);
+         }
+         else if (file.getName().endsWith(".java")) {
+            sourceFiles.add(readChars(file));
+         }
+      }
+   }
+
+   private static char[] readChars(File file) throws IOException
+   {
+      Reader input = new FileReader(file);
+      CharArrayWriter chars = new CharArrayWriter((int) file.length());
+
+      try {
+         char[] buffer = new char[8192];
+         int charsRead;
+
+         while ((charsRead = input.read(buffer)) >= 0) {
+            chars.write(buffer, 0, charsRead);
+         }
+      }
+      finally {
+         input.close();
+      }
+
+      return chars.toCharArray();
+   }
+
+   @Benchmark
+   public int parseAllSourceFiles()
+   {
+      int linesWithCode = 0;
+
+      for (char[] sourceFile : sourceFiles) {
+         FileParser fileParser = new FileParser();
+         fileParser.setSource(sourceFile);
+
+         while (fileParser.hasMoreLines()) {
+            if (fileParser.parseNextLine()) {
+               linesWithCode++;
+            }
+         }
+      }
+
+      return linesWithCode;
+   }
+}
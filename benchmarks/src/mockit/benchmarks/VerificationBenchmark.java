@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.benchmarks;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import mockit.*;
+
+/**
+ * Measures verification blocks executed against a large replay log.
+ * The log is filled before each measured invocation, so only the verification itself is timed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VerificationBenchmark
+{
+   @Param({"1000", "10000"})
+   public int replayedCalls;
+
+   final Collaborator mock = new Collaborator();
+   private final SimulatedTest test = new SimulatedTest(this);
+
+   @Setup(Level.Invocation)
+   public void replayCalls()
+   {
+      test.begin();
+
+      new NonStrictExpectations(mock) {{
+         mock.threeArgs(anyInt, anyString, anyDouble); result = 1;
+      }};
+
+      for (int i = 0; i < replayedCalls; i++) {
+         mock.threeArgs(i, "arg", i);
+      }
+   }
+
+   @TearDown(Level.Invocation)
+   public void endTest() { test.end(); }
+
+   @Benchmark
+   public void verifyAllCallsWithMatchers()
+   {
+      new Verifications() {{
+         mock.threeArgs(anyInt, anyString, anyDouble); times = replayedCalls;
+      }};
+   }
+
+   @Benchmark
+   public void verifyLastCall()
+   {
+      final int last = replayedCalls - 1;
+
+      new Verifications() {{
+         mock.threeArgs(last, "arg", last); times = 1;
+      }};
+   }
+
+   @Benchmark
+   public void verifyFirstAndLastCallsInOrder()
+   {
+      final int last = replayedCalls - 1;
+
+      new VerificationsInOrder() {{
+         mock.threeArgs(0, "arg", 0);
+         mock.threeArgs(last, "arg", last);
+      }};
+   }
+}
@@ -0,0 +1,15 @@
+package integrationTests;
+
+public final class ClassToInstrumentOffline
+{
+   public static int compute(int x)
+   {
+      int y = new Doubler().apply(x);
+      return y < 0 ? -y : y;
+   }
+
+   public static final class Doubler
+   {
+      int apply(int x) { return 2 * x; }
+   }
+}
@@ -25,7 +25,8 @@ final class AccretionFile
    void mergeDataFromExistingFileIfAny() throws IOException
    {
       if (outputFile.exists()) {
-         CoverageData previousData = CoverageData.readDataFromFile(outputFile);
+         // Not memory mapped, since the same file gets overwritten afterwards.
+         CoverageData previousData = CoverageData.openDataFile(outputFile, false);
          newData.merge(previousData);
       }
    }
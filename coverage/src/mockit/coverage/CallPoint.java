@@ -8,13 +8,27 @@ import java.io.*;
 import java.lang.annotation.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
+import mockit.coverage.data.*;
 import mockit.internal.util.*;
 
+/**
+ * A point in a test method from which a line of production code was executed.
+ * <p/>
+ * By default, call points are found by walking the stack trace of a new {@code Throwable}.
+ * When the "jmockit-coverage-callPoints" system property is set to "testMethod", only the test method itself is
+ * captured, as informed by the JUnit/TestNG integration for the current thread; no stack trace gets filled, and the
+ * line number in the call point is not known.
+ */
 public final class CallPoint implements Serializable
 {
    private static final long serialVersionUID = 362727169057343840L;
-   private static final Map<StackTraceElement, Boolean> steCache = new HashMap<StackTraceElement, Boolean>();
+   private static final boolean TEST_METHOD_ONLY =
+      "testMethod".equals(System.getProperty("jmockit-coverage-callPoints"));
+   private static final Map<StackTraceElement, Boolean> steCache =
+      new ConcurrentHashMap<StackTraceElement, Boolean>();
+   private static final Map<Method, CallPoint> testMethodCallPoints = new ConcurrentHashMap<Method, CallPoint>();
    private static final Class<? extends Annotation> testAnnotation;
    private static final boolean checkTestAnnotationOnClass;
    private static final boolean checkIfTestCaseSubclass;
@@ -71,6 +85,46 @@ public final class CallPoint implements Serializable
 
    public StackTraceElement getStackTraceElement() { return ste; }
 
+   /**
+    * Deserialized call points are shared with the ones already in memory, as are those read from binary data files.
+    */
+   private Object readResolve() { return CoverageData.instance().getCallPoint(ste); }
+
+   @Override
+   public boolean equals(Object other)
+   {
+      return this == other || other instanceof CallPoint && ste.equals(((CallPoint) other).ste);
+   }
+
+   @Override
+   public int hashCode() { return ste.hashCode(); }
+
+   static boolean isCapturingTestMethodOnly() { return TEST_METHOD_ONLY; }
+
+   /**
+    * Returns the call point for the test method currently running in the calling thread, or {@code null} if none.
+    * The same instance is returned for all executions of production code from the same test method.
+    */
+   static CallPoint createForRunningTestMethod()
+   {
+      Method testMethod = mockit.internal.state.TestRun.getRunningTestMethod();
+
+      if (testMethod == null) {
+         return null;
+      }
+
+      CallPoint callPoint = testMethodCallPoints.get(testMethod);
+
+      if (callPoint == null) {
+         StackTraceElement ste =
+            new StackTraceElement(testMethod.getDeclaringClass().getName(), testMethod.getName(), null, -1);
+         callPoint = CoverageData.instance().getCallPoint(ste);
+         testMethodCallPoints.put(testMethod, callPoint);
+      }
+
+      return callPoint;
+   }
+
    static CallPoint create(Throwable newThrowable)
    {
       StackTrace st = new StackTrace(newThrowable);
@@ -80,7 +134,7 @@ public final class CallPoint implements Serializable
          StackTraceElement ste = st.getElement(i);
 
          if (isTestMethod(ste)) {
-            return new CallPoint(ste);
+            return CoverageData.instance().getCallPoint(ste);
          }
       }
 
@@ -89,8 +143,10 @@ public final class CallPoint implements Serializable
 
    private static boolean isTestMethod(StackTraceElement ste)
    {
-      if (steCache.containsKey(ste)){
-         return steCache.get(ste);
+      Boolean cachedResult = steCache.get(ste);
+
+      if (cachedResult != null) {
+         return cachedResult;
       }
 
       if (ste.getFileName() == null || ste.getLineNumber() < 0) {
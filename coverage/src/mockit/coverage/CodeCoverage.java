@@ -4,10 +4,12 @@
  */
 package mockit.coverage;
 
+import java.io.*;
 import java.lang.instrument.*;
 import java.security.*;
 
 import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
 import mockit.coverage.modification.*;
 import mockit.coverage.standalone.*;
 
@@ -43,18 +45,25 @@ public final class CodeCoverage implements ClassFileTransformer
       classModification = new ClassModification();
       outputGenerator = createOutputFileGenerator();
 
+      if (!standaloneMode) {
+         CoverageSnapshots.registerForTestBoundaries();
+      }
+
       Runtime.getRuntime().addShutdownHook(new Thread() {
          @Override
          public void run()
          {
             Startup.instrumentation().removeTransformer(CodeCoverage.this);
+            classModification.printClassCacheUsage();
+            ExecutionCounters.printSamplingSummary();
+            CoverageSnapshots.closeOutputFile();
 
             if (!standaloneMode) {
                if (outputGenerator.isOutputToBeGenerated()) {
                   outputGenerator.generate();
                }
 
-               new CoverageCheck().verifyThresholds();
+               new CoverageCheck().verifyThresholds(outputGenerator.getCheckResultFile());
             }
          }
       });
@@ -73,6 +82,9 @@ public final class CodeCoverage implements ClassFileTransformer
       Startup.instrumentation().addTransformer(createInStandaloneMode());
    }
 
+   public static int getClassesExamined() { return instance.classModification.getClassesExamined(); }
+   public static int getClassesSelected() { return instance.classModification.getClassesSelected(); }
+
    public static void generateOutput(boolean resetState)
    {
       instance.outputGenerator.generate();
@@ -82,6 +94,42 @@ public final class CodeCoverage implements ClassFileTransformer
       }
    }
 
+   /**
+    * Writes a snapshot of the coverage data gathered so far to a new data file in the coverage output dir, without
+    * pausing the covered code and without generating any report; in either standalone or test run mode.
+    * Reports can later be generated from one or more snapshot files by running this class as a program.
+    *
+    * @param resetState whether the counts written are to be discarded, so that each snapshot only has the executions
+    *                   since the previous one
+    *
+    * @return the data file written, named "coverage-" followed by the current time in milliseconds and ".ser"
+    */
+   public static synchronized File writeSnapshot(boolean resetState)
+   {
+      String outputDir = System.getProperty("jmockit-coverage-outputDir", "");
+      File parentDir = outputDir.length() == 0 ? null : new File(outputDir);
+
+      if (parentDir != null && !parentDir.exists()) {
+         parentDir.mkdirs();
+      }
+
+      long timestamp = System.currentTimeMillis();
+      File snapshotFile;
+
+      do {
+         snapshotFile = new File(parentDir, "coverage-" + timestamp++ + ".ser");
+      } while (snapshotFile.exists());
+
+      try {
+         CoverageData.instance().writeSnapshotToFile(snapshotFile, resetState);
+      }
+      catch (IOException e) {
+         throw new RuntimeException(e);
+      }
+
+      return snapshotFile;
+   }
+
    public byte[] transform(
       ClassLoader loader, String internalClassName, Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
       byte[] originalClassfile)
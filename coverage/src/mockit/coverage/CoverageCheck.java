@@ -14,9 +14,15 @@ final class CoverageCheck
    private static final class Threshold
    {
       private final String sourceFilePrefix;
+      private final String scope;
       private final String scopeDescription;
       private final int[] minPercentages;
 
+      // Running totals for the source files in scope, or the smallest percentage of any file for "perFile":
+      private final int[] coveredItems;
+      private final int[] totalItems;
+      private final int[] smallestPercentages;
+
       Threshold(String configurationParameter)
       {
          String[] sourceFilePrefixAndMinPercentages = configurationParameter.split(":");
@@ -24,11 +30,12 @@ final class CoverageCheck
 
          if (sourceFilePrefixAndMinPercentages.length == 1) {
             sourceFilePrefix = null;
+            scope = "total";
             scopeDescription = "";
             csvPercentages = sourceFilePrefixAndMinPercentages[0];
          }
          else {
-            String scope = sourceFilePrefixAndMinPercentages[0].trim();
+            scope = sourceFilePrefixAndMinPercentages[0].trim();
 
             if ("perFile".equals(scope)) {
                sourceFilePrefix = scope;
@@ -42,8 +49,14 @@ final class CoverageCheck
             csvPercentages = sourceFilePrefixAndMinPercentages[1];
          }
 
-         minPercentages = new int[Metrics.values().length];
+         int metricCount = Metrics.values().length;
+         minPercentages = new int[metricCount];
          parseMinimumPercentages(csvPercentages);
+
+         coveredItems = new int[metricCount];
+         totalItems = new int[metricCount];
+         smallestPercentages = new int[metricCount];
+         Arrays.fill(smallestPercentages, Integer.MAX_VALUE);
       }
 
       private void parseMinimumPercentages(String csvPercentages)
@@ -57,26 +70,45 @@ final class CoverageCheck
          }
       }
 
-      boolean verifyMinimum(Metrics metric)
+      boolean isPerFile() { return "perFile".equals(sourceFilePrefix); }
+
+      void addFileData(String sourceFile, Metrics metric, PerFileCoverage coverageInfo)
       {
-         CoverageData coverageData = CoverageData.instance();
-         int percentage;
+         int i = metric.ordinal();
 
-         if ("perFile".equals(sourceFilePrefix)) {
-            percentage = coverageData.getSmallestPerFilePercentage(metric);
+         if (isPerFile()) {
+            int percentage = coverageInfo.getCoveragePercentage();
+
+            if (percentage >= 0 && percentage < smallestPercentages[i]) {
+               smallestPercentages[i] = percentage;
+            }
          }
-         else {
-            percentage = coverageData.getPercentage(metric, sourceFilePrefix);
+         else if (sourceFilePrefix == null || sourceFile.startsWith(sourceFilePrefix)) {
+            coveredItems[i] += coverageInfo.getCoveredItems();
+            totalItems[i] += coverageInfo.getTotalItems();
+         }
+      }
+
+      /**
+       * Returns the percentage computed from the data added for the metric, or {@literal -1} if none is meaningful.
+       */
+      int getPercentage(Metrics metric)
+      {
+         int i = metric.ordinal();
+
+         if (isPerFile()) {
+            int percentage = smallestPercentages[i];
+            return percentage == Integer.MAX_VALUE ? -1 : percentage;
          }
 
-         return percentage < 0 || verifyMinimum(metric, percentage);
+         return CoveragePercentage.calculate(coveredItems[i], totalItems[i]);
       }
 
-      private boolean verifyMinimum(Metrics metric, int percentage)
+      boolean verifyMinimum(Metrics metric, int percentage)
       {
          int minPercentage = minPercentages[metric.ordinal()];
 
-         if (percentage < minPercentage) {
+         if (percentage >= 0 && percentage < minPercentage) {
             System.out.println(
                "JMockit: " + metric + " coverage too low" + scopeDescription + ": " +
                percentage + "% < " + minPercentage + '%');
@@ -85,6 +117,13 @@ final class CoverageCheck
 
          return true;
       }
+
+      void writeResult(PrintWriter out, Metrics metric, int percentage, boolean satisfied)
+      {
+         out.println(
+            scope + '\t' + metric + '\t' + percentage + '\t' + minPercentages[metric.ordinal()] + '\t' +
+            (satisfied ? "passed" : "failed"));
+      }
    }
 
    private final List<Threshold> thresholds;
@@ -108,18 +147,62 @@ final class CoverageCheck
       }
    }
 
-   void verifyThresholds()
+   /**
+    * Verifies all thresholds in a single pass over the coverage data, with each file contributing to the totals of
+    * every threshold whose scope it falls in.
+    *
+    * @param resultFile a file to be written with one tab-separated line for each threshold and active metric, or
+    *                   {@code null} if not wanted; when no thresholds are configured, it gets a line saying so
+    */
+   void verifyThresholds(File resultFile)
    {
-      if (thresholds == null) return;
+      if (thresholds == null) {
+         if (resultFile != null) {
+            PrintWriter resultOutput = createResultFile(resultFile);
+            resultOutput.println("# no thresholds configured in jmockit-coverage-check");
+            resultOutput.close();
+         }
+
+         return;
+      }
+
+      final List<Metrics> activeMetrics = new ArrayList<Metrics>();
+      Metrics.performAction(new Metrics.Action() {
+         public void perform(Metrics metric) { activeMetrics.add(metric); }
+      });
+
+      Map<String, FileCoverageData> fileToFileData = CoverageData.instance().getFileToFileDataMap();
+
+      for (Map.Entry<String, FileCoverageData> fileAndFileData : fileToFileData.entrySet()) {
+         String sourceFile = fileAndFileData.getKey();
+         FileCoverageData fileData = fileAndFileData.getValue();
+
+         for (Metrics metric : activeMetrics) {
+            PerFileCoverage coverageInfo = fileData.coverageInfos[metric.ordinal()];
+
+            for (Threshold threshold : thresholds) {
+               threshold.addFileData(sourceFile, metric, coverageInfo);
+            }
+         }
+      }
+
+      PrintWriter resultOutput = resultFile == null ? null : createResultFile(resultFile);
       allThresholdsSatisfied = true;
 
-      for (final Threshold threshold : thresholds) {
-         Metrics.performAction(new Metrics.Action() {
-            public void perform(Metrics metric)
-            {
-               allThresholdsSatisfied &= threshold.verifyMinimum(metric);
+      for (Threshold threshold : thresholds) {
+         for (Metrics metric : activeMetrics) {
+            int percentage = threshold.getPercentage(metric);
+            boolean satisfied = threshold.verifyMinimum(metric, percentage);
+            allThresholdsSatisfied &= satisfied;
+
+            if (resultOutput != null) {
+               threshold.writeResult(resultOutput, metric, percentage, satisfied);
             }
-         });
+         }
+      }
+
+      if (resultOutput != null) {
+         resultOutput.close();
       }
 
       createOrDeleteIndicatorFile();
@@ -129,6 +212,16 @@ final class CoverageCheck
       }
    }
 
+   private static PrintWriter createResultFile(File resultFile)
+   {
+      try {
+         PrintWriter out = new PrintWriter(new FileWriter(resultFile));
+         out.println("# scope\tmetric\tpercentage\tminimum\tresult");
+         return out;
+      }
+      catch (IOException e) { throw new RuntimeException(e); }
+   }
+
    private void createOrDeleteIndicatorFile()
    {
       File indicatorFile = new File("coverage.check.failed");
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import mockit.coverage.lines.*;
+import mockit.internal.state.*;
+
+/**
+ * Writes a coverage snapshot at the end of each test, with the line segments executed since the previous snapshot and
+ * how many times each one was executed, so that coverage can be attributed to individual tests without having to run
+ * each test in its own JVM.
+ * <p/>
+ * Activated with the "jmockit-coverage-testSnapshots" system property, whose value is the path of the file to be
+ * written; if no path is specified, "coverage-snapshots.dat" in the coverage output dir is used.
+ * The test runner integrations signal the end of each test, and other tools can take snapshots of their own through
+ * {@link #takeSnapshot(String)}.
+ * Coverage data itself is not reset between snapshots.
+ * <p/>
+ * The file starts with a header (the "JMCT" magic number and a version number, as two 32-bit integers), followed by
+ * records which are only ever appended to it, each one starting with a tag byte.
+ * If the file already exists, the records of the new test run are appended to those of previous runs, without a new
+ * header; since counter ids are assigned anew in each run, a 'C' record replaces any earlier definition for its id.
+ * All integers in records, except for the header, are variable-length quantities of one to five bytes, as in coverage
+ * data files.
+ * <ul>
+ * <li>
+ * 'C' (class): the id of a set of execution counters, followed by its source file (in modified UTF-8), by the number
+ * of slots, and by the line number and kind of each slot (0 for a line, 1 for a branch, 2 for the jump target of a
+ * branch). Written once for each set of counters, before its first use in a snapshot.
+ * </li>
+ * <li>
+ * 'T' (test): the test name (in modified UTF-8), followed by the number of sets of counters executed, and, for each
+ * one, its id, the number of slots executed, and, for each executed slot, the difference to the previous slot
+ * (starting from zero) and the execution count.
+ * </li>
+ * </ul>
+ */
+public final class CoverageSnapshots implements TestBoundaryListener
+{
+   static final int MAGIC = 0x4A4D4354; // "JMCT"
+   static final int VERSION = 1;
+
+   private static final String SNAPSHOTS_PROPERTY = "jmockit-coverage-testSnapshots";
+   private static final CoverageSnapshots INSTANCE =
+      System.getProperty(SNAPSHOTS_PROPERTY) == null ? null : new CoverageSnapshots();
+
+   private final File outputFile;
+   private final BitSet countersDefined;
+   private DataOutputStream output;
+   private boolean failed;
+
+   private CoverageSnapshots()
+   {
+      outputFile = getOutputFile();
+      countersDefined = new BitSet();
+   }
+
+   private static File getOutputFile()
+   {
+      String outputPath = System.getProperty(SNAPSHOTS_PROPERTY).trim();
+
+      if (outputPath.length() == 0 || "true".equals(outputPath)) {
+         String outputDir = System.getProperty("jmockit-coverage-outputDir", "");
+         return new File(outputDir.length() == 0 ? null : outputDir, "coverage-snapshots.dat");
+      }
+
+      return new File(outputPath);
+   }
+
+   public static boolean isActive() { return INSTANCE != null; }
+
+   static void closeOutputFile()
+   {
+      if (INSTANCE != null) {
+         INSTANCE.close();
+      }
+   }
+
+   static void registerForTestBoundaries()
+   {
+      if (INSTANCE != null) {
+         mockit.internal.state.TestRun.addTestBoundaryListener(INSTANCE);
+      }
+   }
+
+   public void testFinished(Class<?> testClass, Method testMethod)
+   {
+      String testName = testClass == null ? "" : testClass.getName();
+
+      if (testMethod != null) {
+         testName += '#' + testMethod.getName();
+      }
+
+      writeSnapshot(testName);
+   }
+
+   /**
+    * Writes a snapshot with the coverage counts accumulated since the previous one, if snapshots are active.
+    *
+    * @param testName the name identifying the snapshot in the file, usually that of the test which just finished
+    */
+   public static void takeSnapshot(String testName)
+   {
+      if (INSTANCE != null) {
+         INSTANCE.writeSnapshot(testName);
+      }
+   }
+
+   private synchronized void writeSnapshot(String testName)
+   {
+      List<ExecutionCounters> touchedCounters = ExecutionCounters.takeTouchedCounters();
+
+      if (failed) {
+         return;
+      }
+
+      List<ExecutionCounters> executedCounters = new ArrayList<ExecutionCounters>(touchedCounters.size());
+      List<int[]> executionCounts = new ArrayList<int[]>(touchedCounters.size());
+
+      for (ExecutionCounters counters : touchedCounters) {
+         int[] countsSinceSnapshot = counters.getCountsSinceLastSnapshot();
+
+         if (countExecutedSlots(countsSinceSnapshot) > 0) {
+            executedCounters.add(counters);
+            executionCounts.add(countsSinceSnapshot);
+         }
+      }
+
+      try {
+         openOutputFileIfNeeded();
+
+         for (ExecutionCounters counters : executedCounters) {
+            writeCountersDefinitionIfNeeded(counters);
+         }
+
+         output.writeByte('T');
+         output.writeUTF(testName);
+         writeInt(executedCounters.size());
+
+         for (int i = 0; i < executedCounters.size(); i++) {
+            writeExecutionCounts(executedCounters.get(i).id, executionCounts.get(i));
+         }
+
+         output.flush();
+      }
+      catch (IOException e) {
+         failed = true;
+         System.out.println("JMockit: Unable to write coverage snapshots to " + outputFile + ": " + e);
+      }
+   }
+
+   private static int countExecutedSlots(int[] executionCounts)
+   {
+      int executedSlots = 0;
+
+      for (int count : executionCounts) {
+         if (count > 0) {
+            executedSlots++;
+         }
+      }
+
+      return executedSlots;
+   }
+
+   private void openOutputFileIfNeeded() throws IOException
+   {
+      if (output == null) {
+         boolean newFile = outputFile.length() == 0;
+         output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile, true)));
+
+         if (newFile) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+         }
+      }
+   }
+
+   private synchronized void close()
+   {
+      if (output != null) {
+         try {
+            output.close();
+         }
+         catch (IOException ignore) {}
+
+         output = null;
+         countersDefined.clear();
+      }
+   }
+
+   private void writeCountersDefinitionIfNeeded(ExecutionCounters counters) throws IOException
+   {
+      if (countersDefined.get(counters.id)) {
+         return;
+      }
+
+      output.writeByte('C');
+      writeInt(counters.id);
+      output.writeUTF(counters.sourceFile);
+
+      int slotCount = counters.getSlotCount();
+      writeInt(slotCount);
+
+      for (int slot = 0; slot < slotCount; slot++) {
+         writeInt(counters.getSlotLine(slot));
+         output.writeByte(counters.isJumpSlot(slot) ? 2 : counters.isBranchSlot(slot) ? 1 : 0);
+      }
+
+      countersDefined.set(counters.id);
+   }
+
+   private void writeExecutionCounts(int countersId, int[] executionCounts) throws IOException
+   {
+      writeInt(countersId);
+      writeInt(countExecutedSlots(executionCounts));
+
+      int previousSlot = 0;
+
+      for (int slot = 0; slot < executionCounts.length; slot++) {
+         int count = executionCounts[slot];
+
+         if (count > 0) {
+            writeInt(slot - previousSlot);
+            writeInt(count);
+            previousSlot = slot;
+         }
+      }
+   }
+
+   private void writeInt(int value) throws IOException
+   {
+      int remaining = value;
+
+      while ((remaining & ~0x7F) != 0) {
+         output.writeByte(remaining & 0x7F | 0x80);
+         remaining >>>= 7;
+      }
+
+      output.writeByte(remaining);
+   }
+}
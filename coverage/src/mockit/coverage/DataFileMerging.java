@@ -6,12 +6,23 @@ package mockit.coverage;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import mockit.coverage.data.*;
 
+/**
+ * Merges the coverage data files from multiple test runs.
+ * <p/>
+ * Input files are opened in parallel, and then merged in the order given; the data for each source file is only read
+ * and merged when needed, either by the HTML report or when writing the merged data to a new data file (in which case
+ * source files are merged concurrently).
+ */
 final class DataFileMerging
 {
    private final List<File> inputFiles;
+   private long startTime;
+   private int filesMerged;
+   private long bytesMerged;
 
    DataFileMerging(String[] inputPaths)
    {
@@ -37,18 +48,15 @@ final class DataFileMerging
 
    CoverageData merge() throws IOException
    {
+      startTime = System.currentTimeMillis();
       CoverageData mergedData = null;
 
-      for (File inputFile : inputFiles) {
-         if (inputFile.exists()) {
-            CoverageData existingData = CoverageData.readDataFromFile(inputFile);
-
-            if (mergedData == null) {
-               mergedData = existingData;
-            }
-            else {
-               mergedData.merge(existingData);
-            }
+      for (CoverageData existingData : openExistingInputFiles()) {
+         if (mergedData == null) {
+            mergedData = existingData;
+         }
+         else {
+            mergedData.merge(existingData);
          }
       }
 
@@ -58,4 +66,84 @@ final class DataFileMerging
 
       return mergedData;
    }
+
+   private List<CoverageData> openExistingInputFiles() throws IOException
+   {
+      List<Future<CoverageData>> openedFiles = new ArrayList<Future<CoverageData>>(inputFiles.size());
+      int threads = Math.min(inputFiles.size(), Runtime.getRuntime().availableProcessors());
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+
+      try {
+         for (final File inputFile : inputFiles) {
+            if (inputFile.exists()) {
+               filesMerged++;
+               bytesMerged += inputFile.length();
+
+               openedFiles.add(executor.submit(new Callable<CoverageData>() {
+                  public CoverageData call() throws IOException { return CoverageData.openDataFile(inputFile, true); }
+               }));
+            }
+         }
+
+         List<CoverageData> existingData = new ArrayList<CoverageData>(openedFiles.size());
+
+         for (Future<CoverageData> openedFile : openedFiles) {
+            existingData.add(getResult(openedFile));
+         }
+
+         return existingData;
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static CoverageData getResult(Future<CoverageData> openedFile) throws IOException
+   {
+      try {
+         return openedFile.get();
+      }
+      catch (InterruptedException e) {
+         throw new RuntimeException(e);
+      }
+      catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         }
+
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+
+         throw new RuntimeException(cause);
+      }
+   }
+
+   /**
+    * Writes the merged data to a new data file, replacing it only once completely written, since it may also be one
+    * of the input files, which remain memory mapped.
+    */
+   void writeMergedData(CoverageData mergedData, File outputFile) throws IOException
+   {
+      File tempFile = new File(outputFile.getPath() + ".tmp");
+      mergedData.writeDataToFile(tempFile);
+
+      if (!tempFile.renameTo(outputFile) && !(outputFile.delete() && tempFile.renameTo(outputFile))) {
+         throw new IOException("Unable to replace " + outputFile + "; merged data left in " + tempFile);
+      }
+
+      System.out.println("JMockit: Merged coverage data written to " + outputFile.getCanonicalPath());
+   }
+
+   void printThroughput()
+   {
+      long elapsedTime = Math.max(System.currentTimeMillis() - startTime, 1);
+      long kilobytes = bytesMerged / 1024;
+
+      System.out.println(
+         "JMockit: Merged " + filesMerged + " coverage data files (" + kilobytes + " KB) in " + elapsedTime + " ms (" +
+         kilobytes * 1000 / elapsedTime + " KB/s)");
+   }
 }
\ No newline at end of file
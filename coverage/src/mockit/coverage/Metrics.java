@@ -4,6 +4,7 @@
  */
 package mockit.coverage;
 
+import mockit.coverage.lines.*;
 import mockit.coverage.standalone.*;
 
 public enum Metrics
@@ -65,7 +66,8 @@ public enum Metrics
 
    final boolean isActive(String name)
    {
-      String metrics = System.getProperty("jmockit-coverage-metrics", "all");
+      // Paths and fields can't be sampled, so only lines are measured by default when sampling.
+      String metrics = System.getProperty("jmockit-coverage-metrics", ExecutionCounters.isSampling() ? "line" : "all");
       boolean all = "all".equals(metrics);
       return all || metrics.contains(name);
    }
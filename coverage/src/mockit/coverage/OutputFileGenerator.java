@@ -58,6 +58,20 @@ final class OutputFileGenerator
       return hasOutputFormat("html") || hasOutputFormat("serial") || hasOutputFormat("merge");
    }
 
+   /**
+    * Returns the file to be written with the results of coverage checks, when the "check" output format is selected,
+    * or {@code null} otherwise.
+    */
+   File getCheckResultFile()
+   {
+      if (!hasOutputFormat("check")) {
+         return null;
+      }
+
+      createOutputDirIfSpecifiedButNotExists();
+      return new File(outputDir.length() == 0 ? null : outputDir, "coverage.check.txt");
+   }
+
    boolean isWithCallPoints()
    {
       return !Startup.isStandalone() && isOutputWithCallpointsToBeGenerated() && !hasOutputFormat("html-nocp");
@@ -101,8 +115,16 @@ final class OutputFileGenerator
       createOutputDirIfSpecifiedButNotExists();
 
       try {
-         CoverageData coverageData = new DataFileMerging(inputPaths).merge();
+         DataFileMerging dataFileMerging = new DataFileMerging(inputPaths);
+         CoverageData coverageData = dataFileMerging.merge();
+
+         if (hasOutputFormat("serial")) {
+            String parentDir = outputDir.length() == 0 ? null : outputDir;
+            dataFileMerging.writeMergedData(coverageData, new File(parentDir, "coverage.ser"));
+         }
+
          generateHTMLReportIfRequested(coverageData);
+         dataFileMerging.printThroughput();
       }
       catch (IOException e) {
          throw new RuntimeException(e);
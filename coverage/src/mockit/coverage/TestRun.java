@@ -5,6 +5,7 @@
 package mockit.coverage;
 
 import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
 
 @SuppressWarnings("UnusedDeclaration")
 public final class TestRun
@@ -21,55 +22,43 @@ public final class TestRun
 
    private TestRun() {}
 
-   public static void lineExecuted(String file, int line)
+   /**
+    * Registers the execution of a line, or of a branch inside a line, given the id of the execution counters for the
+    * class containing the line, and the slot assigned to the line segment at instrumentation time.
+    */
+   public static void lineExecuted(int countersId, int slot)
    {
-      if (executingCall.get()) {
+      ExecutionCounters counters = ExecutionCounters.get(countersId);
+
+      if (counters.isSlotDisabled(slot)) {
          return;
       }
 
-      executingCall.set(true);
-
-      CoverageData coverageData = CoverageData.instance();
-      CallPoint callPoint = coverageData.isWithCallPoints() ? CallPoint.create(new Throwable()) : null;
-
-      FileCoverageData fileData = coverageData.getFileData(file);
-      fileData.lineCoverageInfo.registerExecution(line, callPoint);
-
-      executingCall.set(false);
-   }
-
-   public static void jumpTargetExecuted(String file, int line, int segment)
-   {
-      if (executingCall.get()) {
+      if (!CoverageData.instance().isWithCallPoints()) {
+         counters.registerExecution(slot);
          return;
       }
 
-      executingCall.set(true);
-
-      CoverageData coverageData = CoverageData.instance();
-      CallPoint callPoint = coverageData.isWithCallPoints() ? CallPoint.create(new Throwable()) : null;
-
-      FileCoverageData fileData = coverageData.getFileData(file);
-      fileData.lineCoverageInfo.registerExecution(line, segment, true, callPoint);
-
-      executingCall.set(false);
-   }
-
-   public static void noJumpTargetExecuted(String file, int line, int segment)
-   {
+      // Only the creation of call points can reenter this method.
       if (executingCall.get()) {
          return;
       }
 
       executingCall.set(true);
 
-      CoverageData coverageData = CoverageData.instance();
-      CallPoint callPoint = coverageData.isWithCallPoints() ? CallPoint.create(new Throwable()) : null;
-
-      FileCoverageData fileData = coverageData.getFileData(file);
-      fileData.lineCoverageInfo.registerExecution(line, segment, false, callPoint);
-
-      executingCall.set(false);
+      try {
+         if (CallPoint.isCapturingTestMethodOnly()) {
+            CallPoint callPoint = CallPoint.createForRunningTestMethod();
+            counters.registerExecutionFromTestMethod(slot, callPoint);
+         }
+         else {
+            CallPoint callPoint = CallPoint.create(new Throwable());
+            counters.registerExecution(slot, callPoint);
+         }
+      }
+      finally {
+         executingCall.set(false);
+      }
    }
 
    public static void nodeReached(String file, int firstLineInMethodBody, int node)
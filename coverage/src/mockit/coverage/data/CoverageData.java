@@ -10,6 +10,7 @@ import java.util.*;
 import java.util.concurrent.*;
 
 import mockit.coverage.*;
+import mockit.coverage.lines.*;
 
 /**
  * Coverage data captured for all source files exercised during a test run.
@@ -24,16 +25,171 @@ public final class CoverageData implements Serializable
    private boolean withCallPoints;
    private final Map<String, FileCoverageData> fileToFileData = new ConcurrentHashMap<String, FileCoverageData>();
 
+   // Data files opened for reading on demand, with data only for the source files not in "fileToFileData":
+   private transient List<CoverageDataStore> dataStores;
+
+   // Source files which had executions in the last snapshot written to a data file; only accessed while synchronized:
+   private final transient Set<String> filesWithExecutions = new HashSet<String>();
+
+   // Call points from all source files, so that each distinct stack trace element is kept only once in memory:
+   private final transient ConcurrentMap<StackTraceElement, CallPoint> callPoints =
+      new ConcurrentHashMap<StackTraceElement, CallPoint>();
+
    public boolean isWithCallPoints() { return withCallPoints; }
    public void setWithCallPoints(boolean withCallPoints) { this.withCallPoints = withCallPoints; }
 
+   /**
+    * Returns the call point for the given stack trace element, the same instance being returned for all equal ones.
+    * Must be called on the {@linkplain #instance() current instance}, which holds the call points shared by all data
+    * in memory, including data read from files.
+    */
+   public CallPoint getCallPoint(StackTraceElement ste)
+   {
+      CallPoint callPoint = callPoints.get(ste);
+
+      if (callPoint == null) {
+         CallPoint newCallPoint = new CallPoint(ste);
+         callPoint = callPoints.putIfAbsent(ste, newCallPoint);
+
+         if (callPoint == null) {
+            callPoint = newCallPoint;
+         }
+      }
+
+      return callPoint;
+   }
+
    /**
     * Returns an immutable map containing all source files with the corresponding coverage data gathered for each
     * file during a test run.
+    * <p/>
+    * For data {@linkplain #openDataFile opened} from data files, the data for each source file is only read when
+    * requested from the map, and it is not retained by the map; therefore, callers should process one file at a time.
     */
    public Map<String, FileCoverageData> getFileToFileDataMap()
    {
-      return Collections.unmodifiableMap(fileToFileData);
+      updateExecutionCounts();
+      return dataStores == null ? Collections.unmodifiableMap(fileToFileData) : new FileDataView();
+   }
+
+   private final class FileDataView extends AbstractMap<String, FileCoverageData>
+   {
+      private final Set<String> files;
+
+      FileDataView()
+      {
+         files = new LinkedHashSet<String>(fileToFileData.keySet());
+
+         for (CoverageDataStore dataStore : dataStores) {
+            files.addAll(dataStore.getFiles());
+         }
+      }
+
+      @Override
+      public boolean containsKey(Object file) { return files.contains(file); }
+
+      @Override
+      public FileCoverageData get(Object file)
+      {
+         return files.contains(file) ? getFileDataIncludingStoredData((String) file) : null;
+      }
+
+      @Override
+      public Set<Entry<String, FileCoverageData>> entrySet()
+      {
+         return new AbstractSet<Entry<String, FileCoverageData>>() {
+            @Override
+            public int size() { return files.size(); }
+
+            @Override
+            public Iterator<Entry<String, FileCoverageData>> iterator()
+            {
+               final Iterator<String> nextFile = files.iterator();
+
+               return new Iterator<Entry<String, FileCoverageData>>() {
+                  public boolean hasNext() { return nextFile.hasNext(); }
+                  public Entry<String, FileCoverageData> next() { return new FileDataEntry(nextFile.next()); }
+                  public void remove() { throw new UnsupportedOperationException(); }
+               };
+            }
+         };
+      }
+   }
+
+   /**
+    * A map entry whose data is only read when its value is first requested.
+    */
+   private final class FileDataEntry implements Map.Entry<String, FileCoverageData>
+   {
+      private final String file;
+      private FileCoverageData fileData;
+
+      FileDataEntry(String file) { this.file = file; }
+
+      public String getKey() { return file; }
+
+      public FileCoverageData getValue()
+      {
+         if (fileData == null) {
+            fileData = getFileDataIncludingStoredData(file);
+         }
+
+         return fileData;
+      }
+
+      public FileCoverageData setValue(FileCoverageData value) { throw new UnsupportedOperationException(); }
+   }
+
+   private FileCoverageData getFileDataIncludingStoredData(String file)
+   {
+      FileCoverageData fileData = fileToFileData.get(file);
+
+      if (fileData == null && dataStores != null) {
+         fileData = readStoredFileData(file);
+      }
+
+      return fileData;
+   }
+
+   /**
+    * Reads and merges the data for a source file from each data file, in the order in which they were merged.
+    */
+   private FileCoverageData readStoredFileData(String file)
+   {
+      FileCoverageData mergedData = null;
+
+      try {
+         for (CoverageDataStore dataStore : dataStores) {
+            FileCoverageData storedData = dataStore.readFileData(file);
+
+            if (storedData == null) {
+               continue;
+            }
+
+            if (mergedData == null) {
+               mergedData = storedData;
+            }
+            else if (storedData.lastModified == mergedData.lastModified) {
+               mergedData.mergeWithDataFromPreviousTestRun(storedData);
+            }
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException(e);
+      }
+
+      return mergedData;
+   }
+
+   /**
+    * Brings the line coverage data of each source file up to date with the execution counters incremented by the
+    * probes in instrumented classes.
+    */
+   private void updateExecutionCounts()
+   {
+      for (FileCoverageData fileData : fileToFileData.values()) {
+         fileData.lineCoverageInfo.updateExecutionCounts();
+      }
    }
 
    public FileCoverageData addFile(String file)
@@ -50,8 +206,30 @@ public final class CoverageData implements Serializable
    }
 
    public FileCoverageData getFileData(String file) { return fileToFileData.get(file); }
-   public boolean isEmpty() { return fileToFileData.isEmpty(); }
-   public void clear() { fileToFileData.clear(); }
+   void addFileData(String file, FileCoverageData fileData) { fileToFileData.put(file, fileData); }
+
+   public boolean isEmpty()
+   {
+      if (!fileToFileData.isEmpty()) {
+         return false;
+      }
+
+      if (dataStores != null) {
+         for (CoverageDataStore dataStore : dataStores) {
+            if (!dataStore.getFiles().isEmpty()) {
+               return false;
+            }
+         }
+      }
+
+      return true;
+   }
+
+   public void clear()
+   {
+      fileToFileData.clear();
+      dataStores = null;
+   }
 
    /**
     * Computes the coverage percentage for a given metric, over a subset of the available source files.
@@ -67,7 +245,7 @@ public final class CoverageData implements Serializable
       int coveredItems = 0;
       int totalItems = 0;
 
-      for (Map.Entry<String, FileCoverageData> fileAndFileData : fileToFileData.entrySet()) {
+      for (Map.Entry<String, FileCoverageData> fileAndFileData : getFileToFileDataMap().entrySet()) {
          String sourceFile = fileAndFileData.getKey();
 
          if (fileNamePrefix == null || sourceFile.startsWith(fileNamePrefix)) {
@@ -91,7 +269,7 @@ public final class CoverageData implements Serializable
    {
       int minPercentage = Integer.MAX_VALUE;
 
-      for (FileCoverageData fileData : fileToFileData.values()) {
+      for (FileCoverageData fileData : getFileToFileDataMap().values()) {
          PerFileCoverage coverageInfo = fileData.coverageInfos[metric.ordinal()];
          int percentage = coverageInfo.getCoveragePercentage();
          if (percentage >= 0 && percentage < minPercentage) minPercentage = percentage;
@@ -133,49 +311,294 @@ public final class CoverageData implements Serializable
    }
 
    /**
-    * Reads a serialized {@code CoverageData} object from the given file (normally, a "<code>coverage.ser</code>" file
-    * generated at the end of a previous test run).
+    * Reads a {@code CoverageData} object from the given file (normally, a "<code>coverage.ser</code>" file generated
+    * at the end of a previous test run).
+    * Both the current binary format and the Java serialization format used by older versions are accepted.
     *
-    * @param dataFile the ".ser" file containing a serialized {@code CoverageData} instance
+    * @param dataFile the ".ser" file containing the coverage data
     *
     * @return a new object containing all coverage data resulting from a previous test run
     */
    public static CoverageData readDataFromFile(File dataFile) throws IOException
    {
-      ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
+      InputStream input = new BufferedInputStream(new FileInputStream(dataFile));
+
+      try {
+         input.mark(4);
+         boolean binaryFormat = new DataInputStream(input).readInt() == CoverageDataOutput.MAGIC;
+         input.reset();
+
+         return binaryFormat ? readBinaryData(input) : readSerializedData(dataFile, input);
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   /**
+    * Opens a coverage data file for reading the data of each source file only when requested through
+    * {@link #getFileToFileDataMap()}, so that memory usage is proportional to the data of a single source file
+    * rather than to the whole data file.
+    * Files in the Java serialization format used by older versions are read completely, as in
+    * {@link #readDataFromFile}.
+    *
+    * @param dataFile the ".ser" file containing the coverage data
+    * @param memoryMapped whether the file is to be mapped into memory instead of having its contents read into the
+    *                     heap (without being decoded); a mapped file may not be overwritten while the returned object
+    *                     is in use, on some platforms
+    */
+   public static CoverageData openDataFile(File dataFile, boolean memoryMapped) throws IOException
+   {
+      if (!isInBinaryFormat(dataFile)) {
+         return readDataFromFile(dataFile);
+      }
+
+      CoverageDataStore dataStore = new CoverageDataStore(dataFile, memoryMapped);
+      CoverageData data = new CoverageData();
+      data.withCallPoints = dataStore.isWithCallPoints();
+      data.dataStores = new ArrayList<CoverageDataStore>();
+      data.dataStores.add(dataStore);
+
+      return data;
+   }
+
+   private static boolean isInBinaryFormat(File dataFile) throws IOException
+   {
+      DataInputStream input = new DataInputStream(new FileInputStream(dataFile));
+
+      try {
+         return input.readInt() == CoverageDataOutput.MAGIC;
+      }
+      catch (EOFException ignore) {
+         return false;
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   private static CoverageData readBinaryData(InputStream inputStream) throws IOException
+   {
+      CoverageDataInput input = new CoverageDataInput(inputStream);
+      CoverageData data = new CoverageData();
+      data.withCallPoints = input.readBoolean();
+
+      for (int fileCount = input.readInt(); fileCount > 0; fileCount--) {
+         String file = input.readString();
+         FileCoverageData fileData = new FileCoverageData();
+         fileData.readFrom(input);
+         data.fileToFileData.put(file, fileData);
+      }
+
+      return data;
+   }
 
+   private static CoverageData readSerializedData(File dataFile, InputStream input) throws IOException
+   {
       try {
-         return (CoverageData) input.readObject();
+         return (CoverageData) new ObjectInputStream(input).readObject();
       }
       catch (ClassNotFoundException e) {
          throw new RuntimeException(
             "Serialized class in coverage data file \"" + dataFile + "\" not found in classpath", e);
       }
+   }
+
+   /**
+    * Writes all coverage data to the given file, one source file at a time.
+    * The data file is written under a temporary name and renamed once complete, so that it can be one of the files
+    * this data was {@linkplain #openDataFile opened} from.
+    */
+   public void writeDataToFile(File dataFile) throws IOException
+   {
+      updateExecutionCounts();
+
+      File tempFile = new File(dataFile.getPath() + ".tmp");
+      OutputStream fileOutput = new BufferedOutputStream(new FileOutputStream(tempFile));
+
+      try {
+         CoverageDataOutput output = new CoverageDataOutput(fileOutput);
+         output.writeBoolean(withCallPoints);
+         Map<String, FileCoverageData> allFileData = getFileToFileDataMap();
+         output.writeInt(allFileData.size());
+
+         if (dataStores == null) {
+            for (Map.Entry<String, FileCoverageData> fileAndFileData : allFileData.entrySet()) {
+               writeFileData(output, fileAndFileData.getKey(), fileAndFileData.getValue());
+            }
+         }
+         else {
+            writeFileDataMergedInParallel(output, allFileData.keySet());
+         }
+
+         output.finish();
+      }
       finally {
-         input.close();
+         fileOutput.close();
       }
+
+      replaceDataFile(dataFile, tempFile);
    }
 
-   public void writeDataToFile(File dataFile) throws IOException
+   private static void replaceDataFile(File dataFile, File tempFile) throws IOException
+   {
+      if (!tempFile.renameTo(dataFile) && !(dataFile.delete() && tempFile.renameTo(dataFile))) {
+         throw new IOException("Unable to replace " + dataFile + "; data left in " + tempFile);
+      }
+   }
+
+   /**
+    * Writes the data gathered so far for the source files with any executed line or path to a new data file, in the
+    * same format as {@link #writeDataToFile}, while instrumented code keeps executing its probes without pausing.
+    * Line counts are read from the execution counters only once, and path counts are taken atomically when reset, so
+    * that executions happening while the snapshot is written are neither torn nor lost, but left for the next one.
+    * <p/>
+    * The data file is written under a temporary name and renamed once complete.
+    *
+    * @param resettingCounts whether the counts written are to be discarded, so that each snapshot only has the
+    *                        executions since the previous one; such snapshots add up when merged
+    */
+   public synchronized void writeSnapshotToFile(File dataFile, boolean resettingCounts) throws IOException
+   {
+      List<Map.Entry<String, FileCoverageData>> executedFiles = findFilesWithExecutions();
+
+      File tempFile = new File(dataFile.getPath() + ".tmp");
+      OutputStream fileOutput = new BufferedOutputStream(new FileOutputStream(tempFile));
+
+      try {
+         CoverageDataOutput output = new CoverageDataOutput(fileOutput);
+         output.writeBoolean(withCallPoints);
+         output.writeInt(executedFiles.size());
+
+         for (Map.Entry<String, FileCoverageData> fileAndFileData : executedFiles) {
+            output.beginSection(fileAndFileData.getKey());
+            fileAndFileData.getValue().writeSnapshotTo(output, resettingCounts);
+         }
+
+         output.finish();
+      }
+      finally {
+         fileOutput.close();
+      }
+
+      // With sampling, paths may keep executing in a file whose line probes were all disabled, so it stays a candidate.
+      if (resettingCounts && !ExecutionCounters.isSampling()) {
+         filesWithExecutions.clear();
+      }
+
+      replaceDataFile(dataFile, tempFile);
+   }
+
+   /**
+    * Finds the source files with executions to be written in a snapshot: those executed since the previous snapshot,
+    * plus those which still had executions in it.
+    * Only on the first snapshot, when executions were not being tracked yet, are all source files visited.
+    */
+   private List<Map.Entry<String, FileCoverageData>> findFilesWithExecutions()
+   {
+      Set<String> filesTouched = ExecutionCounters.takeSourceFilesTouched();
+      Collection<String> candidateFiles;
+
+      if (filesTouched == null) {
+         candidateFiles = new ArrayList<String>(fileToFileData.keySet());
+      }
+      else {
+         filesWithExecutions.addAll(filesTouched);
+         candidateFiles = new ArrayList<String>(filesWithExecutions);
+      }
+
+      List<Map.Entry<String, FileCoverageData>> executedFiles = new ArrayList<Map.Entry<String, FileCoverageData>>();
+
+      for (String file : candidateFiles) {
+         FileCoverageData fileData = fileToFileData.get(file);
+
+         if (fileData != null && fileData.hasExecutions()) {
+            executedFiles.add(new AbstractMap.SimpleEntry<String, FileCoverageData>(file, fileData));
+            filesWithExecutions.add(file);
+         }
+         else {
+            filesWithExecutions.remove(file);
+         }
+      }
+
+      return executedFiles;
+   }
+
+   private static void writeFileData(CoverageDataOutput output, String file, FileCoverageData fileData)
+      throws IOException
+   {
+      output.beginSection(file);
+      fileData.writeTo(output);
+   }
+
+   /**
+    * Reads and merges the stored data of each source file in worker threads, a bounded number of files ahead of the
+    * calling thread, which writes the merged data in the original order of files.
+    */
+   private void writeFileDataMergedInParallel(CoverageDataOutput output, Collection<String> files) throws IOException
    {
-      ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+      int threads = Runtime.getRuntime().availableProcessors();
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      Queue<String> pendingFiles = new LinkedList<String>();
+      Queue<Future<FileCoverageData>> pendingFileData = new LinkedList<Future<FileCoverageData>>();
+      Iterator<String> nextFile = files.iterator();
 
       try {
-         output.writeObject(this);
+         while (nextFile.hasNext() || !pendingFiles.isEmpty()) {
+            while (nextFile.hasNext() && pendingFiles.size() < 2 * threads) {
+               final String file = nextFile.next();
+               pendingFiles.add(file);
+               pendingFileData.add(executor.submit(new Callable<FileCoverageData>() {
+                  public FileCoverageData call() { return getFileDataIncludingStoredData(file); }
+               }));
+            }
+
+            FileCoverageData fileData = getResult(pendingFileData.remove());
+            writeFileData(output, pendingFiles.remove(), fileData);
+         }
       }
       finally {
-         output.close();
+         executor.shutdownNow();
       }
    }
 
+   private static FileCoverageData getResult(Future<FileCoverageData> fileData)
+   {
+      try {
+         return fileData.get();
+      }
+      catch (InterruptedException e) {
+         throw new RuntimeException(e);
+      }
+      catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+
+         throw new RuntimeException(cause);
+      }
+   }
+
+   /**
+    * Merges the given data into this one.
+    * Data from files opened with {@link #openDataFile} is only merged when read, except for source files whose data
+    * is already in memory.
+    */
    public void merge(CoverageData previousData)
    {
+      updateExecutionCounts();
       withCallPoints |= previousData.withCallPoints;
 
       for (Map.Entry<String, FileCoverageData> previousFileAndFileData : previousData.fileToFileData.entrySet()) {
          String previousFile = previousFileAndFileData.getKey();
          FileCoverageData previousFileData = previousFileAndFileData.getValue();
-         FileCoverageData fileData = fileToFileData.get(previousFile);
+         FileCoverageData fileData = loadFileDataIntoMemory(previousFile);
 
          if (fileData == null) {
             fileToFileData.put(previousFile, previousFileData);
@@ -184,5 +607,46 @@ public final class CoverageData implements Serializable
             fileData.mergeWithDataFromPreviousTestRun(previousFileData);
          }
       }
+
+      if (previousData.dataStores != null) {
+         mergeStoredDataIntoFilesInMemory(previousData);
+
+         if (dataStores == null) {
+            dataStores = new ArrayList<CoverageDataStore>();
+         }
+
+         dataStores.addAll(previousData.dataStores);
+      }
+   }
+
+   private FileCoverageData loadFileDataIntoMemory(String file)
+   {
+      FileCoverageData fileData = fileToFileData.get(file);
+
+      if (fileData == null && dataStores != null) {
+         fileData = readStoredFileData(file);
+
+         if (fileData != null) {
+            fileToFileData.put(file, fileData);
+         }
+      }
+
+      return fileData;
+   }
+
+   private void mergeStoredDataIntoFilesInMemory(CoverageData previousData)
+   {
+      for (Map.Entry<String, FileCoverageData> fileAndFileData : fileToFileData.entrySet()) {
+         String file = fileAndFileData.getKey();
+
+         if (!previousData.fileToFileData.containsKey(file)) {
+            FileCoverageData previousFileData = previousData.readStoredFileData(file);
+            FileCoverageData fileData = fileAndFileData.getValue();
+
+            if (previousFileData != null && previousFileData.lastModified == fileData.lastModified) {
+               fileData.mergeWithDataFromPreviousTestRun(previousFileData);
+            }
+         }
+      }
    }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.util.*;
+
+import mockit.coverage.*;
+
+/**
+ * Reads coverage data written by {@link CoverageDataOutput}.
+ */
+public final class CoverageDataInput
+{
+   private final DataInputStream input;
+   private final boolean stringTableRead;
+   private String[] strings;
+   private int stringCount;
+
+   /**
+    * Reads the header, leaving the input positioned at the beginning of the data proper.
+    */
+   public CoverageDataInput(InputStream inputStream) throws IOException
+   {
+      input = new DataInputStream(inputStream);
+
+      if (input.readInt() != CoverageDataOutput.MAGIC) {
+         throw new IOException("Not a coverage data file");
+      }
+
+      int version = input.readInt();
+
+      if (version != CoverageDataOutput.VERSION) {
+         throw new IOException("Unsupported version of coverage data file: " + version);
+      }
+
+      // Strings are defined where first used, and read as they come.
+      stringTableRead = false;
+      strings = new String[64];
+      stringCount = 1;
+   }
+
+   /**
+    * Reads a section of data from a file whose string table was already read.
+    */
+   CoverageDataInput(InputStream inputStream, String[] strings)
+   {
+      input = new DataInputStream(inputStream);
+      this.strings = strings;
+      stringTableRead = true;
+
+      if (strings != null) {
+         stringCount = strings.length;
+      }
+   }
+
+   /**
+    * Reads a table of strings, returned with the first one at index 1, so that index 0 stands for {@code null}.
+    */
+   String[] readStringTable() throws IOException
+   {
+      String[] stringTable = new String[readInt() + 1];
+
+      for (int i = 1; i < stringTable.length; i++) {
+         stringTable[i] = input.readUTF();
+      }
+
+      stringCount = stringTable.length;
+      return stringTable;
+   }
+
+   public boolean readBoolean() throws IOException { return input.readBoolean(); }
+   public int readByte() throws IOException { return input.readByte(); }
+   public long readLong() throws IOException { return input.readLong(); }
+
+   public byte[] readBytes() throws IOException
+   {
+      byte[] bytes = new byte[readInt()];
+      input.readFully(bytes);
+      return bytes;
+   }
+
+   public int readInt() throws IOException
+   {
+      int value = 0;
+
+      for (int shift = 0; shift < 32; shift += 7) {
+         int b = input.readByte();
+         value |= (b & 0x7F) << shift;
+
+         if (b >= 0) {
+            return value;
+         }
+      }
+
+      throw new IOException("Malformed integer value in coverage data file");
+   }
+
+   public int readSignedInt() throws IOException
+   {
+      int value = readInt();
+      return value >>> 1 ^ -(value & 1);
+   }
+
+   public String readString() throws IOException
+   {
+      int value = readInt();
+      int index = value >>> 1;
+
+      if ((value & 1) == 0) {
+         return getString(index);
+      }
+
+      String definedString = input.readUTF();
+
+      if (!stringTableRead) {
+         defineString(index, definedString);
+      }
+
+      return definedString;
+   }
+
+   private String getString(int index) throws IOException
+   {
+      if (index >= stringCount) {
+         throw new IOException("Invalid string index in coverage data file: " + index);
+      }
+
+      return strings[index];
+   }
+
+   private void defineString(int index, String value) throws IOException
+   {
+      if (index != stringCount) {
+         throw new IOException("Invalid string definition in coverage data file: " + index);
+      }
+
+      if (index == strings.length) {
+         String[] newStrings = new String[2 * index];
+         System.arraycopy(strings, 0, newStrings, 0, index);
+         strings = newStrings;
+      }
+
+      strings[index] = value;
+      stringCount++;
+   }
+
+   /**
+    * Reads a call point, returning the same instance for all equal call points, whichever the data file they are read
+    * from.
+    */
+   public CallPoint readCallPoint() throws IOException
+   {
+      String className = readString();
+      String methodName = readString();
+      String fileName = readString();
+      int line = readSignedInt();
+
+      StackTraceElement ste = new StackTraceElement(className, methodName, fileName, line);
+      return CoverageData.instance().getCallPoint(ste);
+   }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.util.*;
+
+import mockit.coverage.*;
+
+/**
+ * Writes coverage data in the compact binary format read by {@link CoverageDataInput}, straight to an output stream.
+ * <p/>
+ * The format consists of a header (magic number and version), followed by the data proper, and then by a trailer.
+ * Integer values are written as variable-length quantities of one to five bytes.
+ * Each distinct string is written in full where first used, and afterwards referred to by its index.
+ * The trailer has a table with all distinct strings, and the position of the data for each source file written as a
+ * separate section, so that the data of a single source file can be read without decoding the preceding ones; its own
+ * position is written in the last eight bytes.
+ */
+public final class CoverageDataOutput
+{
+   static final int MAGIC = 0x4A4D4344; // "JMCD"
+   static final int VERSION = 1;
+
+   private static final class CountingOutputStream extends FilterOutputStream
+   {
+      long bytesWritten;
+
+      CountingOutputStream(OutputStream out) { super(out); }
+
+      @Override
+      public void write(int b) throws IOException
+      {
+         out.write(b);
+         bytesWritten++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+         out.write(b, off, len);
+         bytesWritten += len;
+      }
+   }
+
+   private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+   private final List<String> strings = new ArrayList<String>();
+   private final Map<String, Long> sectionPositions = new LinkedHashMap<String, Long>();
+   private final CountingOutputStream counter;
+   private final DataOutputStream output;
+
+   /**
+    * Writes the header to the given output stream, which should be buffered; nothing is held in memory besides the
+    * distinct strings and the positions of file sections.
+    */
+   public CoverageDataOutput(OutputStream outputStream) throws IOException
+   {
+      counter = new CountingOutputStream(outputStream);
+      output = new DataOutputStream(counter);
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+   }
+
+   /**
+    * Writes the name of a source file, whose data is then written by the calls that follow.
+    */
+   void beginSection(String file) throws IOException
+   {
+      writeString(file);
+      sectionPositions.put(file, counter.bytesWritten);
+   }
+
+   public void writeBoolean(boolean value) throws IOException { output.writeBoolean(value); }
+   public void writeByte(int value) throws IOException { output.writeByte(value); }
+   public void writeLong(long value) throws IOException { output.writeLong(value); }
+
+   public void writeBytes(byte[] bytes) throws IOException
+   {
+      writeInt(bytes.length);
+      output.write(bytes);
+   }
+
+   /**
+    * Writes a non-negative value using one byte for each group of seven significant bits.
+    */
+   public void writeInt(int value) throws IOException
+   {
+      while ((value & ~0x7F) != 0) {
+         output.writeByte(value & 0x7F | 0x80);
+         value >>>= 7;
+      }
+
+      output.writeByte(value);
+   }
+
+   /**
+    * Writes a value which can be negative, such as an execution count of {@literal -1}, so that small absolute values
+    * still take a single byte.
+    */
+   public void writeSignedInt(int value) throws IOException { writeInt(value << 1 ^ value >> 31); }
+
+   /**
+    * Writes the index of the given string in the string table, preceded by the string itself the first time it is
+    * written, as an odd value; {@code null} is also accepted.
+    */
+   public void writeString(String value) throws IOException
+   {
+      if (value == null) {
+         writeInt(0);
+         return;
+      }
+
+      Integer index = stringIndexes.get(value);
+
+      if (index == null) {
+         strings.add(value);
+         index = strings.size();
+         stringIndexes.put(value, index);
+         writeInt(index << 1 | 1);
+         output.writeUTF(value);
+      }
+      else {
+         writeInt(index << 1);
+      }
+   }
+
+   public void writeCallPoint(CallPoint callPoint) throws IOException
+   {
+      StackTraceElement ste = callPoint.getStackTraceElement();
+      writeString(ste.getClassName());
+      writeString(ste.getMethodName());
+      writeString(ste.getFileName());
+      writeSignedInt(ste.getLineNumber());
+   }
+
+   /**
+    * Writes the trailer and flushes the output stream, without closing it.
+    */
+   public void finish() throws IOException
+   {
+      long trailerPosition = counter.bytesWritten;
+      writeInt(strings.size());
+
+      for (String value : strings) {
+         output.writeUTF(value);
+      }
+
+      writeInt(sectionPositions.size());
+
+      for (Map.Entry<String, Long> fileAndPosition : sectionPositions.entrySet()) {
+         writeInt(stringIndexes.get(fileAndPosition.getKey()));
+         output.writeLong(fileAndPosition.getValue());
+      }
+
+      output.writeLong(trailerPosition);
+      output.flush();
+   }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * Provides random access to the data of individual source files in a coverage data file, as written by
+ * {@link CoverageDataOutput}.
+ * <p/>
+ * Only the string table and an index with the position of each file section are read from the trailer when the store
+ * is opened; the data for a source file is decoded each time it is requested, so that callers can process one file at
+ * a time.
+ */
+final class CoverageDataStore
+{
+   private final ByteBuffer contents;
+   private final String[] strings;
+   private final boolean withCallPoints;
+   private final Map<String, Integer> fileToSectionPosition;
+
+   /**
+    * Opens the given binary coverage data file.
+    *
+    * @param memoryMapped whether the file is to be mapped into memory, rather than read into the heap; a mapped file
+    * can't be overwritten while the store is in use on some platforms
+    */
+   CoverageDataStore(File dataFile, boolean memoryMapped) throws IOException
+   {
+      contents = memoryMapped ? mapIntoMemory(dataFile) : readIntoHeap(dataFile);
+
+      CoverageDataInput input = new CoverageDataInput(new BufferInput(contents.duplicate()));
+      withCallPoints = input.readBoolean();
+
+      ByteBuffer trailer = contents.duplicate();
+      trailer.position((int) contents.getLong(contents.limit() - 8));
+      CoverageDataInput trailerInput = new CoverageDataInput(new BufferInput(trailer), null);
+      strings = trailerInput.readStringTable();
+      fileToSectionPosition = readSectionPositions(trailerInput);
+   }
+
+   /**
+    * Reads the positions of file sections from the trailer.
+    */
+   private Map<String, Integer> readSectionPositions(CoverageDataInput trailerInput) throws IOException
+   {
+      int fileCount = trailerInput.readInt();
+      Map<String, Integer> fileToSectionPosition = new LinkedHashMap<String, Integer>(fileCount);
+
+      for (int i = 0; i < fileCount; i++) {
+         String file = strings[trailerInput.readInt()];
+         int sectionPosition = (int) trailerInput.readLong();
+         fileToSectionPosition.put(file, sectionPosition);
+      }
+
+      return fileToSectionPosition;
+   }
+
+   private static ByteBuffer mapIntoMemory(File dataFile) throws IOException
+   {
+      RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+
+      try {
+         FileChannel channel = file.getChannel();
+         return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      finally {
+         file.close();
+      }
+   }
+
+   private static ByteBuffer readIntoHeap(File dataFile) throws IOException
+   {
+      DataInputStream input = new DataInputStream(new FileInputStream(dataFile));
+
+      try {
+         byte[] bytes = new byte[(int) dataFile.length()];
+         input.readFully(bytes);
+         return ByteBuffer.wrap(bytes);
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   private static final class BufferInput extends InputStream
+   {
+      private final ByteBuffer buffer;
+
+      BufferInput(ByteBuffer buffer) { this.buffer = buffer; }
+
+      @Override
+      public int read() { return buffer.hasRemaining() ? buffer.get() & 0xFF : -1; }
+
+      @Override
+      public int read(byte[] b, int off, int len)
+      {
+         if (!buffer.hasRemaining()) {
+            return -1;
+         }
+
+         int n = Math.min(len, buffer.remaining());
+         buffer.get(b, off, n);
+         return n;
+      }
+   }
+
+   boolean isWithCallPoints() { return withCallPoints; }
+   Set<String> getFiles() { return fileToSectionPosition.keySet(); }
+   boolean containsFile(String file) { return fileToSectionPosition.containsKey(file); }
+
+   /**
+    * Decodes the data for the given source file into a new object, or returns {@code null} if the file is not in the
+    * store. Can be called concurrently from multiple threads.
+    */
+   FileCoverageData readFileData(String file) throws IOException
+   {
+      Integer sectionPosition = fileToSectionPosition.get(file);
+
+      if (sectionPosition == null) {
+         return null;
+      }
+
+      ByteBuffer section = contents.duplicate();
+      section.position(sectionPosition);
+
+      FileCoverageData fileData = new FileCoverageData();
+      fileData.readFrom(new CoverageDataInput(new BufferInput(section), strings));
+      return fileData;
+   }
+}
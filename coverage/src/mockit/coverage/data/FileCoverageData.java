@@ -5,6 +5,7 @@
 package mockit.coverage.data;
 
 import java.io.*;
+import java.security.*;
 import java.util.*;
 
 import mockit.coverage.dataItems.*;
@@ -32,6 +33,21 @@ public final class FileCoverageData implements Serializable
    public void addMethod(MethodCoverageData methodData) { pathCoverageInfo.addMethod(methodData); }
    public Collection<MethodCoverageData> getMethods() { return pathCoverageInfo.firstLineToMethodData.values(); }
 
+   /**
+    * Adds the data for a class (together with its inner classes) which was modified for coverage apart from the other
+    * classes in the source file.
+    */
+   public void addClassData(FileCoverageData classData)
+   {
+      lineCoverageInfo.addClassData(classData.lineCoverageInfo);
+
+      for (MethodCoverageData methodData : classData.getMethods()) {
+         pathCoverageInfo.addMethod(methodData);
+      }
+
+      dataCoverageInfo.addClassData(classData.dataCoverageInfo);
+   }
+
    void mergeWithDataFromPreviousTestRun(FileCoverageData previousInfo)
    {
       lineCoverageInfo.mergeInformation(previousInfo.lineCoverageInfo);
@@ -39,6 +55,55 @@ public final class FileCoverageData implements Serializable
       dataCoverageInfo.mergeInformation(previousInfo.dataCoverageInfo);
    }
 
+   public void writeTo(CoverageDataOutput output) throws IOException
+   {
+      output.writeLong(lastModified);
+      lineCoverageInfo.writeTo(output);
+      pathCoverageInfo.writeTo(output);
+      dataCoverageInfo.writeTo(output);
+   }
+
+   /**
+    * Writes the data for a live snapshot, with line execution counts brought up to date.
+    *
+    * @param resettingCounts whether the line and path execution counts written are to be discarded, so that the next
+    *                        snapshot only has executions from now on
+    */
+   void writeSnapshotTo(CoverageDataOutput output, boolean resettingCounts) throws IOException
+   {
+      output.writeLong(lastModified);
+      lineCoverageInfo.writeTo(output, resettingCounts);
+      pathCoverageInfo.writeTo(output, resettingCounts);
+      dataCoverageInfo.writeTo(output);
+   }
+
+   boolean hasExecutions()
+   {
+      lineCoverageInfo.updateExecutionCounts();
+      return lineCoverageInfo.getCoveredItems() > 0 || pathCoverageInfo.hasExecutedPaths();
+   }
+
+   /**
+    * Adds the coverage data for the source file to the given digest, in the same form as written to data files.
+    */
+   public void addToDigest(MessageDigest digest) throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CoverageDataOutput output = new CoverageDataOutput(bytes);
+      writeTo(output);
+      output.finish();
+
+      digest.update(bytes.toByteArray());
+   }
+
+   public void readFrom(CoverageDataInput input) throws IOException
+   {
+      lastModified = input.readLong();
+      lineCoverageInfo.readFrom(input);
+      pathCoverageInfo.readFrom(input);
+      dataCoverageInfo.readFrom(input);
+   }
+
    void reset()
    {
       lineCoverageInfo.reset();
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.util.*;
+
+import mockit.coverage.lines.*;
+
+/**
+ * The metadata written together with classes instrumented offline for coverage, so that a later test run can use the
+ * instrumented classes as they are, without modifying them again.
+ * <p/>
+ * It uses the format of coverage data files, containing the coverage data (without execution counts) for the source
+ * files of the instrumented classes, followed by the {@link ExecutionCounters} referred to by their probes, and the
+ * names of the instrumented classes.
+ */
+public final class InstrumentationMetadata
+{
+   public static final String RESOURCE_NAME = "META-INF/jmockit-coverage-metadata.dat";
+
+   private InstrumentationMetadata() {}
+
+   public static void writeTo(OutputStream outputStream, List<ExecutionCounters> counters, List<String> classNames)
+      throws IOException
+   {
+      CoverageData data = CoverageData.instance();
+      Set<String> sourceFiles = new LinkedHashSet<String>();
+
+      for (ExecutionCounters executionCounters : counters) {
+         sourceFiles.add(executionCounters.sourceFile);
+      }
+
+      CoverageDataOutput output = new CoverageDataOutput(outputStream);
+      output.writeInt(sourceFiles.size());
+
+      for (String sourceFile : sourceFiles) {
+         output.writeString(sourceFile);
+         data.getFileData(sourceFile).writeTo(output);
+      }
+
+      output.writeInt(counters.size());
+
+      for (ExecutionCounters executionCounters : counters) {
+         String sourceFile = executionCounters.sourceFile;
+         output.writeInt(executionCounters.id);
+         output.writeString(sourceFile);
+         executionCounters.writeSlotsTo(output, data.getFileData(sourceFile).getLineToLineData());
+      }
+
+      output.writeInt(classNames.size());
+
+      for (String className : classNames) {
+         output.writeString(className);
+      }
+
+      output.finish();
+   }
+
+   /**
+    * Adds the coverage data and the execution counters from the given metadata to the current test run.
+    *
+    * @return the names of the classes instrumented offline
+    */
+   public static List<String> readFrom(InputStream inputStream) throws IOException
+   {
+      CoverageData data = CoverageData.instance();
+      CoverageDataInput input = new CoverageDataInput(inputStream);
+
+      for (int fileCount = input.readInt(); fileCount > 0; fileCount--) {
+         String sourceFile = input.readString();
+         FileCoverageData fileData = new FileCoverageData();
+         fileData.readFrom(input);
+
+         if (data.getFileData(sourceFile) != null) {
+            throw new IllegalStateException("Coverage data for " + sourceFile + " found in more than one metadata file");
+         }
+
+         data.addFileData(sourceFile, fileData);
+      }
+
+      for (int countersCount = input.readInt(); countersCount > 0; countersCount--) {
+         int id = input.readInt();
+         String sourceFile = input.readString();
+         data.getFileData(sourceFile).lineCoverageInfo.readExecutionCountersFrom(input, sourceFile, id);
+      }
+
+      int classCount = input.readInt();
+      List<String> classNames = new ArrayList<String>(classCount);
+
+      for (int i = 0; i < classCount; i++) {
+         classNames.add(input.readString());
+      }
+
+      return classNames;
+   }
+}
@@ -6,6 +6,8 @@ package mockit.coverage.dataItems;
 
 import java.io.*;
 
+import mockit.coverage.data.*;
+
 public abstract class FieldData implements Serializable
 {
    private static final long serialVersionUID = 8565599590976858508L;
@@ -35,6 +37,20 @@ public abstract class FieldData implements Serializable
 
    abstract void markAsCoveredIfNoUnreadValuesAreLeft();
 
+   final void writeTo(CoverageDataOutput output) throws IOException
+   {
+      output.writeInt(readCount);
+      output.writeInt(writeCount);
+      output.writeBoolean(isCovered());
+   }
+
+   final void readFrom(CoverageDataInput input) throws IOException
+   {
+      readCount = input.readInt();
+      writeCount = input.readInt();
+      covered = input.readBoolean();
+   }
+
    final void addCountsFromPreviousTestRun(FieldData previousInfo)
    {
       readCount += previousInfo.readCount;
@@ -8,63 +8,105 @@ import java.util.*;
 
 import mockit.internal.state.*;
 
+/**
+ * Coverage data for an instance field, which is covered if, in any single test, every value assigned to the field in
+ * an owner instance was read afterwards.
+ * <p/>
+ * Only the instances with an unread assignment in the running test are tracked, by identity hash code; once a test
+ * ends, it leaves only whether it covered the field, and the unread instances of the first test which didn't.
+ * To bound the memory used, at most {@link #MAX_UNREAD_INSTANCES_PER_TEST} instances are tracked in a given test;
+ * beyond that, the test can no longer cover the field.
+ */
 public final class InstanceFieldData extends FieldData
 {
    private static final long serialVersionUID = 6991762113575259754L;
+   static final int MAX_UNREAD_INSTANCES_PER_TEST = 1 << 14;
 
-   private final transient Map<Integer, List<Integer>> testIdsToAssignments = new HashMap<Integer, List<Integer>>();
+   private transient int currentTestId;
+   private transient IntHashSet unreadInstancesInCurrentTest;
+   private transient boolean unreadInstancesDroppedInCurrentTest;
+   private transient boolean coveredByPreviousTest;
+   private transient List<Integer> unreadInstancesInFirstUncoveringTest;
 
-   void registerAssignment(Object instance)
+   synchronized void registerAssignment(Object instance)
    {
-      List<Integer> dataForRunningTest = getDataForRunningTest();
-      Integer instanceId = System.identityHashCode(instance);
+      IntHashSet unreadInstances = getDataForRunningTest();
+      int instanceId = System.identityHashCode(instance);
 
-      if (!dataForRunningTest.contains(instanceId)) {
-         dataForRunningTest.add(instanceId);
+      if (unreadInstances.size() < MAX_UNREAD_INSTANCES_PER_TEST) {
+         unreadInstances.add(instanceId);
+      }
+      else if (!unreadInstances.contains(instanceId)) {
+         unreadInstancesDroppedInCurrentTest = true;
       }
 
       writeCount++;
    }
 
-   void registerRead(Object instance)
+   synchronized void registerRead(Object instance)
    {
-      List<Integer> dataForRunningTest = getDataForRunningTest();
-      Integer instanceId = System.identityHashCode(instance);
+      IntHashSet unreadInstances = getDataForRunningTest();
+      int instanceId = System.identityHashCode(instance);
 
-      dataForRunningTest.remove(instanceId);
+      unreadInstances.remove(instanceId);
       readCount++;
    }
 
-   private List<Integer> getDataForRunningTest()
+   private IntHashSet getDataForRunningTest()
    {
       int testId = TestRun.getTestId();
-      List<Integer> fieldData = testIdsToAssignments.get(testId);
 
-      if (fieldData == null) {
-         fieldData = new LinkedList<Integer>();
-         testIdsToAssignments.put(testId, fieldData);
+      if (unreadInstancesInCurrentTest == null) {
+         unreadInstancesInCurrentTest = new IntHashSet();
+         currentTestId = testId;
+      }
+      else if (testId != currentTestId) {
+         endCurrentTest();
+         currentTestId = testId;
+      }
+
+      return unreadInstancesInCurrentTest;
+   }
+
+   private void endCurrentTest()
+   {
+      if (isCoveredByCurrentTest()) {
+         coveredByPreviousTest = true;
+      }
+      else if (unreadInstancesInFirstUncoveringTest == null) {
+         unreadInstancesInFirstUncoveringTest = unreadInstancesInCurrentTest.toList();
       }
 
-      return fieldData;
+      unreadInstancesInCurrentTest.clear();
+      unreadInstancesDroppedInCurrentTest = false;
+   }
+
+   private boolean isCoveredByCurrentTest()
+   {
+      return
+         unreadInstancesInCurrentTest != null && unreadInstancesInCurrentTest.isEmpty() &&
+         !unreadInstancesDroppedInCurrentTest;
    }
 
    @Override
-   void markAsCoveredIfNoUnreadValuesAreLeft()
+   synchronized void markAsCoveredIfNoUnreadValuesAreLeft()
    {
-      for (List<Integer> unreadInstances : testIdsToAssignments.values()) {
-         if (unreadInstances.isEmpty()) {
-            covered = true;
-            break;
-         }
+      if (coveredByPreviousTest || isCoveredByCurrentTest()) {
+         covered = true;
       }
    }
 
-   public List<Integer> getOwnerInstancesWithUnreadAssignments()
+   public synchronized List<Integer> getOwnerInstancesWithUnreadAssignments()
    {
       if (isCovered()) {
          return Collections.emptyList();
       }
 
-      return testIdsToAssignments.values().iterator().next();
+      if (unreadInstancesInFirstUncoveringTest != null) {
+         return unreadInstancesInFirstUncoveringTest;
+      }
+
+      return unreadInstancesInCurrentTest == null ?
+         Collections.<Integer>emptyList() : unreadInstancesInCurrentTest.toList();
    }
 }
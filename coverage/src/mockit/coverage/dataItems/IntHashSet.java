@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.dataItems;
+
+import java.util.*;
+
+/**
+ * A set of {@code int} values stored in a single array with open addressing, so that adding or removing a value
+ * neither boxes it nor allocates a node.
+ */
+final class IntHashSet
+{
+   // Zero marks a free position in the table, so it's kept apart when stored.
+   private int[] table;
+   private int size;
+   private boolean containsZero;
+
+   IntHashSet() { table = new int[16]; }
+
+   int size() { return containsZero ? size + 1 : size; }
+   boolean isEmpty() { return size == 0 && !containsZero; }
+
+   private int indexFor(int value)
+   {
+      int hash = value * 0x9E3779B9;
+      return (hash ^ hash >>> 16) & table.length - 1;
+   }
+
+   boolean contains(int value)
+   {
+      if (value == 0) {
+         return containsZero;
+      }
+
+      for (int i = indexFor(value); table[i] != 0; i = i + 1 & table.length - 1) {
+         if (table[i] == value) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   void add(int value)
+   {
+      if (value == 0) {
+         containsZero = true;
+         return;
+      }
+
+      int i = indexFor(value);
+
+      while (table[i] != 0) {
+         if (table[i] == value) {
+            return;
+         }
+
+         i = i + 1 & table.length - 1;
+      }
+
+      table[i] = value;
+      size++;
+
+      if (2 * size > table.length) {
+         resize();
+      }
+   }
+
+   private void resize()
+   {
+      int[] oldTable = table;
+      table = new int[2 * oldTable.length];
+
+      for (int value : oldTable) {
+         if (value != 0) {
+            int i = indexFor(value);
+
+            while (table[i] != 0) {
+               i = i + 1 & table.length - 1;
+            }
+
+            table[i] = value;
+         }
+      }
+   }
+
+   void remove(int value)
+   {
+      if (value == 0) {
+         containsZero = false;
+         return;
+      }
+
+      int mask = table.length - 1;
+      int i = indexFor(value);
+
+      while (table[i] != value) {
+         if (table[i] == 0) {
+            return;
+         }
+
+         i = i + 1 & mask;
+      }
+
+      // Shifts back the following values in the same run, so that no lookup stops at the position being freed.
+      for (int j = i + 1 & mask; table[j] != 0; j = j + 1 & mask) {
+         int home = indexFor(table[j]);
+
+         if ((j - home & mask) >= (j - i & mask)) {
+            table[i] = table[j];
+            i = j;
+         }
+      }
+
+      table[i] = 0;
+      size--;
+   }
+
+   void clear()
+   {
+      Arrays.fill(table, 0);
+      size = 0;
+      containsZero = false;
+   }
+
+   List<Integer> toList()
+   {
+      List<Integer> values = new ArrayList<Integer>(size());
+
+      if (containsZero) {
+         values.add(0);
+      }
+
+      for (int value : table) {
+         if (value != 0) {
+            values.add(value);
+         }
+      }
+
+      return values;
+   }
+}
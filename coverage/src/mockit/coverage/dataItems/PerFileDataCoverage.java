@@ -40,6 +40,13 @@ public final class PerFileDataCoverage implements PerFileCoverage
       }
    }
 
+   public void addClassData(PerFileDataCoverage classData)
+   {
+      allFields.addAll(classData.allFields);
+      staticFieldsData.putAll(classData.staticFieldsData);
+      instanceFieldsData.putAll(classData.instanceFieldsData);
+   }
+
    public boolean isFieldWithCoverageData(String classAndFieldNames)
    {
       return
@@ -135,6 +142,52 @@ public final class PerFileDataCoverage implements PerFileCoverage
       return CoveragePercentage.calculate(getCoveredItems(), totalFields);
    }
 
+   public void writeTo(CoverageDataOutput output) throws IOException
+   {
+      output.writeInt(allFields.size());
+
+      for (String classAndField : allFields) {
+         output.writeString(classAndField);
+      }
+
+      writeFieldsData(output, staticFieldsData);
+      writeFieldsData(output, instanceFieldsData);
+   }
+
+   private static void writeFieldsData(CoverageDataOutput output, Map<String, ? extends FieldData> fieldsData)
+      throws IOException
+   {
+      output.writeInt(fieldsData.size());
+
+      for (Entry<String, ? extends FieldData> classAndFieldAndData : fieldsData.entrySet()) {
+         output.writeString(classAndFieldAndData.getKey());
+         classAndFieldAndData.getValue().writeTo(output);
+      }
+   }
+
+   public void readFrom(CoverageDataInput input) throws IOException
+   {
+      for (int fieldCount = input.readInt(); fieldCount > 0; fieldCount--) {
+         allFields.add(input.readString());
+      }
+
+      for (int fieldCount = input.readInt(); fieldCount > 0; fieldCount--) {
+         String classAndField = input.readString();
+         StaticFieldData staticData = new StaticFieldData();
+         staticData.readFrom(input);
+         staticFieldsData.put(classAndField, staticData);
+      }
+
+      for (int fieldCount = input.readInt(); fieldCount > 0; fieldCount--) {
+         String classAndField = input.readString();
+         InstanceFieldData instanceData = new InstanceFieldData();
+         instanceData.readFrom(input);
+         instanceFieldsData.put(classAndField, instanceData);
+      }
+
+      coveredDataItems = -1;
+   }
+
    public void mergeInformation(PerFileDataCoverage previousInfo)
    {
       addInfoFromPreviousTestRun(staticFieldsData, previousInfo.staticFieldsData);
@@ -4,7 +4,10 @@
  */
 package mockit.coverage.lines;
 
+import java.io.*;
+
 import mockit.coverage.*;
+import mockit.coverage.data.*;
 import mockit.external.asm4.*;
 
 /**
@@ -46,6 +49,9 @@ public final class BranchCoverageData extends LineSegmentData
       addCallPointIfAny(callPoint);
    }
 
+   void addJumpExecutions(int count) { jumpExecutionCount += count; }
+   int getJumpExecutionCount() { return jumpExecutionCount; }
+
    @Override
    public boolean isCovered()
    {
@@ -55,6 +61,7 @@ public final class BranchCoverageData extends LineSegmentData
    @Override
    public int getExecutionCount()
    {
+      updateExecutionCount();
       return executionCount > 0 ? executionCount : jumpExecutionCount > 0 ? jumpExecutionCount : 0;
    }
 
@@ -64,6 +71,20 @@ public final class BranchCoverageData extends LineSegmentData
       jumpExecutionCount += previousData.jumpExecutionCount;
    }
 
+   void writeTo(CoverageDataOutput output) throws IOException
+   {
+      writeSegmentTo(output);
+      output.writeSignedInt(jumpExecutionCount);
+   }
+
+   static BranchCoverageData readFrom(CoverageDataInput input) throws IOException
+   {
+      BranchCoverageData branchData = new BranchCoverageData(null, null);
+      branchData.readSegmentFrom(input);
+      branchData.jumpExecutionCount = input.readSignedInt();
+      return branchData;
+   }
+
    @Override
    void reset()
    {
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.lines;
+
+import java.io.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+
+/**
+ * The distinct call points from which a line segment was executed, in the order in which they were first found, each
+ * with the number of executions from it.
+ * <p/>
+ * At most {@link #MAX_CALL_POINTS} distinct call points are kept for a segment, as given by the
+ * "jmockit-coverage-maxCallPoints" system property (100 by default); executions from any additional call points are
+ * only counted, so that hot lines reached from many tests don't make the data and the HTML report grow without limit.
+ */
+public final class CallPointCounts implements Serializable
+{
+   private static final long serialVersionUID = 7394637436537211493L;
+   private static final int DEFAULT_MAX_CALL_POINTS = 100;
+   static final int MAX_CALL_POINTS = getMaxCallPoints();
+
+   private static int getMaxCallPoints()
+   {
+      String maxCallPoints = System.getProperty("jmockit-coverage-maxCallPoints");
+
+      if (maxCallPoints == null) {
+         return DEFAULT_MAX_CALL_POINTS;
+      }
+
+      try {
+         return Math.max(0, Integer.parseInt(maxCallPoints.trim()));
+      }
+      catch (NumberFormatException ignore) {
+         System.out.println(
+            "JMockit: Invalid value \"" + maxCallPoints + "\" for jmockit-coverage-maxCallPoints; using " +
+            DEFAULT_MAX_CALL_POINTS);
+         return DEFAULT_MAX_CALL_POINTS;
+      }
+   }
+
+   private CallPoint[] callPoints;
+   private int[] counts;
+   private int size;
+   private int executionsFromOtherCallPoints;
+
+   // Open addressing table with the position (index + 1) in "callPoints" of each call point, at the slot given by its
+   // hash code; rebuilt when needed after deserialization.
+   private transient int[] positions;
+
+   CallPointCounts() { this(4); }
+
+   private CallPointCounts(int initialCapacity)
+   {
+      int capacity = Math.min(initialCapacity, MAX_CALL_POINTS);
+      callPoints = new CallPoint[capacity];
+      counts = new int[capacity];
+      rebuildPositions();
+   }
+
+   private void rebuildPositions()
+   {
+      int tableLength = 2;
+
+      while (tableLength < 2 * callPoints.length) {
+         tableLength <<= 1;
+      }
+
+      positions = new int[tableLength];
+
+      for (int i = 0; i < size; i++) {
+         positions[findSlot(callPoints[i])] = i + 1;
+      }
+   }
+
+   /**
+    * Finds the slot in the table of positions which holds the given call point, or the empty slot where it would go.
+    * There is always an empty slot, since the table has at least twice as many slots as there are call points.
+    */
+   private int findSlot(CallPoint callPoint)
+   {
+      int hash = callPoint.hashCode();
+      int mask = positions.length - 1;
+      int slot = (hash ^ hash >>> 16) & mask;
+      int position;
+
+      while ((position = positions[slot]) != 0 && !callPoint.equals(callPoints[position - 1])) {
+         slot = slot + 1 & mask;
+      }
+
+      return slot;
+   }
+
+   public int size() { return size; }
+   public CallPoint getCallPoint(int index) { return callPoints[index]; }
+   public int getCount(int index) { return counts[index]; }
+   public int getExecutionsFromOtherCallPoints() { return executionsFromOtherCallPoints; }
+
+   void add(CallPoint callPoint, int count)
+   {
+      // Consecutive executions usually come from the same call point, which is then found without hashing.
+      if (size > 0 && callPoints[size - 1] == callPoint) {
+         counts[size - 1] += count;
+         return;
+      }
+
+      if (positions == null) {
+         rebuildPositions();
+      }
+
+      int slot = findSlot(callPoint);
+      int position = positions[slot];
+
+      if (position > 0) {
+         counts[position - 1] += count;
+         return;
+      }
+
+      if (size == MAX_CALL_POINTS) {
+         executionsFromOtherCallPoints += count;
+         return;
+      }
+
+      if (size == callPoints.length) {
+         grow();
+         slot = findSlot(callPoint);
+      }
+
+      callPoints[size] = callPoint;
+      counts[size] = count;
+      size++;
+      positions[slot] = size;
+   }
+
+   private void grow()
+   {
+      int newCapacity = Math.min(Math.max(2 * size, 4), MAX_CALL_POINTS);
+      CallPoint[] newCallPoints = new CallPoint[newCapacity];
+      int[] newCounts = new int[newCapacity];
+      System.arraycopy(callPoints, 0, newCallPoints, 0, size);
+      System.arraycopy(counts, 0, newCounts, 0, size);
+      callPoints = newCallPoints;
+      counts = newCounts;
+      rebuildPositions();
+   }
+
+   /**
+    * Returns the call points in the given previous data followed by the ones in this object, with the counts for call
+    * points found in both added up.
+    */
+   CallPointCounts addToCountsFromPreviousTestRun(CallPointCounts previousCounts)
+   {
+      CallPointCounts mergedCounts = new CallPointCounts(previousCounts.size + size);
+      mergedCounts.addAll(previousCounts);
+      mergedCounts.addAll(this);
+      return mergedCounts;
+   }
+
+   private void addAll(CallPointCounts other)
+   {
+      for (int i = 0; i < other.size; i++) {
+         add(other.callPoints[i], other.counts[i]);
+      }
+
+      executionsFromOtherCallPoints += other.executionsFromOtherCallPoints;
+   }
+
+   void writeTo(CoverageDataOutput output) throws IOException
+   {
+      output.writeInt(size);
+
+      for (int i = 0; i < size; i++) {
+         output.writeCallPoint(callPoints[i]);
+         output.writeInt(counts[i]);
+      }
+
+      output.writeInt(executionsFromOtherCallPoints);
+   }
+
+   static void writeEmptyTo(CoverageDataOutput output) throws IOException
+   {
+      output.writeInt(0);
+      output.writeInt(0);
+   }
+
+   /**
+    * Reads the call points of a segment, or returns {@code null} if there are none.
+    */
+   static CallPointCounts readFrom(CoverageDataInput input) throws IOException
+   {
+      int entryCount = input.readInt();
+      CallPointCounts callPointCounts = entryCount == 0 ? null : new CallPointCounts(entryCount);
+
+      for (int i = 0; i < entryCount; i++) {
+         CallPoint callPoint = input.readCallPoint();
+         int count = input.readInt();
+         callPointCounts.add(callPoint, count);
+      }
+
+      int executionsFromOtherCallPoints = input.readInt();
+
+      if (executionsFromOtherCallPoints > 0) {
+         if (callPointCounts == null) {
+            callPointCounts = new CallPointCounts(0);
+         }
+
+         callPointCounts.executionsFromOtherCallPoints = executionsFromOtherCallPoints;
+      }
+
+      return callPointCounts;
+   }
+}
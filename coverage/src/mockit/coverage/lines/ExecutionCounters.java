@@ -0,0 +1,670 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.lines;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+
+/**
+ * Execution counters for the lines and branches of a single instrumented class.
+ * <p/>
+ * Each instance gets an integer id at instrumentation time, and each line segment probed in the class gets a dense
+ * slot in an array of counters.
+ * That way, the probes inserted in the modified bytecode only need to increment an array element, instead of looking
+ * up the coverage data for the source file and line.
+ * The counts are transferred to the corresponding {@link LineSegmentData} objects on demand, when coverage data is
+ * about to be written, or when the execution count of a line segment is read.
+ * <p/>
+ * When the "jmockit-coverage-counters" system property is set to "perThread", each thread increments its own counter
+ * arrays, which are only summed up when counts are transferred.
+ * This avoids lost updates and contention between cores when covered code runs concurrently in several threads, at
+ * the cost of a thread-local lookup for each probe execution.
+ * The counts of a thread which terminated are added to a total kept for each class, and its arrays are dropped.
+ * Counters are incremented without synchronization, so the counts transferred while other threads are still running
+ * may miss their latest executions; these are picked up by a later transfer, and are always seen once the thread has
+ * terminated.
+ * <p/>
+ * When {@linkplain CoverageSnapshots per-test snapshots} are active, or once a
+ * {@linkplain CoverageData#writeSnapshotToFile snapshot data file} has been written, each instance is also queued the
+ * first time one of its slots executes after a snapshot, so that the next snapshot only needs to visit the counters
+ * actually touched.
+ * <p/>
+ * When the "jmockit-coverage-sampling" system property is set to a number N, each slot is disabled once it has been
+ * executed N times, after which its probe returns right away, without updating counters or creating call points.
+ * Lines and branches are still reported as covered or not, but execution counts (including those in per-test
+ * snapshots) become lower bounds.
+ */
+public final class ExecutionCounters
+{
+   private static final Object REGISTRATION_LOCK = new Object();
+   private static volatile ExecutionCounters[] allCounters = new ExecutionCounters[256];
+   private static int countersCreated;
+
+   private static final boolean PER_THREAD_COUNTS =
+      "perThread".equals(System.getProperty("jmockit-coverage-counters"));
+
+   /**
+    * The counter arrays of a single thread, indexed by counters id and created on first use.
+    */
+   private static final class ThreadCounts
+   {
+      final Thread thread = Thread.currentThread();
+      private volatile int[][] countsById = new int[allCounters.length][];
+
+      int[] countsFor(ExecutionCounters counters)
+      {
+         int[][] allCounts = countsById;
+         int id = counters.id;
+
+         if (id >= allCounts.length) {
+            int[][] newCounts = new int[allCounters.length][];
+            System.arraycopy(allCounts, 0, newCounts, 0, allCounts.length);
+            allCounts = newCounts;
+         }
+
+         int[] counts = allCounts[id];
+
+         if (counts == null) {
+            counts = new int[counters.segments.length];
+            allCounts[id] = counts;
+            countsById = allCounts;
+         }
+
+         return counts;
+      }
+
+      int[] getCountsIfAny(int id)
+      {
+         int[][] allCounts = countsById;
+         return id < allCounts.length ? allCounts[id] : null;
+      }
+
+      void addToCountsOfTerminatedThreads()
+      {
+         int[][] allCounts = countsById;
+
+         for (int id = 0; id < allCounts.length; id++) {
+            int[] counts = allCounts[id];
+
+            if (counts != null) {
+               int[] totals = allCounters[id].countsOfTerminatedThreads;
+
+               for (int slot = 0; slot < totals.length; slot++) {
+                  totals[slot] += counts[slot];
+               }
+            }
+         }
+      }
+   }
+
+   // The counter arrays of live threads, and of threads which terminated but were not folded into the totals yet.
+   private static final List<ThreadCounts> ALL_THREAD_COUNTS = new ArrayList<ThreadCounts>();
+   private static final ThreadLocal<ThreadCounts> THREAD_COUNTS = new ThreadLocal<ThreadCounts>()
+   {
+      @Override
+      protected ThreadCounts initialValue()
+      {
+         ThreadCounts threadCounts = new ThreadCounts();
+
+         synchronized (ALL_THREAD_COUNTS) {
+            foldCountsOfTerminatedThreads();
+            ALL_THREAD_COUNTS.add(threadCounts);
+         }
+
+         return threadCounts;
+      }
+   };
+
+   /**
+    * Adds the counts of each terminated thread to the totals of the corresponding classes, and drops its counter arrays.
+    * Detecting that a thread terminated guarantees that all of its increments are visible.
+    */
+   private static void foldCountsOfTerminatedThreads()
+   {
+      for (Iterator<ThreadCounts> itr = ALL_THREAD_COUNTS.iterator(); itr.hasNext(); ) {
+         ThreadCounts threadCounts = itr.next();
+
+         if (!threadCounts.thread.isAlive()) {
+            threadCounts.addToCountsOfTerminatedThreads();
+            itr.remove();
+         }
+      }
+   }
+
+   private static final int SAMPLING_LIMIT = getSamplingLimit();
+   private static final boolean SAMPLING = SAMPLING_LIMIT > 0;
+
+   private static int getSamplingLimit()
+   {
+      String limit = System.getProperty("jmockit-coverage-sampling");
+      return limit == null ? 0 : Integer.parseInt(limit.trim());
+   }
+
+   public static boolean isSampling() { return SAMPLING; }
+
+   private static volatile boolean trackingTouchedCounters =
+      System.getProperty("jmockit-coverage-testSnapshots") != null;
+   private static final Queue<ExecutionCounters> TOUCHED_COUNTERS = new ConcurrentLinkedQueue<ExecutionCounters>();
+
+   // The source files of the counters taken from the queue, by whichever kind of snapshot, since the last data snapshot:
+   private static final Set<String> SOURCE_FILES_TOUCHED = new LinkedHashSet<String>();
+
+   public static ExecutionCounters get(int id) { return allCounters[id]; }
+
+   public static int getCountersCreated()
+   {
+      synchronized (REGISTRATION_LOCK) {
+         return countersCreated;
+      }
+   }
+
+   public final int id;
+   public final String sourceFile;
+   private PerFileLineCoverage owner;
+   private final List<LineSegmentData> slotSegments;
+   private final List<Integer> slotLineList;
+   private final BitSet jumpSlots;
+   private LineSegmentData[] segments;
+   private int[] slotLines;
+   private int[] sharedCounts;
+   private int[] countsOfTerminatedThreads;
+
+   // Slots which reached the sampling limit, if sampling; written without synchronization, since a few extra executions
+   // registered by threads which don't see the update yet make no difference.
+   private boolean[] disabledSlots;
+   private int samplingLimit;
+
+   // Slots for which each call point was already added, when capturing test methods only:
+   private final ConcurrentMap<CallPoint, AtomicIntegerArray> slotsPerCallPoint;
+
+   // Totals already added to the line segments, so that counters are only read (never written) when transferring:
+   private int[] countsTransferred;
+
+   // Used only for per-test snapshots:
+   private final AtomicBoolean touchedSinceSnapshot;
+   private boolean executionsRegisteredInSegments;
+   private int[] countsAtLastSnapshot;
+
+   ExecutionCounters(PerFileLineCoverage owner, String sourceFile) { this(owner, sourceFile, -1); }
+
+   /**
+    * Creates counters with the given id, as assigned when the class was instrumented offline, or with the next free id
+    * if negative.
+    */
+   ExecutionCounters(PerFileLineCoverage owner, String sourceFile, int requestedId)
+   {
+      this.owner = owner;
+      this.sourceFile = sourceFile;
+      slotSegments = new ArrayList<LineSegmentData>();
+      slotLineList = new ArrayList<Integer>();
+      jumpSlots = new BitSet();
+      touchedSinceSnapshot = new AtomicBoolean();
+      slotsPerCallPoint = new ConcurrentHashMap<CallPoint, AtomicIntegerArray>();
+
+      synchronized (REGISTRATION_LOCK) {
+         ExecutionCounters[] counters = allCounters;
+         id = requestedId < 0 ? countersCreated : requestedId;
+
+         if (id < counters.length && counters[id] != null) {
+            throw new IllegalStateException("Execution counters with id " + id + " already exist");
+         }
+
+         if (id >= counters.length) {
+            int newLength = counters.length;
+            do { newLength *= 2; } while (id >= newLength);
+
+            ExecutionCounters[] newCounters = new ExecutionCounters[newLength];
+            System.arraycopy(counters, 0, newCounters, 0, counters.length);
+            counters = newCounters;
+         }
+
+         counters[id] = this;
+         allCounters = counters;
+
+         if (id >= countersCreated) {
+            countersCreated = id + 1;
+         }
+      }
+   }
+
+   /**
+    * Assigns a new slot for executions of the given line, or of the given branch when not jumping to its target.
+    */
+   public int addSlot(int line, LineSegmentData segmentData)
+   {
+      int slot = slotSegments.size();
+      slotSegments.add(segmentData);
+      slotLineList.add(line);
+      segmentData.addCounterSlot(this, slot);
+      return slot;
+   }
+
+   public int addJumpSlot(int line, BranchCoverageData branchData)
+   {
+      int slot = addSlot(line, branchData);
+      jumpSlots.set(slot);
+      return slot;
+   }
+
+   /**
+    * Creates the array of counters, once all slots have been assigned.
+    */
+   public void allocate() { allocate(SAMPLING_LIMIT); }
+
+   /**
+    * @param samplingLimit the number of executions after which each slot gets disabled, or zero for no sampling
+    */
+   void allocate(int samplingLimit)
+   {
+      segments = slotSegments.toArray(new LineSegmentData[slotSegments.size()]);
+      slotSegments.clear();
+      slotLines = new int[segments.length];
+
+      for (int slot = 0; slot < slotLines.length; slot++) {
+         slotLines[slot] = slotLineList.get(slot);
+      }
+
+      slotLineList.clear();
+      countsTransferred = new int[segments.length];
+      countsAtLastSnapshot = new int[segments.length];
+
+      if (PER_THREAD_COUNTS) {
+         countsOfTerminatedThreads = new int[segments.length];
+      }
+      else {
+         sharedCounts = new int[segments.length];
+      }
+
+      if (samplingLimit > 0) {
+         disabledSlots = new boolean[segments.length];
+         this.samplingLimit = samplingLimit;
+      }
+   }
+
+   public boolean isSlotDisabled(int slot) { return disabledSlots != null && disabledSlots[slot]; }
+
+   private void disableSlotIfSamplingLimitReached(int slot, int executionCount)
+   {
+      if (executionCount >= samplingLimit) {
+         disabledSlots[slot] = true;
+      }
+   }
+
+   /**
+    * Writes the slots assigned so far, with each line segment identified by its line and its position in the line
+    * (zero for the line itself, or one plus the index of the branch).
+    */
+   public void writeSlotsTo(CoverageDataOutput output, Map<Integer, LineCoverageData> lineToLineData)
+      throws IOException
+   {
+      // Counters for a class whose modification was interrupted were never allocated, and have no slots.
+      int slotCount = segments == null ? 0 : segments.length;
+      output.writeInt(slotCount);
+
+      for (int slot = 0; slot < slotCount; slot++) {
+         int line = slotLines[slot];
+         LineSegmentData segmentData = segments[slot];
+         LineCoverageData lineData = lineToLineData.get(line);
+         int segmentIndex = segmentData == lineData ? 0 : 1 + lineData.getBranches().indexOf(segmentData);
+
+         output.writeInt(line);
+         output.writeInt(segmentIndex);
+         output.writeBoolean(jumpSlots.get(slot));
+      }
+   }
+
+   void readSlotsFrom(CoverageDataInput input, Map<Integer, LineCoverageData> lineToLineData) throws IOException
+   {
+      int slotCount = input.readInt();
+
+      for (int i = 0; i < slotCount; i++) {
+         int line = input.readInt();
+         int segmentIndex = input.readInt();
+         boolean jumpSlot = input.readBoolean();
+         LineCoverageData lineData = lineToLineData.get(line);
+
+         if (segmentIndex == 0) {
+            addSlot(line, lineData);
+         }
+         else {
+            BranchCoverageData branchData = lineData.getBranchData(segmentIndex - 1);
+
+            if (jumpSlot) {
+               addJumpSlot(line, branchData);
+            }
+            else {
+               addSlot(line, branchData);
+            }
+         }
+      }
+
+      allocate();
+   }
+
+   void replaceSegment(LineSegmentData segmentData, LineSegmentData newSegmentData)
+   {
+      if (segments == null) {
+         return;
+      }
+
+      for (int slot = 0; slot < segments.length; slot++) {
+         if (segments[slot] == segmentData) {
+            segments[slot] = newSegmentData;
+            newSegmentData.addCounterSlot(this, slot);
+         }
+      }
+   }
+
+   void setOwner(PerFileLineCoverage owner) { this.owner = owner; }
+
+   public void registerExecution(int slot)
+   {
+      int[] counts = PER_THREAD_COUNTS ? THREAD_COUNTS.get().countsFor(this) : sharedCounts;
+      int executionCount = ++counts[slot];
+
+      if (disabledSlots != null) {
+         disableSlotIfSamplingLimitReached(slot, executionCount);
+      }
+
+      if (trackingTouchedCounters) {
+         markAsTouched();
+      }
+   }
+
+   private void markAsTouched()
+   {
+      if (!touchedSinceSnapshot.get() && touchedSinceSnapshot.compareAndSet(false, true)) {
+         TOUCHED_COUNTERS.add(this);
+      }
+   }
+
+   public void registerExecution(int slot, CallPoint callPoint)
+   {
+      LineSegmentData segmentData = segments[slot];
+
+      if (trackingTouchedCounters) {
+         executionsRegisteredInSegments = true;
+         markAsTouched();
+      }
+
+      if (jumpSlots.get(slot)) {
+         ((BranchCoverageData) segmentData).registerJumpExecution(callPoint);
+      }
+      else if (segmentData instanceof BranchCoverageData) {
+         ((BranchCoverageData) segmentData).registerNoJumpExecution(callPoint);
+      }
+      else {
+         segmentData.registerExecution(callPoint);
+      }
+
+      if (disabledSlots != null) {
+         int executionCount = jumpSlots.get(slot) ?
+            ((BranchCoverageData) segmentData).getJumpExecutionCount() : segmentData.executionCount;
+         disableSlotIfSamplingLimitReached(slot, executionCount);
+      }
+   }
+
+   /**
+    * Registers an execution through the counters, adding the given test method call point to the line segment only the
+    * first time it executes the slot.
+    */
+   public void registerExecutionFromTestMethod(int slot, CallPoint callPoint)
+   {
+      registerExecution(slot);
+
+      if (callPoint != null && isFirstExecutionFrom(callPoint, slot)) {
+         segments[slot].addCallPointIfAny(callPoint);
+      }
+   }
+
+   /**
+    * Forgets which slots were executed from each test method, once the call points in the line segments are discarded.
+    */
+   void resetCallPoints() { slotsPerCallPoint.clear(); }
+
+   private boolean isFirstExecutionFrom(CallPoint callPoint, int slot)
+   {
+      AtomicIntegerArray slotsExecuted = slotsPerCallPoint.get(callPoint);
+
+      if (slotsExecuted == null) {
+         AtomicIntegerArray newSlots = new AtomicIntegerArray(segments.length);
+         slotsExecuted = slotsPerCallPoint.putIfAbsent(callPoint, newSlots);
+
+         if (slotsExecuted == null) {
+            slotsExecuted = newSlots;
+         }
+      }
+
+      return slotsExecuted.compareAndSet(slot, 0, 1);
+   }
+
+   private int[] getTotalCounts()
+   {
+      if (!PER_THREAD_COUNTS) {
+         return sharedCounts.clone();
+      }
+
+      synchronized (ALL_THREAD_COUNTS) {
+         foldCountsOfTerminatedThreads();
+         int[] totals = countsOfTerminatedThreads.clone();
+
+         for (ThreadCounts threadCounts : ALL_THREAD_COUNTS) {
+            int[] counts = threadCounts.getCountsIfAny(id);
+
+            if (counts != null) {
+               for (int slot = 0; slot < totals.length; slot++) {
+                  totals[slot] += counts[slot];
+               }
+            }
+         }
+
+         return totals;
+      }
+   }
+
+   private int getTotalCount(int slot)
+   {
+      if (!PER_THREAD_COUNTS) {
+         return sharedCounts[slot];
+      }
+
+      synchronized (ALL_THREAD_COUNTS) {
+         foldCountsOfTerminatedThreads();
+         int total = countsOfTerminatedThreads[slot];
+
+         for (ThreadCounts threadCounts : ALL_THREAD_COUNTS) {
+            int[] counts = threadCounts.getCountsIfAny(id);
+
+            if (counts != null) {
+               total += counts[slot];
+            }
+         }
+
+         return total;
+      }
+   }
+
+   /**
+    * Adds the count accumulated for a single slot since the last transfer to its line segment, so that the segment can
+    * be read without first transferring the counts of the whole source file.
+    */
+   void transferCountToSegment(int slot)
+   {
+      if (segments == null) {
+         return;
+      }
+
+      synchronized (owner) {
+         int total = getTotalCount(slot);
+         int count = total - countsTransferred[slot];
+
+         if (count > 0) {
+            countsTransferred[slot] = total;
+            addExecutions(slot, count);
+            owner.initializeCache();
+         }
+      }
+   }
+
+   private void addExecutions(int slot, int count)
+   {
+      LineSegmentData segmentData = segments[slot];
+
+      if (jumpSlots.get(slot)) {
+         ((BranchCoverageData) segmentData).addJumpExecutions(count);
+      }
+      else {
+         segmentData.executionCount += count;
+      }
+   }
+
+   /**
+    * Adds the counts accumulated since the last transfer to the corresponding line segments.
+    *
+    * @return whether any count was transferred
+    */
+   boolean transferCountsToSegments()
+   {
+      if (segments == null) {
+         return false;
+      }
+
+      int[] totals = getTotalCounts();
+      boolean transferred = false;
+
+      for (int slot = 0; slot < totals.length; slot++) {
+         int count = totals[slot] - countsTransferred[slot];
+
+         if (count > 0) {
+            countsTransferred[slot] = totals[slot];
+            addExecutions(slot, count);
+            transferred = true;
+         }
+      }
+
+      return transferred;
+   }
+
+   /**
+    * Prints how many of the slots in all counters were disabled by sampling, if active.
+    */
+   public static void printSamplingSummary()
+   {
+      if (!SAMPLING) {
+         return;
+      }
+
+      int totalSlots = 0;
+      int slotsDisabled = 0;
+      ExecutionCounters[] counters = allCounters;
+
+      for (int id = 0, n = getCountersCreated(); id < n; id++) {
+         ExecutionCounters executionCounters = counters[id];
+
+         if (executionCounters != null && executionCounters.disabledSlots != null) {
+            for (boolean disabled : executionCounters.disabledSlots) {
+               totalSlots++;
+
+               if (disabled) {
+                  slotsDisabled++;
+               }
+            }
+         }
+      }
+
+      System.out.println(
+         "JMockit: Coverage sampling disabled " + slotsDisabled + " of " + totalSlots + " probes after " +
+         SAMPLING_LIMIT + (SAMPLING_LIMIT == 1 ? " execution" : " executions") + " each");
+   }
+
+   /**
+    * Removes and returns the counters with slots executed since the previous call.
+    */
+   public static List<ExecutionCounters> takeTouchedCounters()
+   {
+      List<ExecutionCounters> touchedCounters = new ArrayList<ExecutionCounters>();
+      ExecutionCounters counters;
+
+      while ((counters = TOUCHED_COUNTERS.poll()) != null) {
+         // Cleared before reading the counts, so that executions happening from now on are left for the next snapshot.
+         counters.touchedSinceSnapshot.set(false);
+         touchedCounters.add(counters);
+      }
+
+      synchronized (SOURCE_FILES_TOUCHED) {
+         for (ExecutionCounters touched : touchedCounters) {
+            SOURCE_FILES_TOUCHED.add(touched.sourceFile);
+         }
+      }
+
+      return touchedCounters;
+   }
+
+   /**
+    * Returns the source files with slots executed since the previous call, or {@code null} on the first call if
+    * per-test snapshots are not active, in which case executions only start being tracked from then on.
+    */
+   public static Set<String> takeSourceFilesTouched()
+   {
+      if (!trackingTouchedCounters) {
+         trackingTouchedCounters = true;
+         return null;
+      }
+
+      takeTouchedCounters();
+
+      synchronized (SOURCE_FILES_TOUCHED) {
+         Set<String> sourceFiles = new LinkedHashSet<String>(SOURCE_FILES_TOUCHED);
+         SOURCE_FILES_TOUCHED.clear();
+         return sourceFiles;
+      }
+   }
+
+   public int getSlotCount() { return segments.length; }
+   public int getSlotLine(int slot) { return slotLines[slot]; }
+   public boolean isJumpSlot(int slot) { return jumpSlots.get(slot); }
+   public boolean isBranchSlot(int slot) { return segments[slot] instanceof BranchCoverageData; }
+
+   /**
+    * Returns the number of executions of each slot since the previous call, without affecting the counts transferred
+    * to line segments.
+    */
+   public int[] getCountsSinceLastSnapshot()
+   {
+      int[] currentCounts = executionsRegisteredInSegments ? getCountsFromSegments() : getTotalCounts();
+      int[] countsSinceSnapshot = new int[currentCounts.length];
+
+      for (int slot = 0; slot < currentCounts.length; slot++) {
+         int currentCount = currentCounts[slot];
+         int previousCount = countsAtLastSnapshot[slot];
+
+         // Counts may go down if coverage data is reset in the meantime.
+         countsSinceSnapshot[slot] = currentCount < previousCount ? currentCount : currentCount - previousCount;
+      }
+
+      countsAtLastSnapshot = currentCounts;
+      return countsSinceSnapshot;
+   }
+
+   // Used when each execution is registered directly in its line segment, together with the full call point:
+   private int[] getCountsFromSegments()
+   {
+      int[] counts = new int[segments.length];
+
+      for (int slot = 0; slot < counts.length; slot++) {
+         LineSegmentData segmentData = segments[slot];
+         int count = jumpSlots.get(slot) ?
+            ((BranchCoverageData) segmentData).getJumpExecutionCount() : segmentData.executionCount;
+         counts[slot] = Math.max(count, 0);
+      }
+
+      return counts;
+   }
+}
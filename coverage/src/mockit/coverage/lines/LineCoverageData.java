@@ -4,9 +4,10 @@
  */
 package mockit.coverage.lines;
 
+import java.io.*;
 import java.util.*;
 
-import mockit.coverage.*;
+import mockit.coverage.data.*;
 import mockit.external.asm4.*;
 
 /**
@@ -31,21 +32,20 @@ public final class LineCoverageData extends LineSegmentData
       return branches.size() - 1;
    }
 
-   public BranchCoverageData getBranchData(int index)
+   void addBranchesFrom(LineCoverageData other)
    {
-      return branches.get(index);
+      if (other.branches != null) {
+         if (branches == null) {
+            branches = new ArrayList<BranchCoverageData>(other.branches.size());
+         }
+
+         branches.addAll(other.branches);
+      }
    }
 
-   public void registerExecution(int branchIndex, boolean jumped, CallPoint callPoint)
+   public BranchCoverageData getBranchData(int index)
    {
-      BranchCoverageData data = branches.get(branchIndex);
-
-      if (jumped) {
-         data.registerJumpExecution(callPoint);
-      }
-      else {
-         data.registerNoJumpExecution(callPoint);
-      }
+      return branches.get(index);
    }
 
    public boolean containsBranches() { return branches != null; }
@@ -62,6 +62,8 @@ public final class LineCoverageData extends LineSegmentData
          return getNumberOfSegments();
       }
 
+      updateExecutionCount();
+
       if (executionCount == 0) {
          return 0;
       }
@@ -100,6 +102,39 @@ public final class LineCoverageData extends LineSegmentData
       }
    }
 
+   void writeTo(CoverageDataOutput output) throws IOException
+   {
+      writeSegmentTo(output);
+
+      if (branches == null) {
+         output.writeInt(0);
+      }
+      else {
+         output.writeInt(branches.size());
+
+         for (BranchCoverageData branchData : branches) {
+            branchData.writeTo(output);
+         }
+      }
+   }
+
+   static LineCoverageData readFrom(CoverageDataInput input) throws IOException
+   {
+      LineCoverageData lineData = new LineCoverageData();
+      lineData.readSegmentFrom(input);
+      int branchCount = input.readInt();
+
+      if (branchCount > 0) {
+         lineData.branches = new ArrayList<BranchCoverageData>(branchCount);
+
+         for (int i = 0; i < branchCount; i++) {
+            lineData.branches.add(BranchCoverageData.readFrom(input));
+         }
+      }
+
+      return lineData;
+   }
+
    @Override
    public void reset()
    {
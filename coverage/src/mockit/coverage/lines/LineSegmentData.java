@@ -8,6 +8,7 @@ import java.io.*;
 import java.util.*;
 
 import mockit.coverage.*;
+import mockit.coverage.data.*;
 
 public class LineSegmentData implements Serializable
 {
@@ -18,7 +19,64 @@ public class LineSegmentData implements Serializable
 
    // Runtime data:
    int executionCount;
-   private List<CallPoint> callPoints;
+   private CallPointCounts callPointCounts;
+
+   // Slots of the execution counters which count executions of this segment, only present during the test run:
+   private transient volatile CounterSlot counterSlots;
+
+   private static final class CounterSlot
+   {
+      final ExecutionCounters counters;
+      final int slot;
+      final CounterSlot next;
+
+      CounterSlot(ExecutionCounters counters, int slot, CounterSlot next)
+      {
+         this.counters = counters;
+         this.slot = slot;
+         this.next = next;
+      }
+   }
+
+   /**
+    * Also reads data serialized by older versions, where call points were kept in a list named "callPoints", with one
+    * element per execution.
+    */
+   private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+   {
+      ObjectInputStream.GetField fields = in.readFields();
+      unreachable = fields.get("unreachable", false);
+      executionCount = fields.get("executionCount", 0);
+      callPointCounts = (CallPointCounts) fields.get("callPointCounts", null);
+
+      if (fields.getObjectStreamClass().getField("callPoints") != null) {
+         @SuppressWarnings("unchecked")
+         List<CallPoint> callPoints = (List<CallPoint>) fields.get("callPoints", null);
+
+         if (callPoints != null && !callPoints.isEmpty()) {
+            callPointCounts = new CallPointCounts();
+
+            for (CallPoint callPoint : callPoints) {
+               callPointCounts.add(callPoint, 1);
+            }
+         }
+      }
+   }
+
+   final synchronized void addCounterSlot(ExecutionCounters counters, int slot)
+   {
+      counterSlots = new CounterSlot(counters, slot, counterSlots);
+   }
+
+   /**
+    * Adds the executions counted by the probes for this segment since the last transfer, if any.
+    */
+   final void updateExecutionCount()
+   {
+      for (CounterSlot counterSlot = counterSlots; counterSlot != null; counterSlot = counterSlot.next) {
+         counterSlot.counters.transferCountToSegment(counterSlot.slot);
+      }
+   }
 
    public final boolean isUnreachable() { return unreachable; }
    public final void markAsUnreachable() { unreachable = true; }
@@ -32,19 +90,30 @@ public class LineSegmentData implements Serializable
    final void addCallPointIfAny(CallPoint callPoint)
    {
       if (callPoint != null) {
-         if (callPoints == null) {
-            callPoints = new ArrayList<CallPoint>();
-         }
+         synchronized (this) {
+            if (callPointCounts == null) {
+               callPointCounts = new CallPointCounts();
+            }
 
-         callPoints.add(callPoint);
+            callPointCounts.add(callPoint, 1);
+         }
       }
    }
 
-   public final boolean containsCallPoints() { return callPoints != null; }
-   public final List<CallPoint> getCallPoints() { return callPoints; }
+   public final boolean containsCallPoints() { return callPointCounts != null; }
+   public final CallPointCounts getCallPoints() { return callPointCounts; }
+
+   public int getExecutionCount()
+   {
+      updateExecutionCount();
+      return executionCount;
+   }
 
-   public int getExecutionCount() { return executionCount; }
-   public boolean isCovered() { return unreachable || executionCount > 0; }
+   public boolean isCovered()
+   {
+      updateExecutionCount();
+      return unreachable || executionCount > 0;
+   }
 
    final void addExecutionCountAndCallPointsFromPreviousTestRun(LineSegmentData previousData)
    {
@@ -52,13 +121,42 @@ public class LineSegmentData implements Serializable
 
       if (previousData.containsCallPoints()) {
          if (containsCallPoints()) {
-            callPoints.addAll(0, previousData.callPoints);
+            callPointCounts = callPointCounts.addToCountsFromPreviousTestRun(previousData.callPointCounts);
          }
          else {
-            callPoints = previousData.callPoints;
+            callPointCounts = previousData.callPointCounts;
          }
       }
    }
 
-   void reset() { executionCount = 0; }
+   void writeSegmentTo(CoverageDataOutput output) throws IOException
+   {
+      output.writeBoolean(unreachable);
+      output.writeSignedInt(executionCount);
+
+      synchronized (this) {
+         if (callPointCounts == null) {
+            CallPointCounts.writeEmptyTo(output);
+         }
+         else {
+            callPointCounts.writeTo(output);
+         }
+      }
+   }
+
+   void readSegmentFrom(CoverageDataInput input) throws IOException
+   {
+      unreachable = input.readBoolean();
+      executionCount = input.readSignedInt();
+      callPointCounts = CallPointCounts.readFrom(input);
+   }
+
+   void reset()
+   {
+      executionCount = 0;
+
+      synchronized (this) {
+         callPointCounts = null;
+      }
+   }
 }
\ No newline at end of file
@@ -16,12 +16,15 @@ public final class PerFileLineCoverage implements PerFileCoverage
 
    public final SortedMap<Integer, LineCoverageData> lineToLineData = new TreeMap<Integer, LineCoverageData>();
 
+   // Counters for each class instrumented for the source file, only present during the test run:
+   private transient List<ExecutionCounters> executionCounters;
+
    // Computed on demand:
    private transient int totalSegments;
    private transient int coveredSegments;
 
    public PerFileLineCoverage() { initializeCache(); }
-   private void initializeCache() { totalSegments = coveredSegments = -1; }
+   void initializeCache() { totalSegments = coveredSegments = -1; }
 
    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
    {
@@ -41,32 +44,151 @@ public final class PerFileLineCoverage implements PerFileCoverage
       return lineData;
    }
 
-   public void registerExecution(int line, CallPoint callPoint)
+   /**
+    * Writes the data for each line, with line numbers encoded as increments over the previous line.
+    */
+   public void writeTo(CoverageDataOutput output) throws IOException
    {
-      LineCoverageData lineData = lineToLineData.get(line);
-      lineData.registerExecution(callPoint);
+      output.writeInt(lineToLineData.size());
+      int previousLine = 0;
+
+      for (Map.Entry<Integer, LineCoverageData> lineAndLineData : lineToLineData.entrySet()) {
+         int line = lineAndLineData.getKey();
+         output.writeInt(line - previousLine);
+         lineAndLineData.getValue().writeTo(output);
+         previousLine = line;
+      }
    }
 
-   public void registerExecution(int line, int segment, boolean jumped, CallPoint callPoint)
+   /**
+    * Writes the data for each line with the execution counts brought up to date, optionally discarding the counts
+    * written; executions counted by the probes in the meantime stay in the execution counters, for the next transfer.
+    */
+   public synchronized void writeTo(CoverageDataOutput output, boolean resettingCounts) throws IOException
    {
-      LineCoverageData lineData = lineToLineData.get(line);
-      lineData.registerExecution(segment, jumped, callPoint);
+      updateExecutionCounts();
+      writeTo(output);
+
+      if (resettingCounts) {
+         resetLines();
+      }
+   }
+
+   public void readFrom(CoverageDataInput input) throws IOException
+   {
+      int line = 0;
+
+      for (int lineCount = input.readInt(); lineCount > 0; lineCount--) {
+         line += input.readInt();
+         lineToLineData.put(line, LineCoverageData.readFrom(input));
+      }
+
+      initializeCache();
+   }
+
+   public synchronized ExecutionCounters createExecutionCounters(String sourceFile)
+   {
+      if (executionCounters == null) {
+         executionCounters = new ArrayList<ExecutionCounters>(2);
+      }
+
+      ExecutionCounters counters = new ExecutionCounters(this, sourceFile);
+      executionCounters.add(counters);
+      return counters;
+   }
+
+   /**
+    * Recreates the execution counters of a class instrumented offline, with the same id its probes refer to.
+    */
+   public synchronized ExecutionCounters readExecutionCountersFrom(
+      CoverageDataInput input, String sourceFile, int id) throws IOException
+   {
+      if (executionCounters == null) {
+         executionCounters = new ArrayList<ExecutionCounters>(2);
+      }
+
+      ExecutionCounters counters = new ExecutionCounters(this, sourceFile, id);
+      counters.readSlotsFrom(input, lineToLineData);
+      executionCounters.add(counters);
+      return counters;
+   }
+
+   /**
+    * Adds the lines of a class modified separately, together with its execution counters.
+    * Lines already present get the branches from the class appended, with the counters switched to the existing line.
+    */
+   public synchronized void addClassData(PerFileLineCoverage classData)
+   {
+      List<ExecutionCounters> classCounters = classData.executionCounters;
+
+      for (Map.Entry<Integer, LineCoverageData> lineAndData : classData.lineToLineData.entrySet()) {
+         Integer line = lineAndData.getKey();
+         LineCoverageData classLineData = lineAndData.getValue();
+         LineCoverageData existingLineData = lineToLineData.get(line);
+
+         if (existingLineData == null) {
+            lineToLineData.put(line, classLineData);
+         }
+         else {
+            existingLineData.addBranchesFrom(classLineData);
+
+            if (classCounters != null) {
+               for (ExecutionCounters counters : classCounters) {
+                  counters.replaceSegment(classLineData, existingLineData);
+               }
+            }
+         }
+      }
+
+      if (classCounters != null) {
+         if (executionCounters == null) {
+            executionCounters = new ArrayList<ExecutionCounters>(classCounters.size());
+         }
+
+         for (ExecutionCounters counters : classCounters) {
+            counters.setOwner(this);
+         }
+
+         executionCounters.addAll(classCounters);
+      }
+   }
+
+   /**
+    * Transfers the execution counts accumulated by the probes of instrumented classes since the last transfer, if any,
+    * to the line segments of the source file.
+    */
+   public synchronized void updateExecutionCounts()
+   {
+      if (executionCounters != null) {
+         boolean countsChanged = false;
+
+         for (ExecutionCounters counters : executionCounters) {
+            countsChanged |= counters.transferCountsToSegments();
+         }
+
+         if (countsChanged) {
+            initializeCache();
+         }
+      }
    }
 
    public int getTotalItems()
    {
+      updateExecutionCounts();
       computeValuesIfNeeded();
       return totalSegments;
    }
 
    public int getCoveredItems()
    {
+      updateExecutionCounts();
       computeValuesIfNeeded();
       return coveredSegments;
    }
 
    public int getCoveragePercentage()
    {
+      updateExecutionCounts();
       computeValuesIfNeeded();
       return CoveragePercentage.calculate(coveredSegments, totalSegments);
    }
@@ -83,12 +205,29 @@ public final class PerFileLineCoverage implements PerFileCoverage
       }
    }
 
-   public void reset()
+   /**
+    * Discards the execution counts accumulated so far.
+    * Counts are first transferred from the execution counters, so that those read are exactly the ones discarded,
+    * while executions counted concurrently are kept.
+    */
+   public synchronized void reset()
+   {
+      updateExecutionCounts();
+      resetLines();
+   }
+
+   private void resetLines()
    {
       for (LineCoverageData lineData : lineToLineData.values()) {
          lineData.reset();
       }
 
+      if (executionCounters != null) {
+         for (ExecutionCounters counters : executionCounters) {
+            counters.resetCallPoints();
+         }
+      }
+
       initializeCache();
    }
 
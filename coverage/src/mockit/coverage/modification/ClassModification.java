@@ -4,25 +4,84 @@
  */
 package mockit.coverage.modification;
 
+import java.io.*;
 import java.lang.instrument.*;
+import java.net.*;
 import java.security.*;
 import java.util.*;
 
+import mockit.coverage.data.*;
 import mockit.coverage.standalone.*;
 import mockit.external.asm4.*;
 
 public final class ClassModification
 {
+   // Read only once, since the execution counters for the classes instrumented offline can only be registered once.
+   private static List<String> classesInstrumentedOffline;
+
    private final Set<String> modifiedClasses;
    private final ClassSelection classSelection;
+   private final ModifiedClassCache modifiedClassCache;
 
    public ClassModification()
    {
-      modifiedClasses = new HashSet<String>();
+      modifiedClasses = Collections.synchronizedSet(new HashSet<String>());
       classSelection = new ClassSelection();
+      modifiedClassCache = ModifiedClassCache.createIfActive();
+      modifiedClasses.addAll(getClassesInstrumentedOffline());
       redefineClassesAlreadyLoadedForCoverage();
    }
 
+   /**
+    * Reads the metadata for classes {@linkplain OfflineInstrumentation instrumented offline} from every class directory
+    * and jar in the classpath, so that their coverage data and execution counters are available before any of them
+    * executes, and so that they are not modified again.
+    */
+   private static synchronized List<String> getClassesInstrumentedOffline()
+   {
+      if (classesInstrumentedOffline == null) {
+         classesInstrumentedOffline = new ArrayList<String>();
+
+         try {
+            ClassLoader classLoader = ClassModification.class.getClassLoader();
+
+            if (classLoader == null) {
+               classLoader = ClassLoader.getSystemClassLoader();
+            }
+
+            Enumeration<URL> metadataFiles = classLoader.getResources(InstrumentationMetadata.RESOURCE_NAME);
+
+            while (metadataFiles.hasMoreElements()) {
+               InputStream metadata = new BufferedInputStream(metadataFiles.nextElement().openStream());
+
+               try {
+                  classesInstrumentedOffline.addAll(InstrumentationMetadata.readFrom(metadata));
+               }
+               finally {
+                  metadata.close();
+               }
+            }
+         }
+         catch (IOException e) {
+            throw new RuntimeException(e);
+         }
+      }
+
+      return classesInstrumentedOffline;
+   }
+
+   public int getClassesExamined() { return classSelection.getClassesExamined(); }
+   public int getClassesSelected() { return classSelection.getClassesSelected(); }
+
+   public void printClassCacheUsage()
+   {
+      if (modifiedClassCache != null) {
+         System.out.println(
+            "JMockit: Coverage class cache: " + modifiedClassCache.getHits() + " hits, " +
+            modifiedClassCache.getMisses() + " misses");
+      }
+   }
+
    private void redefineClassesAlreadyLoadedForCoverage()
    {
       Class<?>[] loadedClasses = Startup.instrumentation().getAllLoadedClasses();
@@ -140,6 +199,10 @@ public final class ClassModification
          return modifiedBytecode;
       }
 
+      if (modifiedClassCache != null) {
+         return modifiedClassCache.modifyClass(className, classBytecode);
+      }
+
       ClassReader cr = new ClassReader(classBytecode);
       return modifyClassForCoverage(cr);
    }
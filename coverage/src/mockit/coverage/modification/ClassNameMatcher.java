@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * Matches class names against one of the regular expressions used for class selection, in a thread-safe way.
+ * <p/>
+ * Expressions made only of alternatives of literal class names or name prefixes, such as "{@code orderMngr\.domain\..+}"
+ * or "{@code org\.acme\.Foo|org\.acme\.util\..*}", are matched through a prefix trie, one character at a time;
+ * any other expression is matched as a regex.
+ */
+final class ClassNameMatcher
+{
+   private static final class TrieNode
+   {
+      final Map<Character, TrieNode> children = new HashMap<Character, TrieNode>(4);
+      boolean matchesEnd;
+      boolean matchesAnyRest;
+      boolean matchesNonEmptyRest;
+   }
+
+   private final TrieNode prefixes;
+   private final Pattern pattern;
+
+   static ClassNameMatcher create(String regex) { return regex.length() == 0 ? null : new ClassNameMatcher(regex); }
+
+   private ClassNameMatcher(String regex)
+   {
+      prefixes = buildPrefixTrie(regex);
+      pattern = prefixes == null ? Pattern.compile(regex) : null;
+   }
+
+   /**
+    * Builds the trie for the given expression, or returns {@code null} if the expression is not a simple list of
+    * alternative names and name prefixes.
+    */
+   private static TrieNode buildPrefixTrie(String regex)
+   {
+      TrieNode root = new TrieNode();
+
+      for (String alternative : regex.split("\\|", -1)) {
+         if (!addAlternative(root, alternative)) {
+            return null;
+         }
+      }
+
+      return root;
+   }
+
+   private static boolean addAlternative(TrieNode root, String alternative)
+   {
+      TrieNode node = root;
+      int n = alternative.length();
+
+      for (int i = 0; i < n; i++) {
+         char c = alternative.charAt(i);
+
+         if (c == '\\' && i + 1 < n && (alternative.charAt(i + 1) == '.' || alternative.charAt(i + 1) == '$')) {
+            i++;
+            c = alternative.charAt(i);
+         }
+         else if (c == '.' && i + 2 == n && (alternative.charAt(i + 1) == '*' || alternative.charAt(i + 1) == '+')) {
+            if (alternative.charAt(i + 1) == '*') {
+               node.matchesAnyRest = true;
+            }
+            else {
+               node.matchesNonEmptyRest = true;
+            }
+
+            return true;
+         }
+         else if (!Character.isLetterOrDigit(c) && c != '_') {
+            return false;
+         }
+
+         TrieNode child = node.children.get(c);
+
+         if (child == null) {
+            child = new TrieNode();
+            node.children.put(c, child);
+         }
+
+         node = child;
+      }
+
+      node.matchesEnd = true;
+      return true;
+   }
+
+   boolean matches(String className)
+   {
+      if (pattern != null) {
+         return pattern.matcher(className).matches();
+      }
+
+      TrieNode node = prefixes;
+      int n = className.length();
+
+      for (int i = 0; ; i++) {
+         if (node.matchesAnyRest || node.matchesNonEmptyRest && i < n) {
+            return true;
+         }
+
+         if (i == n) {
+            return node.matchesEnd;
+         }
+
+         node = node.children.get(className.charAt(i));
+
+         if (node == null) {
+            return false;
+         }
+      }
+   }
+}
@@ -1,58 +1,137 @@
 /*
- * Copyright (c) 2006-2012 Rogério Liesenfeld
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.modification;
 
+import java.net.*;
 import java.security.*;
-import java.util.regex.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import mockit.coverage.standalone.*;
 
+/**
+ * Decides which classes are to be modified for coverage, as they get loaded.
+ * <p/>
+ * Safe for concurrent use by class loaders in different threads.
+ * The decision based on the location of the class files is cached for each code source location.
+ */
 final class ClassSelection
 {
-   private final Matcher classesToInclude;
-   private final Matcher classesToExclude;
-   private final Matcher testCode;
+   private final ClassNameMatcher classesToInclude;
+   private final ClassNameMatcher classesToExclude;
+   private final boolean excludingTestCode;
+   private final ConcurrentMap<String, Boolean> selectionByLocation;
+   private final AtomicInteger classesExamined;
+   private final AtomicInteger classesSelected;
 
    ClassSelection()
    {
-      classesToInclude = getClassNameRegex("classes");
-      classesToExclude = getClassNameRegex("excludes");
-      testCode = Startup.isStandalone() ? null : Pattern.compile(".+Test(\\$.+)?").matcher("");
+      classesToInclude = getClassNameMatcher("classes");
+      classesToExclude = getClassNameMatcher("excludes");
+      excludingTestCode = !Startup.isStandalone();
+      selectionByLocation = new ConcurrentHashMap<String, Boolean>();
+      classesExamined = new AtomicInteger();
+      classesSelected = new AtomicInteger();
    }
 
-   private Matcher getClassNameRegex(String propertySuffix)
+   private static ClassNameMatcher getClassNameMatcher(String propertySuffix)
    {
       String regex = System.getProperty("jmockit-coverage-" + propertySuffix, "");
-      return regex.length() == 0 ? null : Pattern.compile(regex).matcher("");
+      return ClassNameMatcher.create(regex);
    }
 
+   int getClassesExamined() { return classesExamined.get(); }
+   int getClassesSelected() { return classesSelected.get(); }
+
    boolean isSelected(String className, ProtectionDomain protectionDomain)
    {
-      CodeSource codeSource = protectionDomain.getCodeSource();
+      classesExamined.incrementAndGet();
+
+      boolean selected = isSelected(className, protectionDomain.getCodeSource());
+
+      if (selected) {
+         classesSelected.incrementAndGet();
+      }
+
+      return selected;
+   }
 
-      if (
-         codeSource == null || className.charAt(0) == '[' || className.startsWith("mockit.") ||
-         className.startsWith("org.junit.") || className.startsWith("junit.") || className.startsWith("org.testng.")
-      ) {
+   private boolean isSelected(String className, CodeSource codeSource)
+   {
+      if (codeSource == null || isNeverSelected(className)) {
          return false;
       }
 
-      if (classesToExclude != null && classesToExclude.reset(className).matches()) {
+      if (classesToExclude != null && classesToExclude.matches(className)) {
          return false;
       }
-      else if (classesToInclude != null && classesToInclude.reset(className).matches()) {
+      else if (classesToInclude != null && classesToInclude.matches(className)) {
          return true;
       }
-      else if (testCode != null && testCode.reset(className).matches()) {
+      else if (excludingTestCode && isTestClassName(className)) {
          return false;
       }
 
-      String location = codeSource.getLocation().getPath();
+      return isSelectedByLocation(codeSource);
+   }
+
+   private static boolean isNeverSelected(String className)
+   {
+      return
+         className.charAt(0) == '[' || className.startsWith("mockit.") || className.startsWith("org.junit.") ||
+         className.startsWith("junit.") || className.startsWith("org.testng.");
+   }
 
+   /**
+    * Selects a class from a class directory or jar given explicitly for offline instrumentation, where the location
+    * rules don't apply.
+    */
+   boolean isSelectedForOfflineInstrumentation(String className)
+   {
       return
-         !location.endsWith(".jar") && !location.endsWith("/.cp/") &&
-         (testCode == null || !location.endsWith("/test-classes/") && !location.endsWith("/jmockit/main/classes/"));
+         !isNeverSelected(className) &&
+         (classesToExclude == null || !classesToExclude.matches(className)) &&
+         (classesToInclude == null || classesToInclude.matches(className));
+   }
+
+   /**
+    * Checks whether the class name matches "{@code .+Test(\$.+)?}", without a regex.
+    */
+   static boolean isTestClassName(String className)
+   {
+      int n = className.length();
+
+      for (int p = className.indexOf("Test", 1); p > 0; p = className.indexOf("Test", p + 1)) {
+         int end = p + 4;
+
+         if (end == n || className.charAt(end) == '$' && end + 1 < n) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   private boolean isSelectedByLocation(CodeSource codeSource)
+   {
+      URL locationURL = codeSource.getLocation();
+
+      if (locationURL == null) {
+         return false;
+      }
+
+      String location = locationURL.getPath();
+      Boolean selected = selectionByLocation.get(location);
+
+      if (selected == null) {
+         selected =
+            !location.endsWith(".jar") && !location.endsWith("/.cp/") &&
+            (!excludingTestCode || !location.endsWith("/test-classes/") && !location.endsWith("/jmockit/main/classes/"));
+         selectionByLocation.put(location, selected);
+      }
+
+      return selected;
    }
 }
@@ -18,12 +18,32 @@ import mockit.external.asm4.*;
 final class CoverageModifier extends ClassVisitor
 {
    private static final Map<String, CoverageModifier> INNER_CLASS_MODIFIERS = new HashMap<String, CoverageModifier>();
+   private static final Map<String, byte[]> INNER_CLASSES_FROM_CACHE = new HashMap<String, byte[]>();
    private static final int FIELD_MODIFIERS_TO_IGNORE = ACC_FINAL + ACC_SYNTHETIC;
 
    static byte[] recoverModifiedByteCodeIfAvailable(String innerClassName)
    {
       CoverageModifier modifier = INNER_CLASS_MODIFIERS.remove(innerClassName);
-      return modifier == null ? null : modifier.toByteArray();
+
+      if (modifier != null) {
+         return modifier.toByteArray();
+      }
+
+      return INNER_CLASSES_FROM_CACHE.remove(innerClassName);
+   }
+
+   /**
+    * Makes available the modified bytecode of an inner class taken from the {@link ModifiedClassCache}, as if it had
+    * been modified together with its outer class.
+    */
+   static void addInnerClassFromCache(String innerClassName, byte[] modifiedClassfile)
+   {
+      INNER_CLASSES_FROM_CACHE.put(innerClassName, modifiedClassfile);
+   }
+
+   static boolean isInnerClassAlreadyModified(String innerClassName)
+   {
+      return INNER_CLASS_MODIFIERS.containsKey(innerClassName) || INNER_CLASSES_FROM_CACHE.containsKey(innerClassName);
    }
 
    static ClassReader createClassReader(Class<?> aClass)
@@ -47,14 +67,36 @@ final class CoverageModifier extends ClassVisitor
    private String simpleClassName;
    private String sourceFileName;
    private FileCoverageData fileData;
+   private ExecutionCounters executionCounters;
    private boolean cannotModify;
    private final boolean forInnerClass;
    private boolean forEnumClass;
-
-   CoverageModifier(ClassReader cr)
+   private final ClassLoader classFileLoader;
+   private final byte[] originalClassfile;
+
+   // Used only when the modified classes are to be cached, so that the modification doesn't depend on other classes:
+   private final boolean forCaching;
+   private FileCoverageData sharedFileData;
+   private Map<String, Boolean> fieldsLookedUpInSharedData;
+   private final Map<String, CoverageModifier> innerClassModifiers;
+
+   CoverageModifier(ClassReader cr) { this(cr, CoverageModifier.class.getClassLoader(), false); }
+
+   /**
+    * @param classFileLoader where to read the class files of inner classes from, when modifying them together with
+    * the outer class
+    * @param forCaching whether the coverage data for the class (and for the inner classes modified with it) is to be
+    * kept apart from the data for the source file until {@linkplain FileCoverageData#addClassData added} to it, and
+    * the id of the execution counters is to be referred to from a single entry in the constant pool
+    */
+   CoverageModifier(ClassReader cr, ClassLoader classFileLoader, boolean forCaching)
    {
       super(new ClassWriter(cr, ClassWriter.COMPUTE_MAXS));
       forInnerClass = false;
+      this.classFileLoader = classFileLoader;
+      originalClassfile = cr.b;
+      this.forCaching = forCaching;
+      innerClassModifiers = new LinkedHashMap<String, CoverageModifier>();
    }
 
    private CoverageModifier(ClassReader cr, CoverageModifier other, String simpleClassName)
@@ -62,11 +104,25 @@ final class CoverageModifier extends ClassVisitor
       super(new ClassWriter(cr, ClassWriter.COMPUTE_MAXS));
       sourceFileName = other.sourceFileName;
       fileData = other.fileData;
+      executionCounters = fileData.lineCoverageInfo.createExecutionCounters(sourceFileName);
       internalClassName = other.internalClassName;
       this.simpleClassName = simpleClassName;
       forInnerClass = true;
+      classFileLoader = other.classFileLoader;
+      originalClassfile = cr.b;
+      forCaching = other.forCaching;
+      sharedFileData = other.sharedFileData;
+      fieldsLookedUpInSharedData = other.fieldsLookedUpInSharedData;
+      innerClassModifiers = null;
    }
 
+   String getSourceFileName() { return sourceFileName; }
+   FileCoverageData getFileData() { return fileData; }
+   ExecutionCounters getExecutionCounters() { return executionCounters; }
+   byte[] getOriginalClassfile() { return originalClassfile; }
+   Map<String, CoverageModifier> getInnerClassModifiers() { return innerClassModifiers; }
+   Map<String, Boolean> getFieldsLookedUpInSharedData() { return fieldsLookedUpInSharedData; }
+
    @Override
    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces)
    {
@@ -111,7 +167,17 @@ final class CoverageModifier extends ClassVisitor
          }
 
          sourceFileName += file;
-         fileData = CoverageData.instance().addFile(sourceFileName);
+
+         if (forCaching) {
+            fileData = new FileCoverageData();
+            sharedFileData = CoverageData.instance().getFileData(sourceFileName);
+            fieldsLookedUpInSharedData = new LinkedHashMap<String, Boolean>();
+         }
+         else {
+            fileData = CoverageData.instance().addFile(sourceFileName);
+         }
+
+         executionCounters = fileData.lineCoverageInfo.createExecutionCounters(sourceFileName);
       }
 
       super.visitSource(file, debug);
@@ -122,22 +188,26 @@ final class CoverageModifier extends ClassVisitor
    {
       super.visitInnerClass(internalName, outerName, innerName, access);
 
-      if (forInnerClass || isSyntheticOrEnumClass(access) || !isNestedInsideClassBeingModified(outerName)) {
+      if (
+         forInnerClass || fileData == null || isSyntheticOrEnumClass(access) ||
+         !isNestedInsideClassBeingModified(outerName)
+      ) {
          return;
       }
 
       String innerClassName = internalName.replace('/', '.');
 
-      if (INNER_CLASS_MODIFIERS.containsKey(innerClassName)) {
+      if (isInnerClassAlreadyModified(innerClassName)) {
          return;
       }
 
-      ClassReader innerCR = createClassReader(CoverageModifier.class.getClassLoader(), internalName);
+      ClassReader innerCR = createClassReader(classFileLoader, internalName);
 
       if (innerCR != null) {
          CoverageModifier innerClassModifier = new CoverageModifier(innerCR, this, innerName);
          innerCR.accept(innerClassModifier, 0);
          INNER_CLASS_MODIFIERS.put(innerClassName, innerClassModifier);
+         innerClassModifiers.put(innerClassName, innerClassModifier);
       }
    }
 
@@ -158,6 +228,24 @@ final class CoverageModifier extends ClassVisitor
       return outerClassName.equals(internalClassName);
    }
 
+   private boolean isFieldWithCoverageData(String classAndFieldNames)
+   {
+      if (fileData.dataCoverageInfo.isFieldWithCoverageData(classAndFieldNames)) {
+         return true;
+      }
+
+      if (!forCaching) {
+         return false;
+      }
+
+      // Fields of other classes from the same source file, which were modified separately; the lookups are recorded so
+      // that a cached modification is only reused if they give the same results.
+      boolean fieldHasData =
+         sharedFileData != null && sharedFileData.dataCoverageInfo.isFieldWithCoverageData(classAndFieldNames);
+      fieldsLookedUpInSharedData.put(classAndFieldNames, fieldHasData);
+      return fieldHasData;
+   }
+
    @Override
    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value)
    {
@@ -192,6 +280,16 @@ final class CoverageModifier extends ClassVisitor
       return withPathOrDataCoverage ? new MethodModifier(mv, name) : new BaseMethodModifier(mv);
    }
 
+   @Override
+   public void visitEnd()
+   {
+      if (executionCounters != null) {
+         executionCounters.allocate();
+      }
+
+      super.visitEnd();
+   }
+
    private class BaseMethodModifier extends MethodVisitor
    {
       static final String DATA_RECORDING_CLASS = "mockit/coverage/TestRun";
@@ -238,18 +336,30 @@ final class CoverageModifier extends ClassVisitor
 
       private void generateCallToRegisterLineExecution()
       {
-         mw.visitLdcInsn(sourceFileName);
-         pushCurrentLineOnTheStack();
-         mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, "lineExecuted", "(Ljava/lang/String;I)V");
+         int slot = executionCounters.addSlot(currentLine, lineData);
+         generateCallToRegisterSegmentExecution(slot);
       }
 
-      private void pushCurrentLineOnTheStack()
+      private void generateCallToRegisterSegmentExecution(int slot)
       {
-         if (currentLine <= Short.MAX_VALUE) {
-            mw.visitIntInsn(SIPUSH, currentLine);
+         if (forCaching) {
+            mw.visitLdcInsn(executionCounters.id);
          }
          else {
-            mw.visitLdcInsn(currentLine);
+            pushIntegerOnTheStack(executionCounters.id);
+         }
+
+         pushIntegerOnTheStack(slot);
+         mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, "lineExecuted", "(II)V");
+      }
+
+      private void pushIntegerOnTheStack(int value)
+      {
+         if (value <= Short.MAX_VALUE) {
+            mw.visitIntInsn(SIPUSH, value);
+         }
+         else {
+            mw.visitLdcInsn(value);
          }
       }
 
@@ -304,11 +414,11 @@ final class CoverageModifier extends ClassVisitor
 
             if (firstInsnAfterJump) {
                branchData.setHasJumpTarget();
-               generateCallToRegisterBranchTargetExecution("jumpTargetExecuted", branchIndex);
+               generateCallToRegisterSegmentExecution(executionCounters.addJumpSlot(currentLine, branchData));
             }
             else {
                branchData.setHasNoJumpTarget();
-               generateCallToRegisterBranchTargetExecution("noJumpTargetExecuted", branchIndex);
+               generateCallToRegisterSegmentExecution(executionCounters.addSlot(currentLine, branchData));
             }
          }
 
@@ -338,18 +448,10 @@ final class CoverageModifier extends ClassVisitor
             int branchIndex = lineData.addBranch(unconditionalJumpSource, label);
             BranchCoverageData branchData = lineData.getBranchData(branchIndex);
             branchData.setHasJumpTarget();
-            generateCallToRegisterBranchTargetExecution("jumpTargetExecuted", branchIndex);
+            generateCallToRegisterSegmentExecution(executionCounters.addJumpSlot(currentLine, branchData));
          }
       }
 
-      private void generateCallToRegisterBranchTargetExecution(String methodName, int branchIndex)
-      {
-         mw.visitLdcInsn(sourceFileName);
-         pushCurrentLineOnTheStack();
-         mw.visitIntInsn(SIPUSH, branchIndex);
-         mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, methodName, "(Ljava/lang/String;II)V");
-      }
-
       @Override
       public void visitInsn(int opcode)
       {
@@ -474,7 +576,15 @@ final class CoverageModifier extends ClassVisitor
       {
          if (nodeIndex >= 0) {
             mw.visitLdcInsn(sourceFileName);
-            mw.visitLdcInsn(nodeBuilder.firstLine);
+
+            if (forCaching && nodeBuilder.firstLine <= Short.MAX_VALUE) {
+               // Keeps the constant pool free of integers which could be shared with the execution counters id.
+               mw.visitIntInsn(SIPUSH, nodeBuilder.firstLine);
+            }
+            else {
+               mw.visitLdcInsn(nodeBuilder.firstLine);
+            }
+
             mw.visitIntInsn(SIPUSH, nodeIndex);
             mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, "nodeReached", "(Ljava/lang/String;II)V");
          }
@@ -568,7 +678,7 @@ final class CoverageModifier extends ClassVisitor
 
          if (!owner.startsWith("java/")) {
             classAndFieldNames = owner.substring(owner.lastIndexOf('/') + 1) + '.' + name;
-            fieldHasData = fileData.dataCoverageInfo.isFieldWithCoverageData(classAndFieldNames);
+            fieldHasData = isFieldWithCoverageData(classAndFieldNames);
 
             if (fieldHasData && !isStatic) {
                generateCodeToSaveInstanceReferenceOnTheStack(getField, size2);
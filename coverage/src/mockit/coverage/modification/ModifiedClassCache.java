@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.coverage.paths.*;
+import mockit.external.asm4.*;
+
+/**
+ * An optional on-disk cache of classes modified for coverage, shared by successive test runs and by concurrent JVMs.
+ * <p/>
+ * Activated with the "jmockit-coverage-classCache" system property, whose value is the directory where cache entries
+ * are kept.
+ * Each entry is keyed by a digest of the original class file, the active metrics and the version of the coverage
+ * tool, and holds the modified class file, those of the inner classes modified together with it, and the coverage
+ * data (lines, branches, paths, and fields) for them, in the format of coverage data files.
+ * <p/>
+ * Classes modified for caching keep their coverage data apart from that of other classes in the same source file
+ * until they are added to it, so that the entry doesn't depend on the order in which classes get loaded.
+ * The id of their execution counters, which differs from one test run to the next, is loaded from a single constant
+ * pool entry, which gets patched when the entry is reused.
+ */
+final class ModifiedClassCache
+{
+   private static final int CONSTANT_INTEGER = 3;
+
+   private final File cacheDir;
+   private final byte[] keyPrefix;
+   private final ClassLoader classFileLoader;
+   private final AtomicInteger hits;
+   private final AtomicInteger misses;
+
+   static ModifiedClassCache createIfActive()
+   {
+      String cacheDir = System.getProperty("jmockit-coverage-classCache");
+
+      if (cacheDir == null || cacheDir.length() == 0) {
+         return null;
+      }
+
+      File dir = new File(cacheDir);
+
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+         System.out.println("JMockit: Unable to create coverage class cache directory " + dir);
+         return null;
+      }
+
+      return new ModifiedClassCache(dir);
+   }
+
+   private ModifiedClassCache(File cacheDir)
+   {
+      this.cacheDir = cacheDir;
+      keyPrefix = getKeyPrefix();
+      classFileLoader = CoverageModifier.class.getClassLoader();
+      hits = new AtomicInteger();
+      misses = new AtomicInteger();
+   }
+
+   private static byte[] getKeyPrefix()
+   {
+      StringBuilder prefix = new StringBuilder("1");
+
+      for (Metrics metric : Metrics.values()) {
+         prefix.append(metric.isActive() ? '+' : '-');
+      }
+
+      CodeSource codeSource = ModifiedClassCache.class.getProtectionDomain().getCodeSource();
+
+      if (codeSource != null) {
+         prefix.append(new File(codeSource.getLocation().getPath()).lastModified());
+      }
+
+      return prefix.toString().getBytes();
+   }
+
+   int getHits() { return hits.get(); }
+   int getMisses() { return misses.get(); }
+
+   byte[] modifyClass(String className, byte[] originalClassfile)
+   {
+      File entryFile = new File(cacheDir, computeDigest(keyPrefix, originalClassfile) + ".dat");
+
+      if (entryFile.exists()) {
+         byte[] modifiedClassfile = readEntryIfStillValid(className, entryFile);
+
+         if (modifiedClassfile != null) {
+            hits.incrementAndGet();
+            return modifiedClassfile;
+         }
+      }
+
+      misses.incrementAndGet();
+
+      ClassReader cr = new ClassReader(originalClassfile);
+      CoverageModifier modifier = new CoverageModifier(cr, classFileLoader, true);
+      cr.accept(modifier, 0);
+      byte[] modifiedClassfile = modifier.toByteArray();
+      FileCoverageData classData = modifier.getFileData();
+
+      if (classData != null) {
+         writeEntryIfPossible(className, entryFile, modifier, modifiedClassfile);
+         CoverageData.instance().addFile(modifier.getSourceFileName()).addClassData(classData);
+      }
+
+      return modifiedClassfile;
+   }
+
+   private static String computeDigest(byte[] prefix, byte[] classfile)
+   {
+      MessageDigest digest;
+
+      try {
+         digest = MessageDigest.getInstance("MD5");
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new RuntimeException(e);
+      }
+
+      if (prefix != null) {
+         digest.update(prefix);
+      }
+
+      StringBuilder hexDigest = new StringBuilder(32);
+
+      for (byte b : digest.digest(classfile)) {
+         hexDigest.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+
+      return hexDigest.toString();
+   }
+
+   private void writeEntryIfPossible(
+      String className, File entryFile, CoverageModifier modifier, byte[] modifiedClassfile)
+   {
+      Map<String, CoverageModifier> innerClassModifiers = modifier.getInnerClassModifiers();
+      Collection<MethodCoverageData> methods = modifier.getFileData().getMethods();
+      int[] idOffsets = new int[1 + innerClassModifiers.size()];
+      List<byte[]> modifiedClassfiles = new ArrayList<byte[]>(idOffsets.length);
+
+      idOffsets[0] = findOffsetOfCountersId(modifier, modifiedClassfile, methods);
+      modifiedClassfiles.add(modifiedClassfile);
+      int i = 1;
+
+      for (CoverageModifier innerClassModifier : innerClassModifiers.values()) {
+         byte[] innerClassfile = innerClassModifier.toByteArray();
+         idOffsets[i++] = findOffsetOfCountersId(innerClassModifier, innerClassfile, methods);
+         modifiedClassfiles.add(innerClassfile);
+      }
+
+      for (int idOffset : idOffsets) {
+         if (idOffset < 0) {
+            return;
+         }
+      }
+
+      try {
+         writeEntryFile(entryFile, className, modifier, modifiedClassfiles, idOffsets);
+      }
+      catch (IOException e) {
+         System.out.println("JMockit: Unable to write coverage class cache entry for " + className + ": " + e);
+      }
+   }
+
+   private static void writeEntryFile(
+      File entryFile, String className, CoverageModifier modifier, List<byte[]> modifiedClassfiles, int[] idOffsets)
+      throws IOException
+   {
+      // Written to a temporary file first, so that other JVMs never see a partial entry.
+      File tempFile = File.createTempFile(entryFile.getName(), ".tmp", entryFile.getParentFile());
+      OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tempFile));
+
+      boolean entryWritten = false;
+
+      try {
+         CoverageDataOutput output = new CoverageDataOutput(outputStream);
+         writeEntry(output, className, modifier, modifiedClassfiles, idOffsets);
+         output.finish();
+         entryWritten = true;
+      }
+      finally {
+         outputStream.close();
+
+         if (!entryWritten) {
+            tempFile.delete();
+         }
+      }
+
+      if (!tempFile.renameTo(entryFile) && !(entryFile.delete() && tempFile.renameTo(entryFile))) {
+         // Another JVM may be writing the same entry in the meantime.
+         tempFile.delete();
+      }
+   }
+
+   private static void writeEntry(
+      CoverageDataOutput output, String className, CoverageModifier modifier, List<byte[]> modifiedClassfiles,
+      int[] idOffsets) throws IOException
+   {
+      Map<String, CoverageModifier> innerClassModifiers = modifier.getInnerClassModifiers();
+      output.writeString(modifier.getSourceFileName());
+      output.writeBoolean(CoverageModifier.isInnerClassAlreadyModified(className));
+
+      output.writeInt(innerClassModifiers.size());
+
+      for (Map.Entry<String, CoverageModifier> nameAndModifier : innerClassModifiers.entrySet()) {
+         output.writeString(nameAndModifier.getKey());
+         output.writeString(computeDigest(null, nameAndModifier.getValue().getOriginalClassfile()));
+      }
+
+      Map<String, Boolean> fieldLookups = modifier.getFieldsLookedUpInSharedData();
+      output.writeInt(fieldLookups.size());
+
+      for (Map.Entry<String, Boolean> fieldAndResult : fieldLookups.entrySet()) {
+         output.writeString(fieldAndResult.getKey());
+         output.writeBoolean(fieldAndResult.getValue());
+      }
+
+      FileCoverageData classData = modifier.getFileData();
+      classData.writeTo(output);
+      writeClassfileAndCounters(output, modifiedClassfiles.get(0), idOffsets[0], modifier, classData);
+      int i = 1;
+
+      for (CoverageModifier innerClassModifier : innerClassModifiers.values()) {
+         writeClassfileAndCounters(output, modifiedClassfiles.get(i), idOffsets[i], innerClassModifier, classData);
+         i++;
+      }
+   }
+
+   /**
+    * Finds the position of the single constant pool entry holding the id of the execution counters in the modified
+    * class file, or returns -1 if it is shared with other constants of the class, and therefore can't be patched.
+    */
+   private static int findOffsetOfCountersId(
+      CoverageModifier modifier, byte[] modifiedClassfile, Collection<MethodCoverageData> methods)
+   {
+      ExecutionCounters counters = modifier.getExecutionCounters();
+      int id = counters.id;
+
+      if (counters.getSlotCount() > Short.MAX_VALUE || findIntegerConstant(modifier.getOriginalClassfile(), id) >= 0) {
+         return -1;
+      }
+
+      for (MethodCoverageData methodData : methods) {
+         if (id > Short.MAX_VALUE && methodData.getFirstLineInBody() == id) {
+            return -1;
+         }
+      }
+
+      return findIntegerConstant(modifiedClassfile, id);
+   }
+
+   private static int findIntegerConstant(byte[] classfile, int value)
+   {
+      ClassReader cr = new ClassReader(classfile);
+
+      for (int item = 1, n = cr.getItemCount(); item < n; item++) {
+         int offset = cr.getItem(item);
+
+         if (offset > 0 && classfile[offset - 1] == CONSTANT_INTEGER && cr.readInt(offset) == value) {
+            return offset;
+         }
+      }
+
+      return -1;
+   }
+
+   private static void writeClassfileAndCounters(
+      CoverageDataOutput output, byte[] modifiedClassfile, int idOffset, CoverageModifier modifier,
+      FileCoverageData classData) throws IOException
+   {
+      output.writeBytes(modifiedClassfile);
+      output.writeInt(idOffset);
+      modifier.getExecutionCounters().writeSlotsTo(output, classData.getLineToLineData());
+   }
+
+   private byte[] readEntryIfStillValid(String className, File entryFile)
+   {
+      try {
+         InputStream inputStream = new BufferedInputStream(new FileInputStream(entryFile));
+
+         try {
+            return readEntryIfStillValid(className, new CoverageDataInput(inputStream));
+         }
+         finally {
+            inputStream.close();
+         }
+      }
+      catch (IOException ignore) {
+         // The entry is replaced with a new one.
+         return null;
+      }
+   }
+
+   private byte[] readEntryIfStillValid(String className, CoverageDataInput input) throws IOException
+   {
+      String sourceFile = input.readString();
+      boolean registeredAsInnerClass = input.readBoolean();
+      int innerClassCount = input.readInt();
+      String[] innerClassNames = new String[innerClassCount];
+
+      for (int i = 0; i < innerClassCount; i++) {
+         innerClassNames[i] = input.readString();
+         String originalDigest = input.readString();
+
+         if (!isInnerClassUnchanged(innerClassNames[i], originalDigest)) {
+            return null;
+         }
+      }
+
+      FileCoverageData sharedFileData = CoverageData.instance().getFileData(sourceFile);
+
+      for (int fieldCount = input.readInt(); fieldCount > 0; fieldCount--) {
+         String classAndFieldNames = input.readString();
+         boolean fieldHadData = input.readBoolean();
+         boolean fieldHasData =
+            sharedFileData != null && sharedFileData.dataCoverageInfo.isFieldWithCoverageData(classAndFieldNames);
+
+         if (fieldHasData != fieldHadData) {
+            return null;
+         }
+      }
+
+      FileCoverageData classData = new FileCoverageData();
+      classData.readFrom(input);
+
+      byte[] modifiedClassfile = readClassfileAndCounters(input, sourceFile, classData);
+
+      for (String innerClassName : innerClassNames) {
+         byte[] innerClassfile = readClassfileAndCounters(input, sourceFile, classData);
+         CoverageModifier.addInnerClassFromCache(innerClassName, innerClassfile);
+      }
+
+      if (registeredAsInnerClass) {
+         CoverageModifier.addInnerClassFromCache(className, modifiedClassfile);
+      }
+
+      CoverageData.instance().addFile(sourceFile).addClassData(classData);
+      return modifiedClassfile;
+   }
+
+   private boolean isInnerClassUnchanged(String innerClassName, String originalDigest) throws IOException
+   {
+      if (CoverageModifier.isInnerClassAlreadyModified(innerClassName)) {
+         return false;
+      }
+
+      InputStream classFile = classFileLoader.getResourceAsStream(innerClassName.replace('.', '/') + ".class");
+
+      if (classFile == null) {
+         return false;
+      }
+
+      byte[] originalClassfile;
+
+      try {
+         originalClassfile = new ClassReader(classFile).b;
+      }
+      finally {
+         classFile.close();
+      }
+
+      return originalDigest.equals(computeDigest(null, originalClassfile));
+   }
+
+   private static byte[] readClassfileAndCounters(
+      CoverageDataInput input, String sourceFile, FileCoverageData classData) throws IOException
+   {
+      byte[] modifiedClassfile = input.readBytes();
+      int idOffset = input.readInt();
+      ExecutionCounters counters = classData.lineCoverageInfo.readExecutionCountersFrom(input, sourceFile, -1);
+      int id = counters.id;
+
+      modifiedClassfile[idOffset] = (byte) (id >>> 24);
+      modifiedClassfile[idOffset + 1] = (byte) (id >>> 16);
+      modifiedClassfile[idOffset + 2] = (byte) (id >>> 8);
+      modifiedClassfile[idOffset + 3] = (byte) id;
+
+      return modifiedClassfile;
+   }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.external.asm4.*;
+
+/**
+ * Command line tool which modifies for coverage, ahead of test runs, the classes in one or more class directories or
+ * jar files, rewriting them in place.
+ * <p/>
+ * Each directory or jar also gets the {@linkplain InstrumentationMetadata metadata} for the classes instrumented in
+ * it, which is read when coverage starts in a test run; the instrumented classes are then loaded as they are, instead
+ * of being modified again by the class file transformer.
+ * All class directories and jars used together in a test run must be instrumented in the same execution of the tool,
+ * since the probes in all of them refer to execution counters numbered in sequence.
+ * <p/>
+ * Classes are selected with the "jmockit-coverage-classes" and "jmockit-coverage-excludes" system properties, as in a
+ * test run; the rules based on the location of class files don't apply, though.
+ */
+public final class OfflineInstrumentation
+{
+   private final File location;
+   private final ClassSelection classSelection;
+   private final Map<String, byte[]> entries;
+   private final Map<String, byte[]> modifiedEntries;
+   private final ClassLoader classFileLoader;
+
+   public static void main(String[] args) throws IOException
+   {
+      if (args.length == 0) {
+         System.out.println(
+            "Usage: java -cp jmockit-coverage.jar " + OfflineInstrumentation.class.getName() +
+            " <class dir or jar>...");
+         return;
+      }
+
+      ClassSelection classSelection = new ClassSelection();
+
+      for (String path : args) {
+         new OfflineInstrumentation(new File(path), classSelection).instrument();
+      }
+   }
+
+   private OfflineInstrumentation(File location, ClassSelection classSelection)
+   {
+      this.location = location;
+      this.classSelection = classSelection;
+      entries = new LinkedHashMap<String, byte[]>();
+      modifiedEntries = new HashMap<String, byte[]>();
+
+      // Inner classes are read while modifying their outer classes, so they must come from the same location.
+      classFileLoader = new ClassLoader(null) {
+         @Override
+         public InputStream getResourceAsStream(String name)
+         {
+            byte[] classFile = entries.get(name);
+            return classFile == null ? null : new ByteArrayInputStream(classFile);
+         }
+      };
+   }
+
+   private void instrument() throws IOException
+   {
+      if (location.isDirectory()) {
+         readClassFilesFromDirectory(location, "");
+      }
+      else {
+         readEntriesFromJar();
+      }
+
+      if (
+         entries.containsKey(InstrumentationMetadata.RESOURCE_NAME) ||
+         new File(location, InstrumentationMetadata.RESOURCE_NAME).exists()
+      ) {
+         throw new IllegalArgumentException(location + " was already instrumented for coverage");
+      }
+
+      int firstCountersId = ExecutionCounters.getCountersCreated();
+      List<String> classNames = modifyClasses();
+
+      if (classNames.isEmpty()) {
+         System.out.println("JMockit: No classes to instrument for coverage in " + location);
+         return;
+      }
+
+      List<ExecutionCounters> counters = new ArrayList<ExecutionCounters>();
+
+      for (int id = firstCountersId, n = ExecutionCounters.getCountersCreated(); id < n; id++) {
+         counters.add(ExecutionCounters.get(id));
+      }
+
+      ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+      InstrumentationMetadata.writeTo(metadata, counters, classNames);
+      modifiedEntries.put(InstrumentationMetadata.RESOURCE_NAME, metadata.toByteArray());
+
+      if (location.isDirectory()) {
+         writeModifiedEntriesToDirectory();
+      }
+      else {
+         writeEntriesToJar();
+      }
+
+      System.out.println(
+         "JMockit: Instrumented " + classNames.size() + " classes for coverage in " + location.getCanonicalPath());
+   }
+
+   private void readClassFilesFromDirectory(File dir, String entryPrefix) throws IOException
+   {
+      File[] files = dir.listFiles();
+
+      if (files == null) {
+         return;
+      }
+
+      Arrays.sort(files);
+
+      for (File file : files) {
+         String entryName = entryPrefix + file.getName();
+
+         if (file.isDirectory()) {
+            readClassFilesFromDirectory(file, entryName + '/');
+         }
+         else if (entryName.endsWith(".class")) {
+            entries.put(entryName, readBytes(new FileInputStream(file)));
+         }
+      }
+   }
+
+   private void readEntriesFromJar() throws IOException
+   {
+      ZipFile jar = new ZipFile(location);
+
+      try {
+         for (Enumeration<? extends ZipEntry> jarEntries = jar.entries(); jarEntries.hasMoreElements(); ) {
+            ZipEntry jarEntry = jarEntries.nextElement();
+            byte[] contents = jarEntry.isDirectory() ? new byte[0] : readBytes(jar.getInputStream(jarEntry));
+            entries.put(jarEntry.getName(), contents);
+         }
+      }
+      finally {
+         jar.close();
+      }
+   }
+
+   private static byte[] readBytes(InputStream input) throws IOException
+   {
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+         byte[] buffer = new byte[4096];
+         int bytesRead;
+
+         while ((bytesRead = input.read(buffer)) > 0) {
+            bytes.write(buffer, 0, bytesRead);
+         }
+
+         return bytes.toByteArray();
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   private List<String> modifyClasses()
+   {
+      List<String> classFileNames = new ArrayList<String>();
+
+      for (String entryName : entries.keySet()) {
+         if (entryName.endsWith(".class")) {
+            classFileNames.add(entryName);
+         }
+      }
+
+      // Outer classes go first, so that their inner classes get modified together with them, as when loaded.
+      Collections.sort(classFileNames, new Comparator<String>() {
+         public int compare(String name1, String name2)
+         {
+            int nestingLevelDifference = getNestingLevel(name1) - getNestingLevel(name2);
+            return nestingLevelDifference != 0 ? nestingLevelDifference : name1.compareTo(name2);
+         }
+      });
+
+      List<String> classNames = new ArrayList<String>();
+
+      for (String classFileName : classFileNames) {
+         String className = classFileName.substring(0, classFileName.length() - 6).replace('/', '.');
+
+         if (classSelection.isSelectedForOfflineInstrumentation(className)) {
+            byte[] modifiedClassFile = modifyClassIfPossible(className, entries.get(classFileName));
+
+            if (modifiedClassFile != null) {
+               modifiedEntries.put(classFileName, modifiedClassFile);
+               classNames.add(className);
+            }
+         }
+      }
+
+      return classNames;
+   }
+
+   private static int getNestingLevel(String classFileName)
+   {
+      int nestingLevel = 0;
+
+      for (int p = classFileName.indexOf('$'); p > 0; p = classFileName.indexOf('$', p + 1)) {
+         nestingLevel++;
+      }
+
+      return nestingLevel;
+   }
+
+   private byte[] modifyClassIfPossible(String className, byte[] classFile)
+   {
+      try {
+         byte[] modifiedClassFile = CoverageModifier.recoverModifiedByteCodeIfAvailable(className);
+
+         if (modifiedClassFile != null) {
+            return modifiedClassFile;
+         }
+
+         ClassReader cr = new ClassReader(classFile);
+         CoverageModifier modifier = new CoverageModifier(cr, classFileLoader, false);
+         cr.accept(modifier, 0);
+         return modifier.toByteArray();
+      }
+      catch (VisitInterruptedException ignore) {
+         // Ignore the class if the modification was refused for some reason.
+      }
+      catch (RuntimeException e) {
+         e.printStackTrace();
+      }
+      catch (AssertionError e) {
+         e.printStackTrace();
+      }
+
+      return null;
+   }
+
+   private void writeModifiedEntriesToDirectory() throws IOException
+   {
+      for (Map.Entry<String, byte[]> nameAndContents : modifiedEntries.entrySet()) {
+         File file = new File(location, nameAndContents.getKey());
+         File parentDir = file.getParentFile();
+
+         if (!parentDir.isDirectory() && !parentDir.mkdirs()) {
+            throw new IOException("Unable to create directory " + parentDir);
+         }
+
+         OutputStream output = new FileOutputStream(file);
+
+         try {
+            output.write(nameAndContents.getValue());
+         }
+         finally {
+            output.close();
+         }
+      }
+   }
+
+   private void writeEntriesToJar() throws IOException
+   {
+      File tempFile = new File(location.getPath() + ".tmp");
+      ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+      try {
+         for (Map.Entry<String, byte[]> nameAndContents : entries.entrySet()) {
+            String entryName = nameAndContents.getKey();
+            byte[] modifiedContents = modifiedEntries.get(entryName);
+            writeJarEntry(output, entryName, modifiedContents == null ? nameAndContents.getValue() : modifiedContents);
+         }
+
+         String metadataEntryName = InstrumentationMetadata.RESOURCE_NAME;
+         writeJarEntry(output, metadataEntryName, modifiedEntries.get(metadataEntryName));
+      }
+      finally {
+         output.close();
+      }
+
+      if (!tempFile.renameTo(location) && !(location.delete() && tempFile.renameTo(location))) {
+         throw new IOException("Unable to replace " + location + "; instrumented jar left in " + tempFile);
+      }
+   }
+
+   private static void writeJarEntry(ZipOutputStream output, String entryName, byte[] contents) throws IOException
+   {
+      output.putNextEntry(new ZipEntry(entryName));
+      output.write(contents);
+      output.closeEntry();
+   }
+}
@@ -7,6 +7,7 @@ package mockit.coverage.paths;
 import java.io.*;
 import java.util.*;
 
+import mockit.coverage.data.*;
 import mockit.coverage.paths.Node.*;
 
 public final class MethodCoverageData implements Serializable
@@ -18,9 +19,9 @@ public final class MethodCoverageData implements Serializable
    private int firstLine;
    private int lastLine;
 
-   // Helper fields used during node building and path execution:
-   private transient ThreadLocal<List<Node>> nodesReached;
-   private transient ThreadLocal<Integer> previousNodeIndex;
+   // Helper fields used during path execution:
+   private transient ThreadLocal<NodeIndexSet> nodesReached;
+   private transient Path[] pathsByNodeIndexes;
 
    public List<Path> paths;
    private List<Path> nonShadowedPaths;
@@ -35,9 +36,7 @@ public final class MethodCoverageData implements Serializable
       nodes = nodeBuilder.nodes;
       paths = new PathBuilder().buildPaths(nodes);
       buildListOfNonShadowedPaths();
-
-      nodesReached = new ThreadLocal<List<Node>>();
-      previousNodeIndex = new ThreadLocal<Integer>();
+      prepareForPathExecution();
    }
 
    private void buildListOfNonShadowedPaths()
@@ -51,43 +50,94 @@ public final class MethodCoverageData implements Serializable
       }
    }
 
-   public int getFirstLineInBody() { return firstLine; }
-   public int getLastLineInBody() { return lastLine; }
-
-   public void markNodeAsReached(int nodeIndex)
+   private void prepareForPathExecution()
    {
-      if (nodeIndex == 0) {
-         clearNodes();
-      }
+      final int nodeCount = nodes.size();
 
-      Node node = nodes.get(nodeIndex);
-      List<Node> currentNodesReached = nodesReached.get();
+      nodesReached = new ThreadLocal<NodeIndexSet>() {
+         @Override
+         protected NodeIndexSet initialValue() { return new NodeIndexSet(nodeCount); }
+      };
 
-      if (!node.wasReached() && (nodeIndex == 0 || nodeIndex > previousNodeIndex.get())) {
-         node.setReached(Boolean.TRUE);
-         currentNodesReached.add(node);
-         previousNodeIndex.set(nodeIndex);
+      Map<Node, Integer> nodeIndexes = new IdentityHashMap<Node, Integer>(nodeCount);
+
+      for (Node node : nodes) {
+         nodeIndexes.put(node, nodeIndexes.size());
       }
 
-      if (node instanceof Exit) {
-         Exit exitNode = (Exit) node;
+      // Open addressing table with at most half of its slots used, so that probe sequences are short.
+      pathsByNodeIndexes = new Path[Integer.highestOneBit(2 * paths.size() + 1) << 1];
 
-         for (Path path : exitNode.paths) {
-            if (path.countExecutionIfAllNodesWereReached(currentNodesReached)) {
-               return;
+      for (Node node : nodes) {
+         if (node instanceof Exit) {
+            for (Path path : ((Exit) node).paths) {
+               if (path.computeNodeIndexes(nodeIndexes, nodeCount)) {
+                  addToPathTable(path);
+               }
             }
          }
       }
    }
 
-   private void clearNodes()
+   private void addToPathTable(Path path)
    {
-      for (Node node : nodes) {
-         node.setReached(null);
+      int mask = pathsByNodeIndexes.length - 1;
+
+      for (int i = path.nodeIndexes.hash() & mask; ; i = i + 1 & mask) {
+         Path pathInSlot = pathsByNodeIndexes[i];
+
+         if (pathInSlot == null) {
+            pathsByNodeIndexes[i] = path;
+            return;
+         }
+
+         // As when paths were matched one by one, the first one with the same nodes is the one counted.
+         if (pathInSlot.nodeIndexes.hasSameIndexesAs(path.nodeIndexes)) {
+            return;
+         }
       }
+   }
 
-      nodesReached.set(new ArrayList<Node>());
-      previousNodeIndex.set(0);
+   private Path findPath(NodeIndexSet nodeIndexes)
+   {
+      int mask = pathsByNodeIndexes.length - 1;
+
+      for (int i = nodeIndexes.hash() & mask; ; i = i + 1 & mask) {
+         Path pathInSlot = pathsByNodeIndexes[i];
+
+         if (pathInSlot == null || pathInSlot.nodeIndexes.hasSameIndexesAs(nodeIndexes)) {
+            return pathInSlot;
+         }
+      }
+   }
+
+   public int getFirstLineInBody() { return firstLine; }
+   public int getLastLineInBody() { return lastLine; }
+
+   /**
+    * Adds the node to the ones reached by the current thread in the current execution of the method, provided it comes
+    * after the last one added; when an exit node is reached, the path whose nodes are exactly the ones reached, if
+    * any, gets its execution counted.
+    */
+   public void markNodeAsReached(int nodeIndex)
+   {
+      NodeIndexSet currentNodesReached = nodesReached.get();
+
+      if (nodeIndex == 0) {
+         currentNodesReached.clear();
+         currentNodesReached.add(0);
+      }
+      else if (nodeIndex > currentNodesReached.lastIndexAdded) {
+         currentNodesReached.add(nodeIndex);
+      }
+
+      if (nodes.get(nodeIndex) instanceof Exit) {
+         Path path = findPath(currentNodesReached);
+
+         if (path != null && path.nodeIndexes.contains(nodeIndex)) {
+            path.countExecution();
+         }
+      }
    }
 
    public List<Path> getPaths() { return nonShadowedPaths; }
@@ -127,9 +177,73 @@ public final class MethodCoverageData implements Serializable
       }
    }
 
+   void writeTo(CoverageDataOutput output, boolean resettingCounts) throws IOException
+   {
+      output.writeString(methodName);
+      output.writeInt(firstLine);
+      output.writeInt(lastLine);
+
+      output.writeInt(nodes.size());
+      Map<Node, Integer> nodeIndexes = new IdentityHashMap<Node, Integer>(nodes.size());
+
+      for (Node node : nodes) {
+         nodeIndexes.put(node, nodeIndexes.size());
+         node.writeTo(output);
+      }
+
+      output.writeInt(paths.size());
+      Map<Path, Integer> pathIndexes = new IdentityHashMap<Path, Integer>(paths.size());
+
+      for (Path path : paths) {
+         pathIndexes.put(path, pathIndexes.size());
+      }
+
+      for (Path path : paths) {
+         path.writeTo(output, nodeIndexes, pathIndexes, resettingCounts);
+      }
+   }
+
+   static MethodCoverageData readFrom(CoverageDataInput input) throws IOException
+   {
+      MethodCoverageData methodData = new MethodCoverageData(input.readString());
+      methodData.firstLine = input.readInt();
+      methodData.lastLine = input.readInt();
+
+      int nodeCount = input.readInt();
+      methodData.nodes = new ArrayList<Node>(nodeCount);
+
+      for (int i = 0; i < nodeCount; i++) {
+         methodData.nodes.add(Node.readFrom(input));
+      }
+
+      int pathCount = input.readInt();
+      List<Path> paths = new ArrayList<Path>(pathCount);
+      int[] shadowPathIndexes = new int[pathCount];
+
+      for (int i = 0; i < pathCount; i++) {
+         shadowPathIndexes[i] = Path.readFrom(input, methodData.nodes, paths);
+      }
+
+      for (int i = 0; i < pathCount; i++) {
+         if (shadowPathIndexes[i] > 0) {
+            paths.get(i).setShadowPath(paths.get(shadowPathIndexes[i] - 1));
+         }
+      }
+
+      methodData.paths = paths;
+      methodData.buildListOfNonShadowedPaths();
+
+      // Needed when the data comes from classes instrumented offline, whose paths are executed during the test run.
+      methodData.prepareForPathExecution();
+
+      return methodData;
+   }
+
    public void reset()
    {
-      clearNodes();
+      if (nodesReached != null) {
+         nodesReached.remove();
+      }
 
       for (Path path : paths) {
          path.reset();
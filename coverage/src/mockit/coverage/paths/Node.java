@@ -7,11 +7,12 @@ package mockit.coverage.paths;
 import java.util.*;
 import java.io.*;
 
+import mockit.coverage.data.*;
+
 public class Node implements Serializable
 {
    private static final long serialVersionUID = 7521062699264845946L;
 
-   private final transient ThreadLocal<Boolean> reached = new ThreadLocal<Boolean>();
    public final int line;
    protected int segment;
 
@@ -25,12 +26,55 @@ public class Node implements Serializable
 
    public final int getSegment() { return segment; }
 
-   final void setReached(Boolean reached) { this.reached.set(reached); }
-   final boolean wasReached() { return reached.get() != null; }
-
    @Override
    public final String toString() { return getClass().getSimpleName() + ':' + line + '-' + segment; }
 
+   // Node kinds in coverage data files:
+   private static final int ENTRY = 0;
+   private static final int EXIT = 1;
+   private static final int BASIC_BLOCK = 2;
+   private static final int SIMPLE_FORK = 3;
+   private static final int MULTI_FORK = 4;
+   private static final int JOIN = 5;
+   private static final int GOTO = 6;
+
+   /**
+    * Writes the kind, line and segment of the node; connections to successor nodes are only needed while building
+    * the paths of a method, so they are not written.
+    */
+   final void writeTo(CoverageDataOutput output) throws IOException
+   {
+      int kind =
+         this instanceof Entry ? ENTRY : this instanceof Exit ? EXIT : this instanceof BasicBlock ? BASIC_BLOCK :
+         this instanceof SimpleFork ? SIMPLE_FORK : this instanceof MultiFork ? MULTI_FORK :
+         this instanceof Join ? JOIN : GOTO;
+
+      output.writeByte(kind);
+      output.writeInt(line);
+      output.writeInt(segment);
+   }
+
+   static Node readFrom(CoverageDataInput input) throws IOException
+   {
+      int kind = input.readByte();
+      int line = input.readInt();
+      Node node;
+
+      switch (kind) {
+         case ENTRY: node = new Entry(line); break;
+         case EXIT: node = new Exit(line); break;
+         case BASIC_BLOCK: node = new BasicBlock(line); break;
+         case SIMPLE_FORK: node = new SimpleFork(line); break;
+         case MULTI_FORK: node = new MultiFork(line); break;
+         case JOIN: node = new Join(line); break;
+         case GOTO: node = new Goto(line); break;
+         default: throw new IOException("Invalid node kind in coverage data file: " + kind);
+      }
+
+      node.segment = input.readInt();
+      return node;
+   }
+
    static final class Entry extends Node
    {
       private static final long serialVersionUID = -3065417917872259568L;
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.paths;
+
+import java.util.*;
+
+/**
+ * A set of node indexes in a method, kept as a bit set together with a hash code which is updated as each index is
+ * added.
+ * Each path has one such set for its nodes, while each thread executing the method has another for the nodes reached
+ * so far, so that the path taken is identified when an exit node is reached without allocating anything.
+ */
+final class NodeIndexSet
+{
+   private final long[] bits;
+   private long hash;
+   int lastIndexAdded;
+
+   NodeIndexSet(int nodeCount) { bits = new long[(nodeCount + 63) >>> 6]; }
+
+   boolean contains(int nodeIndex) { return (bits[nodeIndex >>> 6] & 1L << nodeIndex) != 0; }
+
+   /**
+    * Adds an index which is not yet in the set.
+    */
+   void add(int nodeIndex)
+   {
+      bits[nodeIndex >>> 6] |= 1L << nodeIndex;
+      hash += hashOf(nodeIndex);
+      lastIndexAdded = nodeIndex;
+   }
+
+   private static long hashOf(int nodeIndex)
+   {
+      long h = (nodeIndex + 1) * 0x9E3779B97F4A7C15L;
+      return h ^ h >>> 29;
+   }
+
+   int hash() { return (int) (hash ^ hash >>> 32); }
+
+   boolean hasSameIndexesAs(NodeIndexSet other) { return hash == other.hash && Arrays.equals(bits, other.bits); }
+
+   void clear()
+   {
+      Arrays.fill(bits, 0L);
+      hash = 0;
+      lastIndexAdded = 0;
+   }
+}
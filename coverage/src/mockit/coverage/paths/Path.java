@@ -8,6 +8,8 @@ import java.io.*;
 import java.util.*;
 import java.util.concurrent.atomic.*;
 
+import mockit.coverage.data.*;
+
 public final class Path implements Serializable
 {
    private static final long serialVersionUID = 8895491272907955543L;
@@ -17,6 +19,9 @@ public final class Path implements Serializable
    private final boolean shadowed;
    private Path shadowPath;
 
+   // The indexes of the nodes in the path, to match it against the nodes reached in an execution of the method:
+   transient NodeIndexSet nodeIndexes;
+
    Path(Node.Entry entryNode)
    {
       shadowed = false;
@@ -30,19 +35,36 @@ public final class Path implements Serializable
       nodes.addAll(sharedSubPath.nodes);
    }
 
+   private Path(boolean shadowed) { this.shadowed = shadowed; }
+
    void addNode(Node node) { nodes.add(node); }
 
-   boolean countExecutionIfAllNodesWereReached(List<Node> nodesReached)
+   /**
+    * Computes the set of node indexes for the path, returning false if its nodes are not in increasing index order;
+    * such a path can never be executed, since a node is only considered reached when it comes after the previous one.
+    */
+   boolean computeNodeIndexes(Map<Node, Integer> allNodeIndexes, int nodeCount)
    {
-      boolean allNodesReached = nodes.equals(nodesReached);
+      NodeIndexSet indexes = new NodeIndexSet(nodeCount);
+      int previousIndex = -1;
 
-      if (allNodesReached) {
-         executionCount.getAndIncrement();
+      for (Node node : nodes) {
+         int nodeIndex = allNodeIndexes.get(node);
+
+         if (nodeIndex <= previousIndex) {
+            return false;
+         }
+
+         indexes.add(nodeIndex);
+         previousIndex = nodeIndex;
       }
 
-      return allNodesReached;
+      nodeIndexes = indexes;
+      return true;
    }
 
+   void countExecution() { executionCount.getAndIncrement(); }
+
    public boolean isShadowed() { return shadowed; }
    public List<Node> getNodes() { return nodes; }
 
@@ -60,9 +82,53 @@ public final class Path implements Serializable
    void addCountFromPreviousTestRun(Path previousPath)
    {
       int previousExecutionCount = previousPath.executionCount.get();
-      executionCount.set(previousExecutionCount);
+      executionCount.addAndGet(previousExecutionCount);
    }
 
+   /**
+    * Writes the path, optionally taking its execution count atomically, so that executions counted concurrently are
+    * kept for the next time.
+    */
+   void writeTo(
+      CoverageDataOutput output, Map<Node, Integer> nodeIndexes, Map<Path, Integer> pathIndexes,
+      boolean resettingCount) throws IOException
+   {
+      output.writeBoolean(shadowed);
+      output.writeInt(nodes.size());
+
+      for (Node node : nodes) {
+         output.writeInt(nodeIndexes.get(node));
+      }
+
+      output.writeInt(resettingCount ? executionCount.getAndSet(0) : executionCount.get());
+      output.writeInt(shadowPath == null ? 0 : 1 + pathIndexes.get(shadowPath));
+   }
+
+   /**
+    * Reads a path, returning the index of its shadow path plus one, or zero if none; the shadow path is linked by the
+    * caller once all paths are read.
+    */
+   static int readFrom(CoverageDataInput input, List<Node> allNodes, List<Path> allPaths) throws IOException
+   {
+      Path path = new Path(input.readBoolean());
+
+      for (int nodeCount = input.readInt(); nodeCount > 0; nodeCount--) {
+         Node node = allNodes.get(input.readInt());
+         path.addNode(node);
+
+         if (node instanceof Node.Exit) {
+            ((Node.Exit) node).paths.add(path);
+         }
+      }
+
+      path.executionCount.set(input.readInt());
+      allPaths.add(path);
+
+      return input.readInt();
+   }
+
+   void setShadowPath(Path shadowPath) { this.shadowPath = shadowPath; }
+
    void reset()
    {
       executionCount.set(0);
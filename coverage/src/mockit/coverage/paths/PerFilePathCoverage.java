@@ -17,6 +17,9 @@ public final class PerFilePathCoverage implements PerFileCoverage
    public final Map<Integer, MethodCoverageData> firstLineToMethodData =
       new LinkedHashMap<Integer, MethodCoverageData>();
 
+   // The method whose nodes were last reached, to avoid boxing its first line for a map lookup on each node reached:
+   private transient volatile MethodCoverageData lastMethodExecuted;
+
    // Computed on demand:
    private transient int totalPaths;
    private transient int coveredPaths;
@@ -37,11 +40,60 @@ public final class PerFilePathCoverage implements PerFileCoverage
 
    public void registerExecution(int firstLineInMethodBody, int node)
    {
-      MethodCoverageData methodData = firstLineToMethodData.get(firstLineInMethodBody);
+      MethodCoverageData methodData = lastMethodExecuted;
+
+      if (methodData == null || methodData.getFirstLineInBody() != firstLineInMethodBody) {
+         methodData = firstLineToMethodData.get(firstLineInMethodBody);
+
+         if (methodData == null) {
+            return;
+         }
+
+         lastMethodExecuted = methodData;
+      }
+
+      methodData.markNodeAsReached(node);
+   }
+
+   public void writeTo(CoverageDataOutput output) throws IOException { writeTo(output, false); }
+
+   /**
+    * Writes the data for each method, optionally discarding the path execution counts written; executions counted
+    * concurrently are not lost, but left for the next time.
+    */
+   public void writeTo(CoverageDataOutput output, boolean resettingCounts) throws IOException
+   {
+      output.writeInt(firstLineToMethodData.size());
+
+      for (Map.Entry<Integer, MethodCoverageData> firstLineAndMethodData : firstLineToMethodData.entrySet()) {
+         output.writeInt(firstLineAndMethodData.getKey());
+         firstLineAndMethodData.getValue().writeTo(output, resettingCounts);
+      }
+
+      if (resettingCounts) {
+         initializeCache();
+      }
+   }
+
+   public boolean hasExecutedPaths()
+   {
+      for (MethodCoverageData methodData : firstLineToMethodData.values()) {
+         if (methodData.getExecutionCount() > 0) {
+            return true;
+         }
+      }
+
+      return false;
+   }
 
-      if (methodData != null) {
-         methodData.markNodeAsReached(node);
+   public void readFrom(CoverageDataInput input) throws IOException
+   {
+      for (int methodCount = input.readInt(); methodCount > 0; methodCount--) {
+         int firstLine = input.readInt();
+         firstLineToMethodData.put(firstLine, MethodCoverageData.readFrom(input));
       }
+
+      initializeCache();
    }
 
    public int getTotalItems()
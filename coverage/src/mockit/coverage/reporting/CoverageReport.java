@@ -7,19 +7,46 @@ package mockit.coverage.reporting;
 import java.io.*;
 import java.util.*;
 import java.util.Map.*;
+import java.util.concurrent.*;
 
 import mockit.coverage.data.*;
 import mockit.coverage.reporting.packages.*;
 import mockit.coverage.reporting.sourceFiles.*;
 
+/**
+ * Generates the HTML coverage report, with one page per source file plus the index page.
+ * <p/>
+ * Source file pages are independent of each other, so they are generated concurrently by a number of worker threads
+ * given by the "jmockit-coverage-reportThreads" system property (by default, the number of available processors; a
+ * value of 1 generates all pages in the calling thread).
+ * The package lists and the list of source files not found are still built in the order of the coverage data, and
+ * the index page is only generated once all source file pages are done, so the output is the same regardless of the
+ * number of threads.
+ * <p/>
+ * When the "jmockit-coverage-incrementalReport" system property is set to "true", source file pages are only written
+ * if their {@linkplain PageFingerprints fingerprints} differ from the ones recorded by the previous report in the same
+ * output dir.
+ */
 class CoverageReport
 {
+   private static final int REPORT_THREADS = getNumberOfReportThreads();
+   private static final boolean INCREMENTAL = Boolean.getBoolean("jmockit-coverage-incrementalReport");
+
+   private static int getNumberOfReportThreads()
+   {
+      String threads = System.getProperty("jmockit-coverage-reportThreads");
+      return threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads.trim());
+   }
+
    private final String outputDir;
    private final List<File> sourceDirs;
    private final Map<String, FileCoverageData> fileToFileData;
    private final Map<String, List<String>> packageToFiles;
    private final boolean withCallPoints;
    private final Collection<String> sourceFilesNotFound;
+   private final StaticFiles staticFiles;
+   private SourceFileIndex sourceFileIndex;
+   private PageFingerprints pageFingerprints;
 
    protected CoverageReport(String outputDir, String[] srcDirs, CoverageData coverageData, boolean withCallPoints)
    {
@@ -29,6 +56,7 @@ class CoverageReport
       packageToFiles = new HashMap<String, List<String>>();
       this.withCallPoints = withCallPoints;
       sourceFilesNotFound = srcDirs == null ? null : new ArrayList<String>();
+      staticFiles = new StaticFiles();
    }
 
    public final void generate() throws IOException
@@ -43,8 +71,21 @@ class CoverageReport
 
       boolean withSourceFilePages = sourceDirs != null;
 
-      if (withSourceFilePages && sourceDirs.size() > 1) {
-         System.out.println("JMockit: Coverage source dirs: " + sourceDirs);
+      if (withSourceFilePages) {
+         if (sourceDirs.size() > 1) {
+            System.out.println("JMockit: Coverage source dirs: " + sourceDirs);
+         }
+
+         sourceFileIndex = new SourceFileIndex(sourceDirs);
+      }
+
+      if (withSourceFilePages && INCREMENTAL) {
+         pageFingerprints =
+            new PageFingerprints(outputDir, withCallPoints, staticFiles.getLastModifiedTimeOfCoverageJar());
+      }
+      else {
+         // Pages are about to be rewritten without fingerprints, so the ones from a previous report become invalid.
+         PageFingerprints.discardAll(outputDir);
       }
 
       generateFileCoverageReportsWhileBuildingPackageLists();
@@ -54,7 +95,11 @@ class CoverageReport
       }
 
       new IndexPage(outputFile, sourceDirs, sourceFilesNotFound, packageToFiles, fileToFileData).generate();
-      new StaticFiles().copyToOutputDir(outputDir, withSourceFilePages);
+      staticFiles.copyToOutputDir(outputDir, withSourceFilePages);
+
+      if (pageFingerprints != null) {
+         pageFingerprints.save();
+      }
 
       System.out.println("JMockit: Coverage report written to " + outputFile.getParentFile().getCanonicalPath());
    }
@@ -85,28 +130,129 @@ class CoverageReport
    {
       Set<Entry<String, FileCoverageData>> files = fileToFileData.entrySet();
 
-      for (Entry<String, FileCoverageData> fileAndFileData : files) {
-         generateFileCoverageReport(fileAndFileData.getKey(), fileAndFileData.getValue());
+      if (sourceDirs == null) {
+         for (Entry<String, FileCoverageData> fileAndFileData : files) {
+            addFileToPackageFileList(fileAndFileData.getKey());
+         }
+      }
+      else if (REPORT_THREADS <= 1 || files.size() <= 1) {
+         for (Entry<String, FileCoverageData> fileAndFileData : files) {
+            String sourceFile = fileAndFileData.getKey();
+            boolean sourceFileFound = generateFileCoverageReport(sourceFile, fileAndFileData.getValue());
+            addFileToReportLists(sourceFile, sourceFileFound);
+         }
+      }
+      else {
+         generateFileCoverageReportsInParallel(files);
+      }
+   }
+
+   private void generateFileCoverageReportsInParallel(Set<Entry<String, FileCoverageData>> files) throws IOException
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(REPORT_THREADS, files.size()));
+      List<String> sourceFiles = new ArrayList<String>(files.size());
+      List<Future<Boolean>> pagesGenerated = new ArrayList<Future<Boolean>>(files.size());
+
+      try {
+         for (final Entry<String, FileCoverageData> fileAndFileData : files) {
+            sourceFiles.add(fileAndFileData.getKey());
+            pagesGenerated.add(executor.submit(new Callable<Boolean>() {
+               public Boolean call() throws IOException
+               {
+                  return generateFileCoverageReport(fileAndFileData.getKey(), fileAndFileData.getValue());
+               }
+            }));
+         }
+
+         for (int i = 0; i < sourceFiles.size(); i++) {
+            boolean sourceFileFound = getResult(pagesGenerated.get(i));
+            addFileToReportLists(sourceFiles.get(i), sourceFileFound);
+         }
+      }
+      finally {
+         executor.shutdownNow();
       }
    }
 
-   private void generateFileCoverageReport(String sourceFile, FileCoverageData fileData) throws IOException
+   private static boolean getResult(Future<Boolean> pageGenerated) throws IOException
    {
-      if (sourceDirs == null) {
-         addFileToPackageFileList(sourceFile);
+      try {
+         return pageGenerated.get();
       }
-      else {
-         InputFile inputFile = new InputFile(sourceDirs, sourceFile);
+      catch (InterruptedException e) {
+         throw new RuntimeException(e);
+      }
+      catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         }
 
-         if (inputFile.wasFileFound()) {
-            new FileCoverageReport(outputDir, inputFile, fileData, withCallPoints).generate();
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
          }
-         else {
-            sourceFilesNotFound.add(sourceFile);
+
+         throw new RuntimeException(cause);
+      }
+   }
+
+   private boolean generateFileCoverageReport(String sourceFile, FileCoverageData fileData) throws IOException
+   {
+      InputFile inputFile = new InputFile(sourceFileIndex, sourceFile);
+
+      if (!inputFile.wasFileFound()) {
+         return false;
+      }
+
+      if (pageFingerprints == null) {
+         new FileCoverageReport(outputDir, inputFile, fileData, withCallPoints).generate();
+      }
+      else {
+         generateFileCoverageReportIfChanged(sourceFile, inputFile, fileData);
+      }
+
+      return true;
+   }
+
+   private void generateFileCoverageReportIfChanged(String sourceFile, InputFile inputFile, FileCoverageData fileData)
+      throws IOException
+   {
+      String fingerprint;
+
+      try {
+         fingerprint = pageFingerprints.computeFingerprint(inputFile.getFile(), fileData);
+      }
+      catch (IOException e) {
+         inputFile.close();
+         throw e;
+      }
+
+      if (pageFingerprints.isPageUpToDate(sourceFile, fingerprint)) {
+         inputFile.close();
+         return;
+      }
+
+      boolean pageGenerated = false;
+
+      try {
+         new FileCoverageReport(outputDir, inputFile, fileData, withCallPoints).generate();
+         pageGenerated = true;
+      }
+      finally {
+         if (!pageGenerated) {
+            pageFingerprints.discardFingerprint(sourceFile);
          }
+      }
+   }
 
-         addFileToPackageFileList(sourceFile);
+   private void addFileToReportLists(String sourceFile, boolean sourceFileFound)
+   {
+      if (!sourceFileFound) {
+         sourceFilesNotFound.add(sourceFile);
       }
+
+      addFileToPackageFileList(sourceFile);
    }
 
    private void addFileToPackageFileList(String file)
@@ -128,24 +274,13 @@ class CoverageReport
       for (Entry<String, List<String>> packageAndFiles : packageToFiles.entrySet()) {
          String packageRelDir = packageAndFiles.getKey();
          List<String> packageFiles = packageAndFiles.getValue();
+         List<String> allPackageFiles = sourceFileIndex.getFileNamesInPackage(packageRelDir);
 
-         for (File srcDir : sourceDirs) {
-            addMissingSourceFiles(packageFiles, srcDir, packageRelDir);
-         }
-      }
-   }
-
-   private void addMissingSourceFiles(List<String> packageFilesToReport, File srcDir, String packageRelDir)
-   {
-      File packageDir = new File(srcDir, packageRelDir);
-      String[] allPackageFiles = packageDir.list();
-
-      if (allPackageFiles != null) {
-         addMissingSourceFiles(packageFilesToReport, allPackageFiles);
+         addMissingSourceFiles(packageFiles, allPackageFiles);
       }
    }
 
-   private void addMissingSourceFiles(List<String> packageFilesToReport, String[] allPackageFiles)
+   private void addMissingSourceFiles(List<String> packageFilesToReport, List<String> allPackageFiles)
    {
       for (String packageFile : allPackageFiles) {
          if (
@@ -4,71 +4,79 @@
  */
 package mockit.coverage.reporting;
 
-import java.util.*;
-
-import mockit.coverage.*;
+import mockit.coverage.lines.*;
 
 public final class ListOfCallPoints
 {
    private static final String EOL = System.getProperty("line.separator");
 
    private final StringBuilder content;
-   private int n;
 
    public ListOfCallPoints()
    {
       content = new StringBuilder(100);
    }
 
-   public void insertListOfCallPoints(List<CallPoint> callPoints)
+   public void insertListOfCallPoints(CallPointCounts callPoints)
    {
       if (content.length() == 0) {
          content.append(EOL).append("      ");
       }
 
       content.append("  <ol style='display: none'>").append(EOL);
-      n = 1;
 
       StackTraceElement previous = null;
 
-      for (CallPoint callPoint : callPoints) {
-         StackTraceElement current = callPoint.getStackTraceElement();
+      for (int i = 0, n = callPoints.size(); i < n; i++) {
+         StackTraceElement current = callPoints.getCallPoint(i).getStackTraceElement();
 
          if (previous == null) {
             appendTestMethod(current);
          }
          else if (!isSameTestMethod(current, previous)) {
-            appendRepetitionCountIfAny();
             content.append("</li>").append(EOL);
             appendTestMethod(current);
          }
-         else if (current.getLineNumber() == previous.getLineNumber()) {
-            n++;
-         }
          else {
-            appendRepetitionCountIfAny();
             content.append(", ").append(current.getLineNumber());
          }
 
+         appendRepetitionCountIfAny(callPoints.getCount(i));
          previous = current;
       }
 
-      content.append("</li>").append(EOL).append("        </ol>").append(EOL).append("      ");
+      if (previous != null) {
+         content.append("</li>").append(EOL);
+      }
+
+      appendExecutionsFromOtherCallPointsIfAny(callPoints.getExecutionsFromOtherCallPoints());
+      content.append("        </ol>").append(EOL).append("      ");
    }
 
    private void appendTestMethod(StackTraceElement current)
    {
       content.append("          <li>");
       content.append(current.getClassName()).append('#');
-      content.append(current.getMethodName().replaceFirst("<", "&lt;")).append(": ");
-      content.append(current.getLineNumber());
+      content.append(current.getMethodName().replaceFirst("<", "&lt;"));
+
+      // The line number is unknown when only the test method was captured.
+      if (current.getLineNumber() >= 0) {
+         content.append(": ").append(current.getLineNumber());
+      }
+   }
+
+   private void appendRepetitionCountIfAny(int count)
+   {
+      if (count > 1) {
+         content.append('x').append(count);
+      }
    }
 
-   private void appendRepetitionCountIfAny()
+   private void appendExecutionsFromOtherCallPointsIfAny(int executions)
    {
-      if (n > 1) {
-         content.append('x').append(n);
-         n = 1;
+      if (executions > 0) {
+         content.append("          <li>").append(executions).append(" more executions from other call points</li>");
+         content.append(EOL);
       }
    }
 
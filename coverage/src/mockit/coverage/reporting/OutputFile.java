@@ -28,15 +28,21 @@ public final class OutputFile extends PrintWriter
       withPrettyPrint = true;
    }
 
-   private static File getOutputFileCreatingDirIfNeeded(String outputDir, String sourceFilePath)
+   static File getOutputFile(String outputDir, String sourceFilePath)
    {
       int p = sourceFilePath.lastIndexOf('.');
       String outputFileName = sourceFilePath.substring(0, p) + ".html";
-      File outputFile = new File(outputDir, outputFileName);
+      return new File(outputDir, outputFileName);
+   }
+
+   private static File getOutputFileCreatingDirIfNeeded(String outputDir, String sourceFilePath)
+   {
+      File outputFile = getOutputFile(outputDir, sourceFilePath);
       File parentDir = outputFile.getParentFile();
 
       if (!parentDir.exists()) {
-         boolean outputDirCreated = parentDir.mkdirs();
+         // The same dir may be created concurrently by another thread generating a page for the same package.
+         boolean outputDirCreated = parentDir.mkdirs() || parentDir.isDirectory();
          assert outputDirCreated : "Failed to create output dir: " + outputDir;
       }
 
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.Map.*;
+import java.util.concurrent.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+
+/**
+ * Fingerprints of the source file pages in a previously generated report, used to avoid rewriting pages whose inputs
+ * did not change since then.
+ * <p/>
+ * The fingerprint of a page is a digest of the source file contents, of the coverage data for the file, and of the
+ * report settings which affect the page (call points, active metrics, and the coverage jar itself).
+ * Fingerprints are kept in a text file in the report output dir, with one line per page.
+ */
+final class PageFingerprints
+{
+   private static final String FILE_NAME = "pageFingerprints.txt";
+
+   private final File fingerprintsFile;
+   private final String outputDir;
+   private final String reportSettings;
+   private final Map<String, String> previousFingerprints;
+   private final Map<String, String> currentFingerprints;
+
+   PageFingerprints(String outputDir, boolean withCallPoints, long lastModifiedTimeOfCoverageJar) throws IOException
+   {
+      fingerprintsFile = new File(outputDir, FILE_NAME);
+      this.outputDir = outputDir;
+      reportSettings = buildReportSettings(withCallPoints, lastModifiedTimeOfCoverageJar);
+      previousFingerprints = readPreviousFingerprints();
+      currentFingerprints = new ConcurrentHashMap<String, String>();
+   }
+
+   private static String buildReportSettings(boolean withCallPoints, long lastModifiedTimeOfCoverageJar)
+   {
+      StringBuilder settings = new StringBuilder();
+      settings.append(withCallPoints).append(lastModifiedTimeOfCoverageJar);
+
+      for (Metrics metric : Metrics.values()) {
+         settings.append(metric.isActive() ? '+' : '-');
+      }
+
+      return settings.toString();
+   }
+
+   private Map<String, String> readPreviousFingerprints() throws IOException
+   {
+      Map<String, String> fingerprints = new HashMap<String, String>();
+
+      if (fingerprintsFile.exists()) {
+         BufferedReader input = new BufferedReader(new FileReader(fingerprintsFile));
+
+         try {
+            String line;
+
+            while ((line = input.readLine()) != null) {
+               int p = line.indexOf(' ');
+
+               if (p > 0) {
+                  fingerprints.put(line.substring(p + 1), line.substring(0, p));
+               }
+            }
+         }
+         finally {
+            input.close();
+         }
+      }
+
+      return fingerprints;
+   }
+
+   String computeFingerprint(File sourceFile, FileCoverageData fileData) throws IOException
+   {
+      MessageDigest digest = createDigest();
+      digest.update(reportSettings.getBytes("UTF-8"));
+      addFileContentsToDigest(digest, sourceFile);
+      fileData.addToDigest(digest);
+
+      StringBuilder fingerprint = new StringBuilder(32);
+
+      for (byte b : digest.digest()) {
+         fingerprint.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+
+      return fingerprint.toString();
+   }
+
+   private static MessageDigest createDigest()
+   {
+      try {
+         return MessageDigest.getInstance("MD5");
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   private static void addFileContentsToDigest(MessageDigest digest, File file) throws IOException
+   {
+      InputStream input = new FileInputStream(file);
+
+      try {
+         byte[] buffer = new byte[8192];
+         int bytesRead;
+
+         while ((bytesRead = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, bytesRead);
+         }
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   /**
+    * Records the fingerprint for the page of the given source file, and checks whether the page already exists with
+    * the same fingerprint, in which case it doesn't need to be generated again.
+    */
+   boolean isPageUpToDate(String sourceFile, String fingerprint)
+   {
+      currentFingerprints.put(sourceFile, fingerprint);
+      return
+         fingerprint.equals(previousFingerprints.get(sourceFile)) &&
+         OutputFile.getOutputFile(outputDir, sourceFile).exists();
+   }
+
+   /**
+    * Discards the fingerprint recorded for a page, so that it gets regenerated next time; used when generation fails.
+    */
+   void discardFingerprint(String sourceFile) { currentFingerprints.remove(sourceFile); }
+
+   static void discardAll(String outputDir)
+   {
+      File fingerprintsFile = new File(outputDir, FILE_NAME);
+
+      if (fingerprintsFile.exists() && !fingerprintsFile.delete()) {
+         System.out.println("JMockit: Unable to delete " + fingerprintsFile);
+      }
+   }
+
+   void save() throws IOException
+   {
+      Map<String, String> sortedFingerprints = new TreeMap<String, String>(currentFingerprints);
+      PrintWriter output = new PrintWriter(new FileWriter(fingerprintsFile));
+
+      try {
+         for (Entry<String, String> sourceFileAndFingerprint : sortedFingerprints.entrySet()) {
+            output.println(sourceFileAndFingerprint.getValue() + ' ' + sourceFileAndFingerprint.getKey());
+         }
+      }
+      finally {
+         output.close();
+      }
+   }
+}
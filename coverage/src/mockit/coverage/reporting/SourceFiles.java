@@ -47,7 +47,7 @@ final class SourceFiles
    private void addSrcSubDirs(File dir)
    {
       for (File subDir : dir.listFiles()) {
-         if (subDir.isDirectory()) {
+         if (subDir.isDirectory() && !subDir.isHidden()) {
             if ("src".equals(subDir.getName())) {
                srcDirs.add(subDir);
             }
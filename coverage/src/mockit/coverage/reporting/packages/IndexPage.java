@@ -30,12 +30,7 @@ public final class IndexPage extends ListWithFilesAndPercentages
       this.packageToFiles = packageToFiles;
       packageToPackagePercentages = new HashMap<String, int[]>();
       packageReport = new PackageCoverageReport(output, sourceFilesNotFound, fileToFileData, packageToFiles.values());
-      totalFileCount = totalNumberOfSourceFilesWithCoverageData(fileToFileData.values());
-   }
-
-   private int totalNumberOfSourceFilesWithCoverageData(Collection<FileCoverageData> fileData)
-   {
-      return fileData.size() - Collections.frequency(fileData, null);
+      totalFileCount = fileToFileData.size();
    }
 
    public void generate()
@@ -26,9 +26,12 @@ public final class FileParser
    private boolean openingBraceForClassFound;
    private int currentBraceBalance;
 
-   public boolean parseCurrentLine(String line)
+   public void setSource(char[] source) { lineParser.setSource(source); }
+   public boolean hasMoreLines() { return lineParser.hasMoreLines(); }
+
+   public boolean parseNextLine()
    {
-      if (!lineParser.parse(line)) {
+      if (!lineParser.parseNextLine()) {
          return false;
       }
 
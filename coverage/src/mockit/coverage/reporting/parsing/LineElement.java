@@ -14,6 +14,16 @@ public final class LineElement implements Iterable<LineElement>
 
    enum ElementType { CODE, COMMENT, SEPARATOR }
 
+   // Single-character segments (spaces, dots, parentheses, braces) are very common, so they share the same strings.
+   private static final String[] SINGLE_CHAR_TEXTS = new String[128];
+
+   static
+   {
+      for (char c = 0; c < SINGLE_CHAR_TEXTS.length; c++) {
+         SINGLE_CHAR_TEXTS[c] = c == '<' ? "&lt;" : String.valueOf(c);
+      }
+   }
+
    private final ElementType type;
    private final String text;
    private String openingTag;
@@ -23,10 +33,50 @@ public final class LineElement implements Iterable<LineElement>
    private boolean underConditionalStatement;
    private int parenthesesBalance;
 
-   LineElement(ElementType type, String text)
+   LineElement(ElementType type, char[] source, int start, int end)
    {
       this.type = type;
-      this.text = text.replaceAll("<", "&lt;");
+      text = getText(source, start, end);
+   }
+
+   private static String getText(char[] source, int start, int end)
+   {
+      int length = end - start;
+
+      if (length == 0) {
+         return "";
+      }
+
+      if (length == 1 && source[start] < SINGLE_CHAR_TEXTS.length) {
+         return SINGLE_CHAR_TEXTS[source[start]];
+      }
+
+      int lessThanSigns = 0;
+
+      for (int i = start; i < end; i++) {
+         if (source[i] == '<') {
+            lessThanSigns++;
+         }
+      }
+
+      if (lessThanSigns == 0) {
+         return new String(source, start, length);
+      }
+
+      StringBuilder escapedText = new StringBuilder(length + 3 * lessThanSigns);
+
+      for (int i = start; i < end; i++) {
+         char c = source[i];
+
+         if (c == '<') {
+            escapedText.append("&lt;");
+         }
+         else {
+            escapedText.append(c);
+         }
+      }
+
+      return escapedText.toString();
    }
 
    public boolean isCode() { return type == ElementType.CODE; }
@@ -7,60 +7,76 @@ package mockit.coverage.reporting.parsing;
 import mockit.coverage.reporting.parsing.LineElement.*;
 
 /**
- * Parses a source line into one or more consecutive segments, identifying which ones contain Java code and which ones
- * contain only comments.
+ * Parses the lines of a source file into one or more consecutive segments each, identifying which ones contain Java
+ * code and which ones contain only comments.
  * Block comments initiated in a previous line are kept track of until the end of the block is reached.
+ * <p/>
+ * The whole file is held in a single character buffer, which is scanned only once, with line terminators found along
+ * the way; the only strings created are the texts of the segments.
  */
 public final class LineParser
 {
-   private static final String SEPARATORS = ".,;()";
+   private char[] source;
+   private int sourceLength;
+   private int nextLineStart;
 
    private int lineNum;
-   private String line;
    private LineElement initialElement;
    private boolean inComments;
+   private boolean blankLine;
 
    // Helper fields:
    private LineElement currentElement;
-   private int lineLength;
    private int startPos;
    private boolean inCodeElement;
    private int pos;
-   private int currChar;
+   private char currChar;
 
    public int getNumber() { return lineNum; }
 
    public boolean isInComments() { return inComments; }
 
-   public boolean isBlankLine()
+   public boolean isBlankLine() { return blankLine; }
+
+   public LineElement getInitialElement() { return initialElement; }
+
+   void setSource(char[] source)
    {
-      int n = line.length();
+      this.source = source;
+      sourceLength = source.length;
+      nextLineStart = 0;
+      lineNum = 0;
+      inComments = false;
+   }
 
-      for (int i = 0; i < n; i++) {
-         char c = line.charAt(i);
+   boolean hasMoreLines() { return nextLineStart < sourceLength; }
 
-         if (!Character.isWhitespace(c)) {
-            return false;
-         }
+   private boolean isLineEnd(int position)
+   {
+      if (position >= sourceLength) {
+         return true;
       }
 
-      return true;
+      char c = source[position];
+      return c == '\n' || c == '\r';
    }
 
-   public LineElement getInitialElement() { return initialElement; }
-
-   boolean parse(String line)
+   /**
+    * Parses the next line, as delimited by a line feed, a carriage return, or both.
+    *
+    * @return whether the line contains any code, outside of comments
+    */
+   boolean parseNextLine()
    {
       lineNum++;
       initialElement = null;
       currentElement = null;
-      this.line = line;
-      lineLength = line.length();
-      startPos = inComments ? 0 : -1;
+      startPos = inComments ? nextLineStart : -1;
       inCodeElement = false;
+      blankLine = true;
 
-      for (pos = 0; pos < lineLength; pos++) {
-         currChar = line.codePointAt(pos);
+      for (pos = nextLineStart; !isLineEnd(pos); pos++) {
+         currChar = source[pos];
 
          if (parseComment()) {
             break;
@@ -73,11 +89,23 @@ public final class LineParser
          addFinalElement();
       }
       else if (initialElement == null) {
-         initialElement = new LineElement(ElementType.SEPARATOR, "");
+         initialElement = new LineElement(ElementType.SEPARATOR, source, pos, pos);
+         skipLineTerminator();
          return false;
       }
 
-      return !inComments && !isBlankLine();
+      skipLineTerminator();
+      return !inComments && !blankLine;
+   }
+
+   private void skipLineTerminator()
+   {
+      nextLineStart = pos;
+
+      if (pos < sourceLength) {
+         boolean crlf = source[pos] == '\r' && pos + 1 < sourceLength && source[pos + 1] == '\n';
+         nextLineStart += crlf ? 2 : 1;
+      }
    }
 
    private void parseSeparatorsAndCode()
@@ -104,7 +132,16 @@ public final class LineParser
 
    private boolean isSeparator()
    {
-      return Character.isWhitespace(currChar) || SEPARATORS.indexOf(currChar) >= 0;
+      switch (currChar) {
+         case '.': case ',': case ';': case '(': case ')': blankLine = false; return true;
+      }
+
+      if (Character.isWhitespace(currChar)) {
+         return true;
+      }
+
+      blankLine = false;
+      return false;
    }
 
    private void startNewElementIfNotYetStarted()
@@ -120,10 +157,11 @@ public final class LineParser
          return true;
       }
 
-      while (currChar == '/' && pos < lineLength - 1) {
-         int c2 = line.codePointAt(pos + 1);
+      while (currChar == '/' && !isLineEnd(pos + 1)) {
+         char c2 = source[pos + 1];
 
          if (c2 == '/') {
+            blankLine = false;
             endCodeElementIfPending();
             startNewElementIfNotYetStarted();
             inComments = true;
@@ -133,6 +171,7 @@ public final class LineParser
             return true;
          }
          else if (c2 == '*') {
+            blankLine = false;
             endCodeElementIfPending();
             startNewElementIfNotYetStarted();
             inComments = true;
@@ -161,10 +200,11 @@ public final class LineParser
 
    private boolean parseUntilEndOfLineOrEndOfComment()
    {
-      while (pos < lineLength) {
-         currChar = line.codePointAt(pos);
+      while (!isLineEnd(pos)) {
+         char c = source[pos];
 
-         if (currChar == '*' && pos < lineLength - 1 && line.codePointAt(pos + 1) == '/') {
+         if (c == '*' && !isLineEnd(pos + 1) && source[pos + 1] == '/') {
+            blankLine = false;
             pos += 2;
             addElement();
             startPos = -1;
@@ -172,31 +212,31 @@ public final class LineParser
             break;
          }
 
+         if (blankLine && !Character.isWhitespace(c)) {
+            blankLine = false;
+         }
+
          pos++;
       }
 
-      if (pos < lineLength) {
-         currChar = line.codePointAt(pos);
-         return false;
-      }
-      else {
+      if (isLineEnd(pos)) {
          return true;
       }
+
+      currChar = source[pos];
+      return false;
    }
 
    private void addFinalElement()
    {
-      String text = line.substring(startPos);
-      addElement(text);
-   }
+      while (!isLineEnd(pos)) {
+         pos++;
+      }
 
-   private void addElement()
-   {
-      String text = pos > 0 ? line.substring(startPos, pos) : line.substring(startPos);
-      addElement(text);
+      addElement();
    }
 
-   private void addElement(String text)
+   private void addElement()
    {
       ElementType type;
 
@@ -210,7 +250,7 @@ public final class LineParser
          type = ElementType.SEPARATOR;
       }
 
-      LineElement newElement = new LineElement(type, text);
+      LineElement newElement = new LineElement(type, source, startPos, pos);
 
       if (initialElement == null) {
          initialElement = newElement;
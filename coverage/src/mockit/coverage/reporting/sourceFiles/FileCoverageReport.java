@@ -85,10 +85,10 @@ public final class FileCoverageReport
    private void writeFormattedSourceLines() throws IOException
    {
       LineParser lineParser = fileParser.lineParser;
-      String line;
+      fileParser.setSource(inputFile.readAllChars());
 
-      while ((line = inputFile.nextLine()) != null) {
-         boolean lineWithCodeElements = fileParser.parseCurrentLine(line);
+      while (fileParser.hasMoreLines()) {
+         boolean lineWithCodeElements = fileParser.parseNextLine();
 
          if (lineWithCodeElements) {
             if (dataCoverage != null) {
@@ -5,7 +5,6 @@
 package mockit.coverage.reporting.sourceFiles;
 
 import java.io.*;
-import java.util.*;
 
 public final class InputFile
 {
@@ -13,61 +12,43 @@ public final class InputFile
    private final File sourceFile;
    private final BufferedReader input;
 
-   public InputFile(List<File> sourceDirs, String filePath) throws FileNotFoundException
+   public InputFile(SourceFileIndex sourceFiles, String filePath) throws FileNotFoundException
    {
       this.filePath = filePath;
-      sourceFile = findSourceFile(sourceDirs, filePath);
+      sourceFile = sourceFiles.findFile(filePath);
       input = sourceFile == null ? null : new BufferedReader(new FileReader(sourceFile));
    }
 
-   private File findSourceFile(List<File> sourceDirs, String filePath)
-   {
-      int p = filePath.indexOf('/');
-      String topLevelPackage = p < 0 ? "" : filePath.substring(0, p);
-
-      for (File sourceDir : sourceDirs) {
-         File file = getSourceFile(sourceDir, topLevelPackage, filePath);
-
-         if (file != null) {
-            return file;
-         }
-      }
+   public boolean wasFileFound() { return sourceFile != null; }
+   public File getFile() { return sourceFile; }
+   String getSourceFileName() { return sourceFile.getName(); }
 
-      return null;
+   String getSourceFilePath()
+   {
+      String path = sourceFile.getPath();
+      return path.startsWith("..") ? path.substring(3) : path;
    }
 
-   private File getSourceFile(File sourceDir, String topLevelPackage, String filePath)
+   char[] readAllChars() throws IOException
    {
-      File file = new File(sourceDir, filePath);
+      char[] buffer = new char[(int) sourceFile.length() + 1];
+      int totalRead = 0;
+      int charsRead;
 
-      if (file.exists()) {
-         return file;
-      }
+      while ((charsRead = input.read(buffer, totalRead, buffer.length - totalRead)) >= 0) {
+         totalRead += charsRead;
 
-      File[] subDirs = sourceDir.listFiles();
-
-      for (File subDir : subDirs) {
-         if (subDir.isDirectory() && !subDir.isHidden() && !subDir.getName().equals(topLevelPackage)) {
-            file = getSourceFile(subDir, topLevelPackage, filePath);
-
-            if (file != null) {
-               return file;
-            }
+         if (totalRead == buffer.length) {
+            char[] largerBuffer = new char[2 * buffer.length];
+            System.arraycopy(buffer, 0, largerBuffer, 0, totalRead);
+            buffer = largerBuffer;
          }
       }
 
-      return null;
-   }
-
-   public boolean wasFileFound() { return sourceFile != null; }
-   String getSourceFileName() { return sourceFile.getName(); }
-
-   String getSourceFilePath()
-   {
-      String path = sourceFile.getPath();
-      return path.startsWith("..") ? path.substring(3) : path;
+      char[] allChars = new char[totalRead];
+      System.arraycopy(buffer, 0, allChars, 0, totalRead);
+      return allChars;
    }
 
-   String nextLine() throws IOException { return input.readLine(); }
-   void close() throws IOException { input.close(); }
+   public void close() throws IOException { input.close(); }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting.sourceFiles;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * An index of all files under the source dirs of a coverage report, built with a single scan of each dir.
+ * <p/>
+ * Source files are looked up by their package-relative path (such as "org/acme/Foo.java"), first directly under each
+ * source dir, and then anywhere below them, for layouts where the actual source roots are in sub-directories of the
+ * specified dirs (such as "module/src/main/java").
+ * For the latter case, all file paths are also kept in a trie indexed by their path segments in reverse order, so that
+ * the first file ending with a given path is found without searching the file system again.
+ */
+public final class SourceFileIndex
+{
+   private static final Pattern PATH_SEPARATOR = Pattern.compile("/");
+
+   private static final class SuffixNode
+   {
+      final Map<String, SuffixNode> children = new HashMap<String, SuffixNode>();
+      File firstFile;
+   }
+
+   private final Map<String, File> filesByRelativePath;
+   private final Map<String, List<String>> fileNamesByPackageDir;
+   private final SuffixNode pathSuffixes;
+
+   public SourceFileIndex(List<File> sourceDirs)
+   {
+      filesByRelativePath = new HashMap<String, File>();
+      fileNamesByPackageDir = new HashMap<String, List<String>>();
+      pathSuffixes = new SuffixNode();
+
+      for (File sourceDir : sourceDirs) {
+         addFilesInDir(sourceDir, "");
+      }
+   }
+
+   private void addFilesInDir(File dir, String packageDir)
+   {
+      File[] files = dir.listFiles();
+
+      if (files == null) {
+         return;
+      }
+
+      for (File file : files) {
+         String relativePath = packageDir.length() == 0 ? file.getName() : packageDir + '/' + file.getName();
+
+         if (!file.isDirectory()) {
+            addFile(file, packageDir, relativePath);
+         }
+         else if (!file.isHidden()) {
+            addFilesInDir(file, relativePath);
+         }
+      }
+   }
+
+   private void addFile(File file, String packageDir, String relativePath)
+   {
+      if (!filesByRelativePath.containsKey(relativePath)) {
+         filesByRelativePath.put(relativePath, file);
+      }
+
+      List<String> fileNames = fileNamesByPackageDir.get(packageDir);
+
+      if (fileNames == null) {
+         fileNames = new ArrayList<String>();
+         fileNamesByPackageDir.put(packageDir, fileNames);
+      }
+
+      fileNames.add(file.getName());
+
+      String[] pathSegments = PATH_SEPARATOR.split(relativePath);
+      SuffixNode node = pathSuffixes;
+
+      for (int i = pathSegments.length - 1; i >= 0; i--) {
+         SuffixNode child = node.children.get(pathSegments[i]);
+
+         if (child == null) {
+            child = new SuffixNode();
+            child.firstFile = file;
+            node.children.put(pathSegments[i], child);
+         }
+
+         node = child;
+      }
+   }
+
+   /**
+    * Finds the source file for the given package-relative path, giving preference to a file directly under a source
+    * dir, in the order of the source dirs.
+    *
+    * @return the file found, or {@code null} if none
+    */
+   public File findFile(String filePath)
+   {
+      File file = filesByRelativePath.get(filePath);
+
+      if (file != null) {
+         return file;
+      }
+
+      String[] pathSegments = PATH_SEPARATOR.split(filePath);
+      SuffixNode node = pathSuffixes;
+
+      for (int i = pathSegments.length - 1; i >= 0 && node != null; i--) {
+         node = node.children.get(pathSegments[i]);
+      }
+
+      return node == null ? null : node.firstFile;
+   }
+
+   /**
+    * Returns the names of the files directly inside the given package dir (such as "org/acme") of any source dir, in
+    * the order of the source dirs, or an empty list if there are none.
+    */
+   public List<String> getFileNamesInPackage(String packageDir)
+   {
+      List<String> fileNames = fileNamesByPackageDir.get(packageDir);
+      return fileNames == null ? Collections.<String>emptyList() : fileNames;
+   }
+}
@@ -99,6 +99,9 @@ public final class CoverageControl extends StandardMBean implements CoverageCont
    public String getMetrics() { return getProperty("metrics", "all"); }
    public void setMetrics(String metrics) { modifyConfigurationProperty("metrics", metrics); }
 
+   public int getClassesExamined() { return CodeCoverage.getClassesExamined(); }
+   public int getClassesSelected() { return CodeCoverage.getClassesSelected(); }
+
    private String getProperty(String property) { return System.getProperty(propertyName(property), ""); }
    private String getProperty(String property, String defaultValue)
    { return System.getProperty(propertyName(property), defaultValue); }
@@ -122,6 +125,11 @@ public final class CoverageControl extends StandardMBean implements CoverageCont
       CodeCoverage.generateOutput(resetState);
    }
 
+   public String writeSnapshot(boolean resetState)
+   {
+      return CodeCoverage.writeSnapshot(resetState).getPath();
+   }
+
    public void load() throws MBeanException
    {
       Preferences preferences = Preferences.userNodeForPackage(CoverageControl.class);
@@ -146,9 +154,11 @@ public final class CoverageControl extends StandardMBean implements CoverageCont
       Preferences preferences = Preferences.userNodeForPackage(CoverageControl.class);
 
       for (MBeanAttributeInfo info : getMBeanInfo().getAttributes()) {
-         String property = info.getName();
-         String value = getProperty(property);
-         preferences.put(property, value);
+         if (info.isWritable()) {
+            String property = info.getName();
+            String value = getProperty(property);
+            preferences.put(property, value);
+         }
       }
 
       try {
@@ -36,8 +36,23 @@ public interface CoverageControlMBean
    String getMetrics();
    void setMetrics(String metrics);
 
+   @Description("Number of loaded classes examined for coverage since the current configuration took effect")
+   int getClassesExamined();
+
+   @Description("Number of loaded classes selected for coverage since the current configuration took effect")
+   int getClassesSelected();
+
    @Description("Generates the desired output with the coverage information gathered so far")
    void generateOutput(
       @Description("Indicates whether coverage data gathered so far should be discarded after generating the output")
       boolean resetState);
+
+   @Description(
+      "Writes the coverage information gathered so far to a new data file, without generating a report; returns the " +
+      "path of the file")
+   String writeSnapshot(
+      @Description(
+         "Indicates whether the execution counts written should be discarded, so that the next snapshot only has " +
+         "new executions")
+      boolean resetState);
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+
+public final class CoverageCheckTest
+{
+   static final StackTraceElement TEST = new StackTraceElement("pkg.SampleTest", "test", "SampleTest.java", 15);
+
+   File resultFile;
+
+   @BeforeClass
+   public static void addCoverageDataForSourceFilesInTwoPackages()
+   {
+      // 4 of 5 line segments executed in package "coverageCheck.a", and 1 of 4 in "coverageCheck.b".
+      addFileData("coverageCheck/a/One.java", 2, 1);
+      addFileData("coverageCheck/a/Two.java", 3, 3);
+      addFileData("coverageCheck/b/Three.java", 4, 1);
+   }
+
+   private static void addFileData(String sourceFile, int lineCount, int linesExecuted)
+   {
+      FileCoverageData fileData = CoverageData.instance().addFile(sourceFile);
+
+      for (int line = 1; line <= lineCount; line++) {
+         LineCoverageData lineData = fileData.addLine(line);
+
+         if (line <= linesExecuted) {
+            lineData.registerExecution(new CallPoint(TEST));
+         }
+      }
+   }
+
+   @Before
+   public void createResultFile() throws IOException
+   {
+      resultFile = File.createTempFile("coverage.check", ".txt");
+   }
+
+   @After
+   public void deleteResultFile()
+   {
+      resultFile.delete();
+   }
+
+   List<String[]> verifyThresholds(String configuration)
+   {
+      System.setProperty("jmockit-coverage-check", configuration);
+
+      try {
+         new CoverageCheck().verifyThresholds(resultFile);
+      }
+      finally {
+         System.clearProperty("jmockit-coverage-check");
+      }
+
+      return readResults();
+   }
+
+   private List<String[]> readResults()
+   {
+      List<String[]> results = new ArrayList<String[]>();
+
+      try {
+         BufferedReader input = new BufferedReader(new FileReader(resultFile));
+
+         try {
+            for (String line = input.readLine(); line != null; line = input.readLine()) {
+               if (!line.startsWith("#")) {
+                  results.add(line.split("\t"));
+               }
+            }
+         }
+         finally {
+            input.close();
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException(e);
+      }
+
+      return results;
+   }
+
+   // Computes the percentage of a threshold scope as it was computed for each threshold before being done in a single
+   // pass over the coverage data.
+   static int computePercentageOneThresholdAtATime(String scope, Metrics metric)
+   {
+      CoverageData coverageData = CoverageData.instance();
+
+      if ("total".equals(scope)) {
+         return coverageData.getPercentage(metric, null);
+      }
+
+      if ("perFile".equals(scope)) {
+         int percentage = coverageData.getSmallestPerFilePercentage(metric);
+         return percentage == Integer.MAX_VALUE ? -1 : percentage;
+      }
+
+      return coverageData.getPercentage(metric, scope.replace('.', '/'));
+   }
+
+   static void assertSameResultsAsOneThresholdAtATime(List<String[]> results)
+   {
+      for (String[] result : results) {
+         String scope = result[0];
+         Metrics metric = metricNamed(result[1]);
+         int percentage = Integer.parseInt(result[2]);
+
+         assertEquals(scope + ' ' + metric, computePercentageOneThresholdAtATime(scope, metric), percentage);
+      }
+   }
+
+   static Metrics metricNamed(String name)
+   {
+      for (Metrics metric : Metrics.values()) {
+         if (metric.toString().equals(name)) {
+            return metric;
+         }
+      }
+
+      throw new IllegalArgumentException(name);
+   }
+
+   static String[] findResult(List<String[]> results, String scope, Metrics metric)
+   {
+      for (String[] result : results) {
+         if (result[0].equals(scope) && result[1].equals(metric.toString())) {
+            return result;
+         }
+      }
+
+      fail("No result for " + scope + ' ' + metric);
+      return null;
+   }
+
+   @Test
+   public void computeSamePercentagesAsOneThresholdAtATime()
+   {
+      List<String[]> results = verifyThresholds("0;coverageCheck.a:0,0,0;coverageCheck:0;perFile:0;coverageCheck.b:0");
+
+      assertEquals(5 * Metrics.amountActive(), results.size());
+      assertSameResultsAsOneThresholdAtATime(results);
+
+      assertArrayEquals(
+         new String[] {"coverageCheck.a", "Line", "80", "0", "passed"},
+         findResult(results, "coverageCheck.a", Metrics.LineCoverage));
+      assertArrayEquals(
+         new String[] {"coverageCheck.b", "Line", "25", "0", "passed"},
+         findResult(results, "coverageCheck.b", Metrics.LineCoverage));
+      assertEquals("56", findResult(results, "coverageCheck", Metrics.LineCoverage)[2]);
+   }
+
+   @Test
+   public void failThresholdsWithPercentagesBelowTheirMinimums()
+   {
+      File indicatorFile = new File("coverage.check.failed");
+      boolean indicatorFileExisted = indicatorFile.exists();
+
+      boolean thresholdsFailed = false;
+
+      try {
+         verifyThresholds("coverageCheck.a:80;coverageCheck.b:26");
+      }
+      catch (AssertionError ignore) {
+         thresholdsFailed = true;
+         assertTrue(indicatorFile.exists());
+      }
+      finally {
+         if (!indicatorFileExisted) {
+            indicatorFile.delete();
+         }
+      }
+
+      assertTrue(thresholdsFailed);
+
+      List<String[]> results = readResults();
+      assertSameResultsAsOneThresholdAtATime(results);
+      assertEquals("passed", findResult(results, "coverageCheck.a", Metrics.LineCoverage)[4]);
+      assertEquals("failed", findResult(results, "coverageCheck.b", Metrics.LineCoverage)[4]);
+   }
+}
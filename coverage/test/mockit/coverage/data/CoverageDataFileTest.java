@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import mockit.coverage.*;
+import mockit.coverage.dataItems.*;
+import mockit.coverage.lines.*;
+import mockit.coverage.paths.*;
+import mockit.external.asm4.*;
+
+public final class CoverageDataFileTest
+{
+   static final String SOURCE_FILE = "pkg/Sample.java";
+   static final String OTHER_SOURCE_FILE = "pkg/Other.java";
+
+   final StackTraceElement test1 = new StackTraceElement("pkg.SampleTest", "test1", "SampleTest.java", 15);
+   final StackTraceElement test2 = new StackTraceElement("pkg.SampleTest", "test2", "SampleTest.java", 21);
+   File dataFile;
+
+   @Before
+   public void createDataFile() throws IOException
+   {
+      dataFile = File.createTempFile("coverage", ".ser");
+   }
+
+   @After
+   public void deleteDataFile()
+   {
+      dataFile.delete();
+   }
+
+   @Test
+   public void writeAndReadLineCoverage() throws IOException
+   {
+      CoverageData data = new CoverageData();
+      data.setWithCallPoints(true);
+      addLines(data.addFile(SOURCE_FILE));
+      addLines(data.addFile(OTHER_SOURCE_FILE));
+
+      data.writeDataToFile(dataFile);
+
+      CoverageData dataRead = CoverageData.readDataFromFile(dataFile);
+      assertTrue(dataRead.isWithCallPoints());
+      assertLines(dataRead.getFileData(SOURCE_FILE));
+      assertLines(dataRead.getFileData(OTHER_SOURCE_FILE));
+   }
+
+   private void addLines(FileCoverageData fileData)
+   {
+      LineCoverageData line10 = fileData.addLine(10);
+      line10.registerExecution(new CallPoint(test1));
+      line10.registerExecution(new CallPoint(test1));
+      line10.registerExecution(new CallPoint(test2));
+
+      LineCoverageData line11 = fileData.addLine(11);
+      BranchCoverageData branch11 = line11.getBranchData(line11.addBranch(new Label(), new Label()));
+      branch11.setHasJumpTarget();
+
+      fileData.addLine(12).markAsUnreachable();
+
+      LineCoverageData line13 = fileData.addLine(13);
+      line13.getBranchData(line13.addBranch(new Label(), new Label())).setHasNoJumpTarget();
+
+      ExecutionCounters counters = fileData.lineCoverageInfo.createExecutionCounters(SOURCE_FILE);
+      int line11Slot = counters.addSlot(11, line11);
+      int jumpSlot = counters.addJumpSlot(11, branch11);
+      counters.allocate();
+      counters.registerExecution(line11Slot);
+      counters.registerExecution(jumpSlot);
+   }
+
+   private void assertLines(FileCoverageData fileData)
+   {
+      Map<Integer, LineCoverageData> lineToLineData = fileData.getLineToLineData();
+      assertEquals(Arrays.asList(10, 11, 12, 13), new ArrayList<Integer>(lineToLineData.keySet()));
+
+      LineCoverageData line10 = lineToLineData.get(10);
+      assertEquals(3, line10.getExecutionCount());
+      CallPointCounts callPoints = line10.getCallPoints();
+      assertEquals(2, callPoints.size());
+      assertEquals(test1, callPoints.getCallPoint(0).getStackTraceElement());
+      assertEquals(2, callPoints.getCount(0));
+      assertEquals(test2, callPoints.getCallPoint(1).getStackTraceElement());
+      assertEquals(1, callPoints.getCount(1));
+
+      LineCoverageData line11 = lineToLineData.get(11);
+      assertEquals(1, line11.getExecutionCount());
+      assertEquals(2, line11.getNumberOfSegments());
+      assertEquals(2, line11.getNumberOfCoveredSegments());
+      assertEquals(1, line11.getBranchData(0).getExecutionCount());
+      assertFalse(line11.containsCallPoints());
+
+      LineCoverageData line12 = lineToLineData.get(12);
+      assertTrue(line12.isUnreachable());
+      assertEquals(1, line12.getNumberOfCoveredSegments());
+
+      LineCoverageData line13 = lineToLineData.get(13);
+      assertEquals(0, line13.getExecutionCount());
+      assertEquals(2, line13.getNumberOfSegments());
+      assertEquals(0, line13.getNumberOfCoveredSegments());
+      assertFalse(line13.getBranchData(0).isCovered());
+   }
+
+   @Test
+   public void readFileSectionsInAnyOrderFromOpenedDataFile() throws IOException
+   {
+      CoverageData data = new CoverageData();
+      data.setWithCallPoints(true);
+      addLines(data.addFile(SOURCE_FILE));
+      addLines(data.addFile(OTHER_SOURCE_FILE));
+      data.writeDataToFile(dataFile);
+
+      CoverageData dataOpened = CoverageData.openDataFile(dataFile, false);
+      Map<String, FileCoverageData> fileToFileData = dataOpened.getFileToFileDataMap();
+
+      // The call points in the second section refer to strings first written in the first one.
+      assertLines(fileToFileData.get(OTHER_SOURCE_FILE));
+      assertLines(fileToFileData.get(SOURCE_FILE));
+   }
+
+   @Test
+   public void writeAndReadPathCoverage() throws IOException
+   {
+      CoverageData data = new CoverageData();
+      FileCoverageData fileData = data.addFile(SOURCE_FILE);
+      MethodCoverageData methodData = addMethodWithTwoPaths(fileData);
+
+      for (int node = 0; node < 5; node++) {
+         methodData.markNodeAsReached(node);
+      }
+
+      data.writeDataToFile(dataFile);
+
+      FileCoverageData fileDataRead = CoverageData.readDataFromFile(dataFile).getFileData(SOURCE_FILE);
+      assertMethodWithTwoPaths(fileDataRead);
+   }
+
+   private static MethodCoverageData addMethodWithTwoPaths(FileCoverageData fileData)
+   {
+      NodeBuilder nodeBuilder = new NodeBuilder();
+      Label jumpTarget = new Label();
+      nodeBuilder.handleEntry(10);
+      nodeBuilder.handleJump(jumpTarget, 11, true);
+      nodeBuilder.handleRegularInstruction(12, Opcodes.ICONST_0);
+      nodeBuilder.handleJumpTarget(jumpTarget, 13);
+      nodeBuilder.handleExit(13);
+
+      MethodCoverageData methodData = new MethodCoverageData("doSomething");
+      methodData.buildPaths(13, nodeBuilder);
+      fileData.addMethod(methodData);
+      return methodData;
+   }
+
+   private static void assertMethodWithTwoPaths(FileCoverageData fileData)
+   {
+      Collection<MethodCoverageData> methods = fileData.getMethods();
+      assertEquals(1, methods.size());
+
+      MethodCoverageData methodData = methods.iterator().next();
+      assertEquals("doSomething", methodData.methodName);
+      assertEquals(10, methodData.getFirstLineInBody());
+      assertEquals(13, methodData.getLastLineInBody());
+      assertEquals(2, methodData.getTotalPaths());
+      assertEquals(1, methodData.getCoveredPaths());
+      assertEquals(1, methodData.getExecutionCount());
+
+      List<Path> paths = methodData.getPaths();
+      assertEquals(4, paths.get(0).getNodes().size());
+      assertEquals(0, paths.get(0).getExecutionCount());
+      assertEquals(5, paths.get(1).getNodes().size());
+      assertEquals(1, paths.get(1).getExecutionCount());
+   }
+
+   @Test
+   public void writeAndReadDataCoverage() throws IOException
+   {
+      CoverageData data = new CoverageData();
+      PerFileDataCoverage dataCoverage = data.addFile(SOURCE_FILE).dataCoverageInfo;
+      dataCoverage.addField("pkg.Sample", "count", true);
+      dataCoverage.addField("pkg.Sample", "unused", true);
+      dataCoverage.addField("pkg.Sample", "name", false);
+
+      dataCoverage.registerAssignmentToStaticField("pkg.Sample.count");
+      dataCoverage.registerReadOfStaticField("pkg.Sample.count");
+      dataCoverage.registerReadOfStaticField("pkg.Sample.count");
+      Object instance = new Object();
+      dataCoverage.registerAssignmentToInstanceField(instance, "pkg.Sample.name");
+      dataCoverage.registerReadOfInstanceField(instance, "pkg.Sample.name");
+
+      data.writeDataToFile(dataFile);
+
+      PerFileDataCoverage dataCoverageRead =
+         CoverageData.readDataFromFile(dataFile).getFileData(SOURCE_FILE).dataCoverageInfo;
+      List<String> fields = Arrays.asList("pkg.Sample.count", "pkg.Sample.unused", "pkg.Sample.name");
+      assertEquals(fields, dataCoverageRead.allFields);
+      assertEquals(3, dataCoverageRead.getTotalItems());
+      assertEquals(2, dataCoverageRead.getCoveredItems());
+      assertTrue(dataCoverageRead.isCovered("pkg.Sample.count"));
+      assertFalse(dataCoverageRead.isCovered("pkg.Sample.unused"));
+      assertTrue(dataCoverageRead.isCovered("pkg.Sample.name"));
+
+      StaticFieldData countData = dataCoverageRead.getStaticFieldData("pkg.Sample.count");
+      assertEquals(1, countData.getWriteCount());
+      assertEquals(2, countData.getReadCount());
+   }
+
+   @Test
+   public void writeAndReadNegativeValuesAsSignedIntegers() throws IOException
+   {
+      int[] values = {0, -1, 1, -64, 63, -65, 64, Integer.MIN_VALUE, Integer.MAX_VALUE};
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CoverageDataOutput output = new CoverageDataOutput(bytes);
+      int sizeBeforeValue = bytes.size();
+
+      output.writeSignedInt(-1);
+      assertEquals(1, bytes.size() - sizeBeforeValue);
+
+      for (int value : values) {
+         output.writeSignedInt(value);
+      }
+
+      output.finish();
+
+      CoverageDataInput input = new CoverageDataInput(new ByteArrayInputStream(bytes.toByteArray()));
+      assertEquals(-1, input.readSignedInt());
+
+      for (int value : values) {
+         assertEquals(value, input.readSignedInt());
+      }
+   }
+
+   @Test
+   public void writeAndReadStringsThroughIndexesInStringTable() throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CoverageDataOutput output = new CoverageDataOutput(bytes);
+      output.writeString("first");
+      output.writeString("second");
+
+      int sizeBeforeRepeatedString = bytes.size();
+      output.writeString("first");
+      assertEquals(1, bytes.size() - sizeBeforeRepeatedString);
+
+      output.writeString(null);
+      output.writeString("second");
+      output.writeInt(1000);
+      output.finish();
+
+      CoverageDataInput input = new CoverageDataInput(new ByteArrayInputStream(bytes.toByteArray()));
+      assertEquals("first", input.readString());
+      assertEquals("second", input.readString());
+      assertEquals("first", input.readString());
+      assertNull(input.readString());
+      assertEquals("second", input.readString());
+      assertEquals(1000, input.readInt());
+   }
+
+   @Test(expected = IOException.class)
+   public void rejectStringIndexNotInStringTable() throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CoverageDataOutput output = new CoverageDataOutput(bytes);
+      output.writeInt(2 << 1);
+      output.finish();
+
+      new CoverageDataInput(new ByteArrayInputStream(bytes.toByteArray())).readString();
+   }
+
+   @Test
+   public void readDataFileSerializedByOlderVersion() throws IOException
+   {
+      copyResourceToDataFile("serializedCoverageData.ser");
+
+      CoverageData data = CoverageData.readDataFromFile(dataFile);
+      assertSerializedData(data);
+
+      data.writeDataToFile(dataFile);
+      assertSerializedData(CoverageData.readDataFromFile(dataFile));
+   }
+
+   private void copyResourceToDataFile(String resourceName) throws IOException
+   {
+      InputStream input = CoverageDataFileTest.class.getResourceAsStream(resourceName);
+      assertNotNull("Resource not found: " + resourceName, input);
+      OutputStream output = new FileOutputStream(dataFile);
+
+      try {
+         byte[] buffer = new byte[4096];
+         int bytesRead;
+
+         while ((bytesRead = input.read(buffer)) > 0) {
+            output.write(buffer, 0, bytesRead);
+         }
+      }
+      finally {
+         output.close();
+         input.close();
+      }
+   }
+
+   private void assertSerializedData(CoverageData data)
+   {
+      assertTrue(data.isWithCallPoints());
+      FileCoverageData fileData = data.getFileData(SOURCE_FILE);
+      Map<Integer, LineCoverageData> lineToLineData = fileData.getLineToLineData();
+      assertEquals(Arrays.asList(10, 11, 12, 13), new ArrayList<Integer>(lineToLineData.keySet()));
+
+      // Older versions kept one call point per execution.
+      LineCoverageData line10 = lineToLineData.get(10);
+      assertEquals(3, line10.getExecutionCount());
+      CallPointCounts callPoints = line10.getCallPoints();
+      assertEquals(2, callPoints.size());
+      assertEquals(test1, callPoints.getCallPoint(0).getStackTraceElement());
+      assertEquals(2, callPoints.getCount(0));
+      assertEquals(test2, callPoints.getCallPoint(1).getStackTraceElement());
+      assertEquals(1, callPoints.getCount(1));
+
+      LineCoverageData line11 = lineToLineData.get(11);
+      assertEquals(2, line11.getNumberOfSegments());
+      assertEquals(2, line11.getNumberOfCoveredSegments());
+      assertTrue(lineToLineData.get(12).isUnreachable());
+      assertEquals(0, lineToLineData.get(13).getExecutionCount());
+
+      assertMethodWithTwoPaths(fileData);
+
+      PerFileDataCoverage dataCoverage = fileData.dataCoverageInfo;
+      assertEquals(2, dataCoverage.getTotalItems());
+      assertEquals(1, dataCoverage.getCoveredItems());
+      assertTrue(dataCoverage.isCovered("pkg.Sample.count"));
+   }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.dataItems;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public final class InstanceFieldDataTest
+{
+   final InstanceFieldData fieldData = new InstanceFieldData();
+
+   // Instances with distinct identity hash codes, since two objects may happen to share one.
+   static List<Object> createInstancesWithDistinctIds(int count)
+   {
+      Set<Integer> ids = new HashSet<Integer>(2 * count);
+      List<Object> instances = new ArrayList<Object>(count);
+
+      while (instances.size() < count) {
+         Object instance = new Object();
+
+         if (ids.add(System.identityHashCode(instance))) {
+            instances.add(instance);
+         }
+      }
+
+      return instances;
+   }
+
+   @Test
+   public void fieldCoveredWhenAllAssignmentsAreReadUpToTheLimit()
+   {
+      List<Object> instances = createInstancesWithDistinctIds(InstanceFieldData.MAX_UNREAD_INSTANCES_PER_TEST);
+
+      for (Object instance : instances) {
+         fieldData.registerAssignment(instance);
+      }
+
+      for (Object instance : instances) {
+         fieldData.registerRead(instance);
+      }
+
+      assertTrue(fieldData.isCovered());
+      assertTrue(fieldData.getOwnerInstancesWithUnreadAssignments().isEmpty());
+      assertEquals(instances.size(), fieldData.getWriteCount());
+      assertEquals(instances.size(), fieldData.getReadCount());
+   }
+
+   @Test
+   public void fieldNotCoveredByTestWithMoreUnreadInstancesThanTheLimit()
+   {
+      List<Object> instances = createInstancesWithDistinctIds(InstanceFieldData.MAX_UNREAD_INSTANCES_PER_TEST + 1);
+
+      for (Object instance : instances) {
+         fieldData.registerAssignment(instance);
+      }
+
+      for (Object instance : instances) {
+         fieldData.registerRead(instance);
+      }
+
+      assertFalse(fieldData.isCovered());
+   }
+
+   @Test
+   public void instanceAlreadyTrackedIsNotDroppedAtTheLimit()
+   {
+      List<Object> instances = createInstancesWithDistinctIds(InstanceFieldData.MAX_UNREAD_INSTANCES_PER_TEST);
+
+      for (Object instance : instances) {
+         fieldData.registerAssignment(instance);
+      }
+
+      fieldData.registerAssignment(instances.get(0));
+
+      for (Object instance : instances) {
+         fieldData.registerRead(instance);
+      }
+
+      assertTrue(fieldData.isCovered());
+   }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.dataItems;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public final class IntHashSetTest
+{
+   final IntHashSet set = new IntHashSet();
+   final Set<Integer> expected = new HashSet<Integer>();
+
+   void add(int value)
+   {
+      set.add(value);
+      expected.add(value);
+   }
+
+   void remove(int value)
+   {
+      set.remove(value);
+      expected.remove(value);
+   }
+
+   void assertSameValuesAsExpected(int... valuesToLookUp)
+   {
+      assertEquals(expected.size(), set.size());
+      assertEquals(expected.isEmpty(), set.isEmpty());
+      assertEquals(new TreeSet<Integer>(expected), new TreeSet<Integer>(set.toList()));
+
+      for (int value : valuesToLookUp) {
+         assertEquals(String.valueOf(value), expected.contains(value), set.contains(value));
+      }
+   }
+
+   // Same as IntHashSet#indexFor, for the initial table of 16 positions.
+   static int indexInInitialTable(int value)
+   {
+      int hash = value * 0x9E3779B9;
+      return (hash ^ hash >>> 16) & 15;
+   }
+
+   static int[] valuesWithIndexInInitialTable(int index, int count)
+   {
+      int[] values = new int[count];
+
+      for (int value = 1, i = 0; i < count; value++) {
+         if (indexInInitialTable(value) == index) {
+            values[i++] = value;
+         }
+      }
+
+      return values;
+   }
+
+   @Test
+   public void addAndRemoveZeroApartFromOtherValues()
+   {
+      add(0);
+      assertSameValuesAsExpected(0, 1);
+
+      add(1);
+      add(0);
+      assertSameValuesAsExpected(0, 1);
+
+      remove(0);
+      assertSameValuesAsExpected(0, 1);
+
+      remove(0);
+      remove(1);
+      assertSameValuesAsExpected(0, 1);
+      assertTrue(set.isEmpty());
+   }
+
+   @Test
+   public void removeFirstValueOfRunWhichWrapsAroundEndOfTable()
+   {
+      int[] values = valuesWithIndexInInitialTable(15, 4);
+
+      for (int value : values) {
+         add(value);
+      }
+
+      assertSameValuesAsExpected(values);
+
+      remove(values[0]);
+      assertSameValuesAsExpected(values);
+
+      remove(values[2]);
+      assertSameValuesAsExpected(values);
+
+      add(values[0]);
+      assertSameValuesAsExpected(values);
+   }
+
+   @Test
+   public void removeValueFromRunWhichAlsoHoldsValuesFromNextIndexes()
+   {
+      int[] atIndex14 = valuesWithIndexInInitialTable(14, 3);
+      int[] atIndex15 = valuesWithIndexInInitialTable(15, 2);
+      int[] atIndex0 = valuesWithIndexInInitialTable(0, 2);
+      int[] allValues = {
+         atIndex14[0], atIndex14[1], atIndex14[2], atIndex15[0], atIndex15[1], atIndex0[0], atIndex0[1]};
+
+      // Occupies positions 14, 15, 0, 1, 2, 3 and 4, in this order.
+      for (int value : allValues) {
+         add(value);
+      }
+
+      assertSameValuesAsExpected(allValues);
+
+      remove(atIndex14[1]);
+      assertSameValuesAsExpected(allValues);
+
+      remove(atIndex15[0]);
+      assertSameValuesAsExpected(allValues);
+
+      remove(atIndex14[0]);
+      remove(atIndex0[0]);
+      assertSameValuesAsExpected(allValues);
+   }
+
+   @Test
+   public void removeValueNotInSet()
+   {
+      int[] values = valuesWithIndexInInitialTable(3, 3);
+      add(values[0]);
+      add(values[1]);
+
+      remove(values[2]);
+      remove(-1);
+
+      assertSameValuesAsExpected(values);
+   }
+
+   @Test
+   public void keepSameValuesAsJavaUtilSetThroughRandomOperations()
+   {
+      Random random = new Random(123);
+      int[] valuesToLookUp = new int[401];
+
+      for (int i = 0; i < valuesToLookUp.length; i++) {
+         valuesToLookUp[i] = i - 200;
+      }
+
+      for (int i = 0; i < 20000; i++) {
+         int value = random.nextInt(401) - 200;
+
+         if (random.nextInt(3) > 0) {
+            add(value);
+         }
+         else {
+            remove(value);
+         }
+
+         if (i % 500 == 0) {
+            assertSameValuesAsExpected(valuesToLookUp);
+         }
+      }
+
+      assertSameValuesAsExpected(valuesToLookUp);
+
+      set.clear();
+      expected.clear();
+      assertSameValuesAsExpected(valuesToLookUp);
+   }
+
+   @Test
+   public void growTableWhileKeepingAllValues()
+   {
+      int[] values = new int[5000];
+
+      for (int i = 0; i < values.length; i++) {
+         values[i] = i * 7919 - 1000000;
+         add(values[i]);
+      }
+
+      assertSameValuesAsExpected(values);
+
+      for (int i = 0; i < values.length; i += 2) {
+         remove(values[i]);
+      }
+
+      assertSameValuesAsExpected(values);
+   }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.lines;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.external.asm4.*;
+
+public final class ExecutionCountersTest
+{
+   static final String SOURCE_FILE = "pkg/Sampled.java";
+
+   FileCoverageData fileData;
+   LineCoverageData line1;
+   LineCoverageData line2;
+   BranchCoverageData branch2;
+   ExecutionCounters counters;
+   int line1Slot;
+   int line2Slot;
+   int jumpSlot;
+
+   void createCounters(int samplingLimit)
+   {
+      fileData = new CoverageData().addFile(SOURCE_FILE);
+      line1 = fileData.addLine(1);
+      line2 = fileData.addLine(2);
+      branch2 = line2.getBranchData(line2.addBranch(new Label(), new Label()));
+      branch2.setHasJumpTarget();
+
+      counters = fileData.lineCoverageInfo.createExecutionCounters(SOURCE_FILE);
+      line1Slot = counters.addSlot(1, line1);
+      line2Slot = counters.addSlot(2, line2);
+      jumpSlot = counters.addJumpSlot(2, branch2);
+      counters.allocate(samplingLimit);
+   }
+
+   // Executes the probe for the slot, as instrumented code does.
+   void execute(int slot, int times)
+   {
+      for (int i = 0; i < times; i++) {
+         TestRun.lineExecuted(counters.id, slot);
+      }
+   }
+
+   @Test
+   public void disableProbeOnceExecutedAsManyTimesAsTheSamplingLimit()
+   {
+      createCounters(3);
+
+      execute(line1Slot, 2);
+      assertFalse(counters.isSlotDisabled(line1Slot));
+
+      execute(line1Slot, 1);
+      assertTrue(counters.isSlotDisabled(line1Slot));
+
+      execute(line1Slot, 5);
+      fileData.lineCoverageInfo.updateExecutionCounts();
+      assertEquals(3, line1.getExecutionCount());
+   }
+
+   @Test
+   public void disableEachProbeSeparately()
+   {
+      createCounters(2);
+
+      execute(line2Slot, 1);
+      execute(jumpSlot, 4);
+
+      assertFalse(counters.isSlotDisabled(line1Slot));
+      assertFalse(counters.isSlotDisabled(line2Slot));
+      assertTrue(counters.isSlotDisabled(jumpSlot));
+
+      execute(line2Slot, 3);
+      fileData.lineCoverageInfo.updateExecutionCounts();
+
+      assertTrue(counters.isSlotDisabled(line2Slot));
+      assertEquals(0, line1.getExecutionCount());
+      assertEquals(2, line2.getExecutionCount());
+      assertEquals(2, branch2.getJumpExecutionCount());
+   }
+
+   @Test
+   public void neverDisableProbesWithoutSampling()
+   {
+      createCounters(0);
+
+      execute(line1Slot, 100);
+      execute(jumpSlot, 100);
+      fileData.lineCoverageInfo.updateExecutionCounts();
+
+      assertFalse(counters.isSlotDisabled(line1Slot));
+      assertFalse(counters.isSlotDisabled(jumpSlot));
+      assertEquals(100, line1.getExecutionCount());
+      assertEquals(100, branch2.getJumpExecutionCount());
+   }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.util.regex.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public final class ClassNameMatcherTest
+{
+   static final String[] CLASS_NAMES = {
+      "", "a", "a.B", "a.BC", "a.B$1", "a.b", "aXB", "c.d", "c.d.", "c.d.E", "c.d.e.F$G", "c.dE", "c", "C.d.E",
+      "orderMngr.domain.Order", "orderMngr.domain.", "orderMngr.domainX", "org.acme.Foo", "org.acme.Foo$Bar",
+      "org.acme.util.Strings", "Foo$", "Foo$Bar", "Test", "$"
+   };
+
+   void assertMatchesLikeRegex(String regex)
+   {
+      ClassNameMatcher matcher = ClassNameMatcher.create(regex);
+      Pattern pattern = Pattern.compile(regex);
+
+      for (String className : CLASS_NAMES) {
+         boolean expected = pattern.matcher(className).matches();
+         assertEquals(regex + " on \"" + className + '"', expected, matcher.matches(className));
+      }
+   }
+
+   @Test
+   public void emptyExpressionSelectsNoMatcher()
+   {
+      assertNull(ClassNameMatcher.create(""));
+   }
+
+   @Test
+   public void matchAlternativesOfLiteralNameAndNamePrefix()
+   {
+      assertMatchesLikeRegex("a\\.B|c\\.d\\..*");
+   }
+
+   @Test
+   public void matchNamePrefixRequiringAtLeastOneMoreCharacter()
+   {
+      assertMatchesLikeRegex("orderMngr\\.domain\\..+");
+      assertMatchesLikeRegex("org\\.acme\\.Foo|org\\.acme\\.util\\..*");
+   }
+
+   @Test
+   public void matchBareWildcards()
+   {
+      assertMatchesLikeRegex(".*");
+      assertMatchesLikeRegex(".+");
+   }
+
+   @Test
+   public void matchNamesWithEscapedDollarSign()
+   {
+      assertMatchesLikeRegex("Foo\\$Bar|org\\.acme\\.Foo\\$.*");
+      assertMatchesLikeRegex("Foo\\$");
+      assertMatchesLikeRegex("\\$");
+   }
+
+   @Test
+   public void matchExpressionsWithUnescapedDollarSignAsRegex()
+   {
+      assertMatchesLikeRegex("Foo$");
+      assertMatchesLikeRegex("a\\.B$|c\\.d");
+   }
+
+   @Test
+   public void matchExpressionsWithEmptyAlternative()
+   {
+      assertMatchesLikeRegex("a|");
+      assertMatchesLikeRegex("|c\\.d\\..+");
+   }
+
+   @Test
+   public void matchGeneralRegularExpressions()
+   {
+      assertMatchesLikeRegex("a.B");
+      assertMatchesLikeRegex("[ac]\\..*");
+      assertMatchesLikeRegex("c(\\.d)?");
+      assertMatchesLikeRegex(".*\\.d\\..*");
+      assertMatchesLikeRegex("(?i)c\\.d\\.e");
+   }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.util.regex.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public final class ClassSelectionTest
+{
+   static final Pattern TEST_CLASS_NAME = Pattern.compile(".+Test(\\$.+)?");
+
+   void assertTestClassNameLikeRegex(String... classNames)
+   {
+      for (String className : classNames) {
+         boolean expected = TEST_CLASS_NAME.matcher(className).matches();
+         assertEquals(className, expected, ClassSelection.isTestClassName(className));
+      }
+   }
+
+   @Test
+   public void recognizeTestClassNames()
+   {
+      assertTestClassNameLikeRegex("pkg.SomeTest", "SomeTest", "pkg.SomeTest$1", "pkg.SomeTest$Nested$2", "aTest");
+   }
+
+   @Test
+   public void rejectClassNamesWithTestOnlyAtIndexZero()
+   {
+      assertTestClassNameLikeRegex("Test", "Test$1", "TestBase", "Testing", "Test$Test");
+   }
+
+   @Test
+   public void rejectTestClassNamesWithTrailingDollarSign()
+   {
+      assertTestClassNameLikeRegex("pkg.SomeTest$", "SomeTest$", "Test$", "TestTest$");
+   }
+
+   @Test
+   public void checkAllOccurrencesOfTest()
+   {
+      assertTestClassNameLikeRegex(
+         "pkg.TestSupport", "pkg.Tests", "pkg.TestCase", "pkg.TestUtil$Test", "pkg.TestsTest", "pkg.TestTest$",
+         "pkg.Test$$", "pkg.Test$Test$", "pkg.Tester$Test", "pkg.Contest");
+   }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.io.*;
+import java.lang.reflect.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import mockit.coverage.lines.*;
+import mockit.external.asm4.*;
+
+public final class ModifiedClassCacheTest
+{
+   static final String CLASS_NAME = "integrationTests.ClassToCache";
+   static final String INNER_CLASS_NAME = CLASS_NAME + "$Doubler";
+
+   File cacheDir;
+   ModifiedClassCache cache;
+
+   @Before
+   public void createCache() throws IOException
+   {
+      cacheDir = File.createTempFile("classCache", "");
+      assertTrue(cacheDir.delete() && cacheDir.mkdir());
+
+      System.setProperty("jmockit-coverage-classCache", cacheDir.getPath());
+
+      try {
+         cache = ModifiedClassCache.createIfActive();
+      }
+      finally {
+         System.clearProperty("jmockit-coverage-classCache");
+      }
+   }
+
+   @After
+   public void deleteCache()
+   {
+      for (File entryFile : cacheDir.listFiles()) {
+         entryFile.delete();
+      }
+
+      cacheDir.delete();
+   }
+
+   static byte[] readOriginalClassfile(String className) throws IOException
+   {
+      InputStream classFile =
+         ModifiedClassCacheTest.class.getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
+
+      try {
+         return new ClassReader(classFile).b;
+      }
+      finally {
+         classFile.close();
+      }
+   }
+
+   static int findIntegerConstant(byte[] classfile, int value)
+   {
+      ClassReader cr = new ClassReader(classfile);
+
+      for (int item = 1, n = cr.getItemCount(); item < n; item++) {
+         int offset = cr.getItem(item);
+
+         if (offset > 0 && classfile[offset - 1] == 3 && cr.readInt(offset) == value) {
+            return offset;
+         }
+      }
+
+      return -1;
+   }
+
+   static void assertCountersIdPatched(byte[] modifiedClassfile, int countersId, byte[] cachedClassfile, int newId)
+   {
+      int idOffset = findIntegerConstant(modifiedClassfile, countersId);
+      assertTrue(idOffset > 0);
+      assertEquals(newId, new ClassReader(cachedClassfile).readInt(idOffset));
+      assertEquals(-1, findIntegerConstant(cachedClassfile, countersId));
+
+      byte[] unpatchedClassfile = cachedClassfile.clone();
+      unpatchedClassfile[idOffset] = (byte) (countersId >>> 24);
+      unpatchedClassfile[idOffset + 1] = (byte) (countersId >>> 16);
+      unpatchedClassfile[idOffset + 2] = (byte) (countersId >>> 8);
+      unpatchedClassfile[idOffset + 3] = (byte) countersId;
+      assertArrayEquals(modifiedClassfile, unpatchedClassfile);
+
+      ExecutionCounters counters = ExecutionCounters.get(countersId);
+      ExecutionCounters newCounters = ExecutionCounters.get(newId);
+      assertEquals(counters.sourceFile, newCounters.sourceFile);
+      assertEquals(counters.getSlotCount(), newCounters.getSlotCount());
+
+      for (int slot = 0; slot < counters.getSlotCount(); slot++) {
+         assertEquals(counters.getSlotLine(slot), newCounters.getSlotLine(slot));
+         assertEquals(counters.isJumpSlot(slot), newCounters.isJumpSlot(slot));
+      }
+   }
+
+   static final class ClassfileLoader extends ClassLoader
+   {
+      ClassfileLoader() { super(ModifiedClassCacheTest.class.getClassLoader()); }
+
+      Class<?> define(String className, byte[] classfile)
+      {
+         return defineClass(className, classfile, 0, classfile.length);
+      }
+   }
+
+   static int countExecutions(int countersId)
+   {
+      int executions = 0;
+
+      for (int count : ExecutionCounters.get(countersId).getCountsSinceLastSnapshot()) {
+         executions += count;
+      }
+
+      return executions;
+   }
+
+   @Test
+   public void reuseCachedClassWithCountersIdPatched() throws Exception
+   {
+      byte[] originalClassfile = readOriginalClassfile(CLASS_NAME);
+      String internalClassName = CLASS_NAME.replace('.', '/');
+
+      int firstId = ExecutionCounters.getCountersCreated();
+      byte[] modifiedClassfile = cache.modifyClass(internalClassName, originalClassfile);
+      byte[] modifiedInnerClassfile = CoverageModifier.recoverModifiedByteCodeIfAvailable(INNER_CLASS_NAME);
+
+      assertEquals(0, cache.getHits());
+      assertEquals(1, cache.getMisses());
+      assertEquals(firstId + 2, ExecutionCounters.getCountersCreated());
+      assertNotNull(modifiedInnerClassfile);
+      assertEquals(1, cacheDir.listFiles().length);
+
+      int newId = ExecutionCounters.getCountersCreated();
+      byte[] cachedClassfile = cache.modifyClass(internalClassName, originalClassfile);
+      byte[] cachedInnerClassfile = CoverageModifier.recoverModifiedByteCodeIfAvailable(INNER_CLASS_NAME);
+
+      assertEquals(1, cache.getHits());
+      assertEquals(1, cache.getMisses());
+      assertEquals(newId + 2, ExecutionCounters.getCountersCreated());
+      assertNotNull(cachedInnerClassfile);
+
+      assertCountersIdPatched(modifiedClassfile, firstId, cachedClassfile, newId);
+      assertCountersIdPatched(modifiedInnerClassfile, firstId + 1, cachedInnerClassfile, newId + 1);
+
+      ClassfileLoader loader = new ClassfileLoader();
+      Class<?> cachedClass = loader.define(CLASS_NAME, cachedClassfile);
+      loader.define(INNER_CLASS_NAME, cachedInnerClassfile);
+      Method compute = cachedClass.getMethod("compute", int.class);
+
+      assertEquals(4, compute.invoke(null, 2));
+
+      assertTrue(countExecutions(newId) > 0);
+      assertTrue(countExecutions(newId + 1) > 0);
+      assertEquals(0, countExecutions(firstId));
+      assertEquals(0, countExecutions(firstId + 1));
+   }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+
+public final class OfflineInstrumentationTest
+{
+   static final String CLASS_NAME = "integrationTests.ClassToInstrumentOffline";
+   static final String INNER_CLASS_NAME = CLASS_NAME + "$Doubler";
+   static final String SOURCE_FILE = "integrationTests/ClassToInstrumentOffline.java";
+
+   File classDir;
+
+   @Before
+   public void copyClassFilesToNewClassDir() throws IOException
+   {
+      classDir = File.createTempFile("classes", "");
+      assertTrue(classDir.delete() && classDir.mkdir());
+
+      copyClassFile(CLASS_NAME);
+      copyClassFile(INNER_CLASS_NAME);
+   }
+
+   private void copyClassFile(String className) throws IOException
+   {
+      byte[] classfile = ModifiedClassCacheTest.readOriginalClassfile(className);
+      writeFile(getClassFile(className), classfile);
+   }
+
+   private File getClassFile(String className)
+   {
+      return new File(classDir, className.replace('.', '/') + ".class");
+   }
+
+   private static void writeFile(File file, byte[] contents) throws IOException
+   {
+      assertTrue(file.getParentFile().mkdirs() || file.getParentFile().isDirectory());
+      OutputStream output = new FileOutputStream(file);
+
+      try {
+         output.write(contents);
+      }
+      finally {
+         output.close();
+      }
+   }
+
+   private static byte[] readFile(File file) throws IOException
+   {
+      DataInputStream input = new DataInputStream(new FileInputStream(file));
+
+      try {
+         byte[] contents = new byte[(int) file.length()];
+         input.readFully(contents);
+         return contents;
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   @After
+   public void deleteClassDir()
+   {
+      delete(classDir);
+   }
+
+   private static void delete(File fileOrDir)
+   {
+      File[] files = fileOrDir.listFiles();
+
+      if (files != null) {
+         for (File file : files) {
+            delete(file);
+         }
+      }
+
+      fileOrDir.delete();
+   }
+
+   void instrumentClassDir() throws IOException
+   {
+      String previousClasses = System.getProperty("jmockit-coverage-classes");
+      System.setProperty("jmockit-coverage-classes", "integrationTests\\.ClassToInstrumentOffline.*");
+
+      try {
+         OfflineInstrumentation.main(new String[] {classDir.getPath()});
+      }
+      finally {
+         if (previousClasses == null) {
+            System.clearProperty("jmockit-coverage-classes");
+         }
+         else {
+            System.setProperty("jmockit-coverage-classes", previousClasses);
+         }
+      }
+   }
+
+   @Test
+   public void writeMetadataWithCountersIdsUsedByInstrumentedClasses() throws Exception
+   {
+      int firstId = ExecutionCounters.getCountersCreated();
+
+      instrumentClassDir();
+
+      assertEquals(firstId + 2, ExecutionCounters.getCountersCreated());
+      assertMetadataForCounters(firstId, firstId + 1);
+
+      ModifiedClassCacheTest.ClassfileLoader loader = new ModifiedClassCacheTest.ClassfileLoader();
+      Class<?> instrumentedClass = loader.define(CLASS_NAME, readFile(getClassFile(CLASS_NAME)));
+      loader.define(INNER_CLASS_NAME, readFile(getClassFile(INNER_CLASS_NAME)));
+      Method compute = instrumentedClass.getMethod("compute", int.class);
+
+      assertEquals(4, compute.invoke(null, -2));
+
+      assertTrue(ModifiedClassCacheTest.countExecutions(firstId) > 0);
+      assertTrue(ModifiedClassCacheTest.countExecutions(firstId + 1) > 0);
+   }
+
+   private void assertMetadataForCounters(int... countersIds) throws IOException
+   {
+      InputStream metadataFile = new FileInputStream(new File(classDir, InstrumentationMetadata.RESOURCE_NAME));
+
+      try {
+         CoverageDataInput input = new CoverageDataInput(new BufferedInputStream(metadataFile));
+
+         assertEquals(1, input.readInt());
+         assertEquals(SOURCE_FILE, input.readString());
+         new FileCoverageData().readFrom(input);
+
+         assertEquals(countersIds.length, input.readInt());
+
+         for (int countersId : countersIds) {
+            assertEquals(countersId, input.readInt());
+            assertEquals(SOURCE_FILE, input.readString());
+            assertSlots(ExecutionCounters.get(countersId), input);
+         }
+
+         List<String> classNames = new ArrayList<String>();
+
+         for (int classCount = input.readInt(); classCount > 0; classCount--) {
+            classNames.add(input.readString());
+         }
+
+         assertEquals(Arrays.asList(CLASS_NAME, INNER_CLASS_NAME), classNames);
+      }
+      finally {
+         metadataFile.close();
+      }
+   }
+
+   private static void assertSlots(ExecutionCounters counters, CoverageDataInput input) throws IOException
+   {
+      assertEquals(SOURCE_FILE, counters.sourceFile);
+      assertEquals(counters.getSlotCount(), input.readInt());
+
+      for (int slot = 0; slot < counters.getSlotCount(); slot++) {
+         assertEquals(counters.getSlotLine(slot), input.readInt());
+         input.readInt();
+         assertEquals(counters.isJumpSlot(slot), input.readBoolean());
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void refuseToInstrumentClassDirAgain() throws IOException
+   {
+      instrumentClassDir();
+      instrumentClassDir();
+   }
+}
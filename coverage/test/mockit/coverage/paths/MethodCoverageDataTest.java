@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.paths;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import mockit.external.asm4.*;
+
+public final class MethodCoverageDataTest
+{
+   /**
+    * The list-based matching used before paths were looked up by their node indexes: the nodes reached are
+    * collected in order, and compared against each path ending in the exit node reached.
+    */
+   static final class ListBasedPathMatching
+   {
+      final List<Node> nodes;
+      final boolean[] reached;
+      final Map<Path, Integer> executionCounts = new IdentityHashMap<Path, Integer>();
+      List<Node> nodesReached;
+      int previousNodeIndex;
+
+      ListBasedPathMatching(List<Node> nodes)
+      {
+         this.nodes = nodes;
+         reached = new boolean[nodes.size()];
+      }
+
+      void markNodeAsReached(int nodeIndex)
+      {
+         if (nodeIndex == 0) {
+            Arrays.fill(reached, false);
+            nodesReached = new ArrayList<Node>();
+            previousNodeIndex = 0;
+         }
+
+         Node node = nodes.get(nodeIndex);
+
+         if (!reached[nodeIndex] && (nodeIndex == 0 || nodeIndex > previousNodeIndex)) {
+            reached[nodeIndex] = true;
+            nodesReached.add(node);
+            previousNodeIndex = nodeIndex;
+         }
+
+         if (node instanceof Node.Exit) {
+            for (Path path : ((Node.Exit) node).paths) {
+               if (path.nodes.equals(nodesReached)) {
+                  Integer count = executionCounts.get(path);
+                  executionCounts.put(path, count == null ? 1 : count + 1);
+                  return;
+               }
+            }
+         }
+      }
+
+      int getExecutionCount(Path path)
+      {
+         Integer count = executionCounts.get(path);
+         return count == null ? 0 : count;
+      }
+   }
+
+   NodeBuilder nodeBuilder;
+   int line;
+
+   void startMethod()
+   {
+      nodeBuilder = new NodeBuilder();
+      line = 1;
+      nodeBuilder.handleEntry(line++);
+   }
+
+   // As for "if (cond) { statement; }".
+   void addIfStatement()
+   {
+      Label afterIf = new Label();
+      nodeBuilder.handleJump(afterIf, line++, true);
+      nodeBuilder.handleRegularInstruction(line++, Opcodes.ILOAD);
+      nodeBuilder.handleJumpTarget(afterIf, line);
+   }
+
+   // As for "if (cond) return;".
+   void addIfWithReturn()
+   {
+      Label afterIf = new Label();
+      nodeBuilder.handleJump(afterIf, line++, true);
+      nodeBuilder.handleRegularInstruction(line, Opcodes.ILOAD);
+      nodeBuilder.handleExit(line++);
+      nodeBuilder.handleJumpTarget(afterIf, line);
+   }
+
+   MethodCoverageData endMethod()
+   {
+      nodeBuilder.handleRegularInstruction(line, Opcodes.ILOAD);
+      nodeBuilder.handleExit(line);
+
+      MethodCoverageData methodData = new MethodCoverageData("test()V");
+      methodData.buildPaths(line, nodeBuilder);
+      return methodData;
+   }
+
+   static int[] nodeIndexesOf(Path path, List<Node> nodes)
+   {
+      int[] indexes = new int[path.nodes.size()];
+
+      for (int i = 0; i < indexes.length; i++) {
+         indexes[i] = nodes.indexOf(path.nodes.get(i));
+      }
+
+      return indexes;
+   }
+
+   static int[] randomExecution(Random random, List<Node> nodes)
+   {
+      int length = 1 + random.nextInt(2 * nodes.size());
+      int[] nodeIndexes = new int[length];
+
+      for (int i = 1; i < length; i++) {
+         nodeIndexes[i] = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(nodes.size() - 1);
+      }
+
+      return nodeIndexes;
+   }
+
+   // Also inserts a repeated or earlier node now and then, as reached in loops.
+   static int[] executionAlongPath(Random random, int[] pathNodeIndexes)
+   {
+      List<Integer> nodeIndexes = new ArrayList<Integer>();
+
+      for (int nodeIndex : pathNodeIndexes) {
+         nodeIndexes.add(nodeIndex);
+
+         if (nodeIndex > 0 && random.nextInt(4) == 0) {
+            nodeIndexes.add(1 + random.nextInt(nodeIndex));
+         }
+      }
+
+      int[] execution = new int[nodeIndexes.size()];
+
+      for (int i = 0; i < execution.length; i++) {
+         execution[i] = nodeIndexes.get(i);
+      }
+
+      return execution;
+   }
+
+   void assertSameCountsAsListBasedMatching(MethodCoverageData methodData, long seed)
+   {
+      List<Node> nodes = nodeBuilder.nodes;
+      ListBasedPathMatching listBasedMatching = new ListBasedPathMatching(nodes);
+      Random random = new Random(seed);
+      int exitsReached = 0;
+
+      for (int i = 0; i < 2000; i++) {
+         int[] execution;
+
+         if (i % 2 == 0) {
+            Path path = methodData.paths.get(random.nextInt(methodData.paths.size()));
+            int[] pathNodeIndexes = nodeIndexesOf(path, nodes);
+            execution = i % 4 == 0 ? pathNodeIndexes : executionAlongPath(random, pathNodeIndexes);
+         }
+         else {
+            execution = randomExecution(random, nodes);
+         }
+
+         for (int nodeIndex : execution) {
+            methodData.markNodeAsReached(nodeIndex);
+            listBasedMatching.markNodeAsReached(nodeIndex);
+
+            if (nodes.get(nodeIndex) instanceof Node.Exit) {
+               exitsReached++;
+            }
+         }
+      }
+
+      int executionCount = 0;
+
+      for (Path path : methodData.paths) {
+         assertEquals(listBasedMatching.getExecutionCount(path), path.getExecutionCount());
+         executionCount += path.getExecutionCount();
+      }
+
+      assertEquals(executionCount, methodData.getExecutionCount());
+      assertTrue(executionCount >= 500);
+      assertTrue(executionCount < exitsReached);
+   }
+
+   @Test
+   public void countPathsOfMethodWithSequentialIfsLikeListBasedMatching()
+   {
+      startMethod();
+      addIfStatement();
+      addIfStatement();
+      addIfWithReturn();
+      addIfStatement();
+      MethodCoverageData methodData = endMethod();
+
+      assertEquals(12, methodData.paths.size());
+      assertSameCountsAsListBasedMatching(methodData, 1);
+   }
+
+   @Test
+   public void countPathsOfMethodWithMoreThan64NodesLikeListBasedMatching()
+   {
+      startMethod();
+
+      for (int i = 0; i < 40; i++) {
+         addIfWithReturn();
+      }
+
+      addIfStatement();
+      MethodCoverageData methodData = endMethod();
+
+      assertTrue(nodeBuilder.nodes.size() > 128);
+      assertEquals(42, methodData.paths.size());
+      assertSameCountsAsListBasedMatching(methodData, 2);
+   }
+}
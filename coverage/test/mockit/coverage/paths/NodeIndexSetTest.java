@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.paths;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public final class NodeIndexSetTest
+{
+   static NodeIndexSet createSet(int nodeCount, int... nodeIndexes)
+   {
+      NodeIndexSet set = new NodeIndexSet(nodeCount);
+
+      for (int nodeIndex : nodeIndexes) {
+         set.add(nodeIndex);
+      }
+
+      return set;
+   }
+
+   @Test
+   public void addIndexesAtWordBoundaries()
+   {
+      NodeIndexSet set = createSet(130, 0, 63, 64, 127, 128, 129);
+
+      for (int i = 0; i < 130; i++) {
+         boolean added = i == 0 || i == 63 || i == 64 || i == 127 || i == 128 || i == 129;
+         assertEquals(String.valueOf(i), added, set.contains(i));
+      }
+
+      assertEquals(129, set.lastIndexAdded);
+   }
+
+   @Test
+   public void compareSetsWithIndexesInDifferentWords()
+   {
+      NodeIndexSet set = createSet(100, 0, 5, 70, 99);
+
+      assertTrue(set.hasSameIndexesAs(createSet(100, 0, 5, 70, 99)));
+      assertEquals(set.hash(), createSet(100, 0, 5, 70, 99).hash());
+
+      // Same indexes modulo 64, which would collide in a single word.
+      assertFalse(set.hasSameIndexesAs(createSet(100, 0, 5, 6, 99)));
+      assertFalse(set.hasSameIndexesAs(createSet(100, 0, 5, 35)));
+      assertFalse(set.hasSameIndexesAs(createSet(100, 0, 5, 70)));
+   }
+
+   @Test
+   public void clearSetForReuse()
+   {
+      NodeIndexSet set = createSet(70, 0, 3, 66);
+
+      set.clear();
+
+      assertFalse(set.contains(0));
+      assertFalse(set.contains(66));
+      assertEquals(0, set.lastIndexAdded);
+      assertTrue(set.hasSameIndexesAs(new NodeIndexSet(70)));
+
+      set.add(0);
+      set.add(66);
+      assertTrue(set.hasSameIndexesAs(createSet(70, 0, 66)));
+   }
+}
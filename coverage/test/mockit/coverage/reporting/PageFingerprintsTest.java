@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+
+public final class PageFingerprintsTest
+{
+   static final String SOURCE_FILE = "pkg/Sample.java";
+
+   final StackTraceElement test = new StackTraceElement("pkg.SampleTest", "test", "SampleTest.java", 15);
+   File outputDir;
+   File sourceFile;
+   FileCoverageData fileData;
+
+   @Before
+   public void createSourceFileAndCoverageData() throws IOException
+   {
+      outputDir = File.createTempFile("report", "");
+      assertTrue(outputDir.delete() && outputDir.mkdir());
+
+      sourceFile = new File(outputDir, "Sample.java");
+      writeSourceFile("class Sample { int x; }");
+
+      fileData = new CoverageData().addFile(SOURCE_FILE);
+      fileData.addLine(1).registerExecution(new CallPoint(test));
+   }
+
+   @After
+   public void deleteFiles()
+   {
+      File pageFile = OutputFile.getOutputFile(outputDir.getPath(), SOURCE_FILE);
+      pageFile.delete();
+      pageFile.getParentFile().delete();
+      sourceFile.delete();
+      new File(outputDir, "pageFingerprints.txt").delete();
+      outputDir.delete();
+   }
+
+   void writeSourceFile(String contents) throws IOException
+   {
+      Writer output = new FileWriter(sourceFile);
+
+      try {
+         output.write(contents);
+      }
+      finally {
+         output.close();
+      }
+   }
+
+   PageFingerprints createFingerprints(boolean withCallPoints) throws IOException
+   {
+      return new PageFingerprints(outputDir.getPath(), withCallPoints, 1234L);
+   }
+
+   String computeFingerprint() throws IOException
+   {
+      return createFingerprints(false).computeFingerprint(sourceFile, fileData);
+   }
+
+   @Test
+   public void computeSameFingerprintWhenNothingChanged() throws IOException
+   {
+      String fingerprint = computeFingerprint();
+
+      assertEquals(32, fingerprint.length());
+      assertEquals(fingerprint, computeFingerprint());
+   }
+
+   @Test
+   public void computeDifferentFingerprintWhenSourceFileChanges() throws IOException
+   {
+      String fingerprint = computeFingerprint();
+
+      writeSourceFile("class Sample { int y; }");
+
+      assertFalse(fingerprint.equals(computeFingerprint()));
+   }
+
+   @Test
+   public void computeDifferentFingerprintWhenCoverageDataChanges() throws IOException
+   {
+      String fingerprint = computeFingerprint();
+
+      fileData.addLine(1).registerExecution(new CallPoint(test));
+
+      assertFalse(fingerprint.equals(computeFingerprint()));
+   }
+
+   @Test
+   public void computeDifferentFingerprintWhenReportSettingsChange() throws IOException
+   {
+      String fingerprint = computeFingerprint();
+
+      assertFalse(fingerprint.equals(createFingerprints(true).computeFingerprint(sourceFile, fileData)));
+   }
+
+   @Test
+   public void recognizePageUpToDateOnlyIfSavedWithSameFingerprintAndStillExisting() throws IOException
+   {
+      PageFingerprints fingerprints = createFingerprints(false);
+      String fingerprint = fingerprints.computeFingerprint(sourceFile, fileData);
+      assertFalse(fingerprints.isPageUpToDate(SOURCE_FILE, fingerprint));
+      fingerprints.save();
+
+      PageFingerprints nextFingerprints = createFingerprints(false);
+      assertFalse(nextFingerprints.isPageUpToDate(SOURCE_FILE, fingerprint));
+
+      File pageFile = OutputFile.getOutputFile(outputDir.getPath(), SOURCE_FILE);
+      assertTrue(pageFile.getParentFile().mkdirs() && pageFile.createNewFile());
+
+      assertTrue(nextFingerprints.isPageUpToDate(SOURCE_FILE, fingerprint));
+      assertFalse(nextFingerprints.isPageUpToDate(SOURCE_FILE, fingerprint.replace(fingerprint.charAt(0), 'x')));
+
+      nextFingerprints.discardFingerprint(SOURCE_FILE);
+      nextFingerprints.save();
+
+      assertFalse(createFingerprints(false).isPageUpToDate(SOURCE_FILE, fingerprint));
+   }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting.parsing;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public final class LineParserTest
+{
+   final LineParser parser = new LineParser();
+
+   // Each element is described by its type (C for code, M for comment, S for separator) followed by its text.
+   void assertNextLine(boolean withCode, boolean inComments, boolean blank, String expectedElements)
+   {
+      assertTrue(parser.hasMoreLines());
+
+      boolean parsedCode = parser.parseNextLine();
+
+      assertEquals(withCode, parsedCode);
+      assertEquals(inComments, parser.isInComments());
+      assertEquals(blank, parser.isBlankLine());
+      assertEquals(expectedElements, describeElements());
+   }
+
+   private String describeElements()
+   {
+      StringBuilder elements = new StringBuilder();
+
+      for (LineElement element = parser.getInitialElement(); element != null; element = element.getNext()) {
+         char type = element.isCode() ? 'C' : element.isComment() ? 'M' : 'S';
+         elements.append(type).append('[').append(element.getText()).append(']');
+      }
+
+      return elements.toString();
+   }
+
+   @Test
+   public void parseLinesOfCodeIntoCodeAndSeparatorElements()
+   {
+      parser.setSource("int x = 1;\nreturn x;\n".toCharArray());
+
+      assertNextLine(true, false, false, "C[int]S[ ]C[x]S[ ]C[=]S[ ]C[1]S[;]");
+      assertEquals(1, parser.getNumber());
+      assertNextLine(true, false, false, "C[return]S[ ]C[x]S[;]");
+      assertEquals(2, parser.getNumber());
+      assertFalse(parser.hasMoreLines());
+   }
+
+   @Test
+   public void parseLinesTerminatedByCarriageReturnAndLineFeed()
+   {
+      parser.setSource("a;\r\n\r\nb;\r\n".toCharArray());
+
+      assertNextLine(true, false, false, "C[a]S[;]");
+      assertNextLine(false, false, true, "S[]");
+      assertNextLine(true, false, false, "C[b]S[;]");
+      assertFalse(parser.hasMoreLines());
+   }
+
+   @Test
+   public void parseLinesTerminatedByLoneCarriageReturn()
+   {
+      parser.setSource("a;\r\rb;\r".toCharArray());
+
+      assertNextLine(true, false, false, "C[a]S[;]");
+      assertNextLine(false, false, true, "S[]");
+      assertNextLine(true, false, false, "C[b]S[;]");
+      assertEquals(3, parser.getNumber());
+      assertFalse(parser.hasMoreLines());
+   }
+
+   @Test
+   public void parseLastLineWithoutLineTerminator()
+   {
+      parser.setSource("a;\nb();".toCharArray());
+
+      assertNextLine(true, false, false, "C[a]S[;]");
+      assertNextLine(true, false, false, "C[b]S[();]");
+      assertFalse(parser.hasMoreLines());
+   }
+
+   @Test
+   public void parseBlankLines()
+   {
+      parser.setSource("\n  \n".toCharArray());
+
+      assertNextLine(false, false, true, "S[]");
+      assertNextLine(false, false, true, "S[  ]");
+      assertFalse(parser.hasMoreLines());
+   }
+
+   @Test
+   public void parseLineEndingInComment()
+   {
+      parser.setSource("f(); // note\n".toCharArray());
+
+      assertNextLine(true, false, false, "C[f]M[(); // note]");
+   }
+
+   @Test
+   public void parseBlockCommentSpanningMultipleLines()
+   {
+      parser.setSource("x = 1; /* start\r\n still\r\n end */ y();\r\n".toCharArray());
+
+      assertNextLine(false, true, false, "C[x]S[ ]C[=]S[ ]C[1]M[; /* start]");
+      assertNextLine(false, true, false, "M[ still]");
+      assertNextLine(true, false, false, "M[ end */]S[ ]C[y]S[();]");
+      assertFalse(parser.hasMoreLines());
+   }
+
+   @Test
+   public void parseUnterminatedBlockCommentUntilEndOfSource()
+   {
+      parser.setSource("/* never closed\n  still comment".toCharArray());
+
+      assertNextLine(false, true, false, "M[/* never closed]");
+      assertNextLine(false, true, false, "M[  still comment]");
+      assertFalse(parser.hasMoreLines());
+   }
+
+   @Test
+   public void resetStateWhenParsingNewSource()
+   {
+      parser.setSource("/* unterminated\n".toCharArray());
+      assertNextLine(false, true, false, "M[/* unterminated]");
+
+      parser.setSource("a;".toCharArray());
+
+      assertNextLine(true, false, false, "C[a]S[;]");
+      assertEquals(1, parser.getNumber());
+   }
+}
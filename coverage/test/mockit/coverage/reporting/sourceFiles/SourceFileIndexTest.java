@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting.sourceFiles;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public final class SourceFileIndexTest
+{
+   File rootDir;
+   File srcDir1;
+   File srcDir2;
+
+   @Before
+   public void createSourceDirs() throws IOException
+   {
+      rootDir = File.createTempFile("sources", "");
+      assertTrue(rootDir.delete() && rootDir.mkdir());
+      srcDir1 = new File(rootDir, "src1");
+      srcDir2 = new File(rootDir, "src2");
+   }
+
+   @After
+   public void deleteSourceDirs()
+   {
+      delete(rootDir);
+   }
+
+   private static void delete(File fileOrDir)
+   {
+      File[] files = fileOrDir.listFiles();
+
+      if (files != null) {
+         for (File file : files) {
+            delete(file);
+         }
+      }
+
+      fileOrDir.delete();
+   }
+
+   File createFile(File sourceDir, String relativePath) throws IOException
+   {
+      File file = new File(sourceDir, relativePath);
+      assertTrue(file.getParentFile().mkdirs() || file.getParentFile().isDirectory());
+      assertTrue(file.createNewFile());
+      return file;
+   }
+
+   SourceFileIndex createIndex() { return new SourceFileIndex(Arrays.asList(srcDir1, srcDir2)); }
+
+   @Test
+   public void findFileDirectlyUnderSourceDirInTheOrderOfTheDirs() throws IOException
+   {
+      File file1 = createFile(srcDir1, "org/acme/Foo.java");
+      createFile(srcDir2, "org/acme/Foo.java");
+
+      assertEquals(file1, createIndex().findFile("org/acme/Foo.java"));
+   }
+
+   @Test
+   public void preferFileDirectlyUnderLaterSourceDirToFileNestedInEarlierOne() throws IOException
+   {
+      createFile(srcDir1, "module/src/main/java/org/acme/Foo.java");
+      File file2 = createFile(srcDir2, "org/acme/Foo.java");
+
+      assertEquals(file2, createIndex().findFile("org/acme/Foo.java"));
+   }
+
+   @Test
+   public void findFileNestedUnderSourceDirThroughItsPathSuffix() throws IOException
+   {
+      File file1 = createFile(srcDir1, "module1/src/org/acme/Bar.java");
+      createFile(srcDir2, "module2/src/org/acme/Bar.java");
+      File file3 = createFile(srcDir2, "module2/src/org/acme/util/Baz.java");
+
+      SourceFileIndex index = createIndex();
+
+      assertEquals(file1, index.findFile("org/acme/Bar.java"));
+      assertEquals(file3, index.findFile("org/acme/util/Baz.java"));
+      assertEquals(file3, index.findFile("Baz.java"));
+   }
+
+   @Test
+   public void findNoFileForPathsNotEndingAnyFilePath() throws IOException
+   {
+      createFile(srcDir1, "module/src/org/acme/Bar.java");
+      createFile(srcDir2, "org/acme/Foo.java");
+
+      SourceFileIndex index = createIndex();
+
+      assertNull(index.findFile("org/acme/Baz.java"));
+      assertNull(index.findFile("com/acme/Bar.java"));
+      assertNull(index.findFile("org/acme/src/Bar.java"));
+      assertNull(index.findFile("org/acme"));
+      assertNull(index.findFile("src/org/acme/Foo.java"));
+   }
+
+   @Test
+   public void findNoFileInSourceDirWhichDoesNotExist()
+   {
+      assertNull(createIndex().findFile("org/acme/Foo.java"));
+      assertTrue(createIndex().getFileNamesInPackage("org/acme").isEmpty());
+   }
+
+   @Test
+   public void getFileNamesInPackageOfAllSourceDirs() throws IOException
+   {
+      createFile(srcDir1, "org/acme/Foo.java");
+      createFile(srcDir1, "org/acme/util/Util.java");
+      createFile(srcDir2, "org/acme/Bar.java");
+
+      SourceFileIndex index = createIndex();
+
+      assertEquals(Arrays.asList("Foo.java", "Bar.java"), index.getFileNamesInPackage("org/acme"));
+      assertEquals(Arrays.asList("Util.java"), index.getFileNamesInPackage("org/acme/util"));
+      assertTrue(index.getFileNamesInPackage("org").isEmpty());
+   }
+}
@@ -8,7 +8,6 @@ import java.io.*;
 import java.util.Map.*;
 import java.util.*;
 
-import mockit.coverage.*;
 import mockit.coverage.data.*;
 import mockit.coverage.lines.*;
 
@@ -79,8 +78,14 @@ public final class CoverageInfoFile
 
    private void updateInfoForLineOfCode(String sourceFile, LineCoverageData lineData)
    {
-      for (CallPoint callPoint : lineData.getCallPoints()) {
-         StackTraceElement ste = callPoint.getStackTraceElement();
+      CallPointCounts callPoints = lineData.getCallPoints();
+
+      if (callPoints == null) {
+         return;
+      }
+
+      for (int i = 0, n = callPoints.size(); i < n; i++) {
+         StackTraceElement ste = callPoints.getCallPoint(i).getStackTraceElement();
          String testName = ste.getClassName() + '.' + ste.getMethodName();
 
          updateCoverageMapForTest(sourceFile, testName);
@@ -54,11 +54,13 @@ public class TestRunnerDecorator
       Class<?> currentTestClass = TestRun.getCurrentTestClass();
 
       if (testClass != currentTestClass) {
+         RuntimeMetrics.testClassStarting(testClass);
+
          if (currentTestClass == null) {
             SavePoint.registerNewActiveSavePoint();
          }
          else if (!currentTestClass.isAssignableFrom(testClass)) {
-            cleanUpMocksFromPreviousTestClass();
+            cleanUpMocks();
             SavePoint.registerNewActiveSavePoint();
          }
 
@@ -68,6 +70,12 @@ public class TestRunnerDecorator
    }
 
    public static void cleanUpMocksFromPreviousTestClass()
+   {
+      cleanUpMocks();
+      RuntimeMetrics.testClassEnded();
+   }
+
+   private static void cleanUpMocks()
    {
       discardTestLevelMockedTypes();
       SavePoint.rollbackForTestClass();
@@ -115,6 +115,10 @@ public final class JUnitTestCaseDecorator extends TestRunnerDecorator
       SavePoint savePoint = new SavePoint();
       TestRun.setSavePointForTestMethod(savePoint);
 
+      if (testMethod != runTestMethod) {
+         TestRun.setRunningTestMethod(testMethod);
+      }
+
       Throwable testFailure = null;
 
       try {
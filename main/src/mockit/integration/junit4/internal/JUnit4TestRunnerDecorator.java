@@ -118,6 +118,7 @@ public final class JUnit4TestRunnerDecorator extends TestRunnerDecorator
       TestRun.setSavePointForTestMethod(savePoint);
 
       Method testMethod = it.getMethod();
+      TestRun.setRunningTestMethod(testMethod);
       Throwable testFailure = null;
       boolean testFailureExpected = false;
 
@@ -92,6 +92,7 @@ public final class TestNGRunnerDecorator extends TestRunnerDecorator
          }
 
          Method method = testResult.getMethod().getConstructorOrMethod().getMethod();
+         TestRun.setRunningTestMethod(method);
 
          if (!isMethodWithParametersProvidedByTestNG(method)) {
             Object[] parameters = testResult.getParameters();
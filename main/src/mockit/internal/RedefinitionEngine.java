@@ -77,14 +77,14 @@ public final class RedefinitionEngine
       if (!GeneratedClasses.isGeneratedImplementationClass(aClass)) {
          realClass = aClass;
          byte[] realClassFile = ClassFile.createReaderOrGetFromCache(aClass).b;
-         redefineMethods(realClassFile);
+         Startup.restoreMethods(aClass, realClassFile);
       }
    }
 
    private void restoreToDefinition(Class<?> aClass, byte[] definitionToRestore)
    {
       realClass = aClass;
-      redefineMethods(definitionToRestore);
+      Startup.restoreMethods(aClass, definitionToRestore);
    }
 
    public void restoreToDefinition(String className, byte[] definitionToRestore)
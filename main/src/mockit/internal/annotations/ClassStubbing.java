@@ -42,9 +42,11 @@ public final class ClassStubbing
       }
 
       ClassReader rcReader = ClassFile.createReaderFromLastRedefinitionIfAny(realClass);
+      long startTime = RuntimeMetrics.startTiming();
       ClassVisitor rcWriter = new StubOutModifier(rcReader, stubbingConfiguration);
       rcReader.accept(rcWriter, 0);
       byte[] modifiedClassFile = rcWriter.toByteArray();
+      RuntimeMetrics.classTransformed(startTime);
 
       Startup.redefineMethods(realClass, modifiedClassFile);
 
@@ -164,9 +164,12 @@ public final class MockClassSetup
          modifier.useOneMockInstancePerMockedInstance(mockClass);
       }
 
+      long startTime = RuntimeMetrics.startTiming();
       rcReader.accept(modifier, 0);
+      byte[] modifiedClassFile = modifier.wasModified() ? modifier.toByteArray() : null;
+      RuntimeMetrics.classTransformed(startTime);
 
-      return modifier.wasModified() ? modifier.toByteArray() : null;
+      return modifiedClassFile;
    }
 
    private ClassReader createClassReaderForRealClass()
@@ -62,9 +62,11 @@ public abstract class CaptureOfImplementations implements Runnable
             return;
          }
 
+         long startTime = RuntimeMetrics.startTiming();
          ClassVisitor modifier = createModifier(realClass.getClassLoader(), classReader, baseTypeDesc);
          classReader.accept(modifier, 0);
          byte[] modifiedClass = modifier.toByteArray();
+         RuntimeMetrics.classTransformed(startTime);
 
          new RedefinitionEngine(realClass).redefineMethodsWhileRegisteringTheClass(modifiedClass);
       }
@@ -58,6 +58,7 @@ final class CaptureTransformer implements ClassFileTransformer
          return null;
       }
 
+      long startTime = RuntimeMetrics.startTiming();
       ClassReader cr = new ClassReader(classfileBuffer);
       SuperTypeCollector superTypeCollector = new SuperTypeCollector(loader);
 
@@ -65,6 +66,8 @@ final class CaptureTransformer implements ClassFileTransformer
          cr.accept(superTypeCollector, ClassReader.SKIP_DEBUG);
       }
       catch (VisitInterruptedException ignore) {
+         RuntimeMetrics.capturedClassScanned(startTime);
+
          if (superTypeCollector.classExtendsCapturedType) {
             String className = internalClassName.replace('/', '.');
 
@@ -79,8 +82,11 @@ final class CaptureTransformer implements ClassFileTransformer
 
    private byte[] modifyAndRegisterClass(ClassLoader loader, String className, ClassReader cr)
    {
+      long startTime = RuntimeMetrics.startTiming();
       ClassVisitor modifier = modifierFactory.createModifier(loader, cr, capturedType);
       cr.accept(modifier, 0);
+      byte[] modifiedClass = modifier.toByteArray();
+      RuntimeMetrics.classTransformed(startTime);
 
       byte[] originalBytecode = cr.b;
 
@@ -91,7 +97,7 @@ final class CaptureTransformer implements ClassFileTransformer
          transformedClasses.put(className, originalBytecode);
       }
 
-      return modifier.toByteArray();
+      return modifiedClass;
    }
 
    private final class SuperTypeCollector extends ClassVisitor
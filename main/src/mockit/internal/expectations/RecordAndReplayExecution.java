@@ -242,6 +242,7 @@ public final class RecordAndReplayExecution
          return Void.class;
       }
 
+      long startTime = RuntimeMetrics.startTiming();
       RECORD_OR_REPLAY_LOCK.lock();
 
       try {
@@ -274,6 +275,7 @@ public final class RecordAndReplayExecution
       }
       finally {
          RECORD_OR_REPLAY_LOCK.unlock();
+         RuntimeMetrics.mockedCallHandled(startTime);
       }
    }
 
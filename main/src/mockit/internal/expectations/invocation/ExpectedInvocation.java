@@ -294,10 +294,10 @@ public final class ExpectedInvocation
             return defaultResult;
          }
 
-         String returnTypeDesc = DefaultValues.getReturnTypeDesc(arguments.methodNameAndDesc);
-         defaultReturnValue = DefaultValues.computeForType(returnTypeDesc);
+         defaultReturnValue = DefaultValues.computeForReturnType(arguments.methodNameAndDesc);
 
          if (defaultReturnValue == null) {
+            String returnTypeDesc = DefaultValues.getReturnTypeDesc(arguments.methodNameAndDesc);
             String genericReturnTypeDesc = DefaultValues.getReturnTypeDesc(arguments.genericSignature);
             produceCascadedInstanceIfApplicable(phase, returnTypeDesc, genericReturnTypeDesc);
          }
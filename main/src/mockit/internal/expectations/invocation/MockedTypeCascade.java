@@ -13,13 +13,26 @@ import mockit.internal.util.*;
 
 public final class MockedTypeCascade
 {
+   /**
+    * Memoized for return types which don't cascade, so that they can be told apart from those not yet seen.
+    */
+   private static final Object NO_CASCADING = new Object();
+
    public final MockedType mockedType;
    private final Map<String, Class<?>> cascadedTypesAndMocks;
+   private final Map<String, Object> returnTypesToCascadedTypes;
+   private final Map<String, Object> genericReturnTypesToCascadedTypes;
+   private final Map<Class<?>, InstanceFactory> cascadedTypesToInstanceFactories;
+   private int instanceFactoriesVersion;
+   private int cascadedInstancesCreated;
 
    public MockedTypeCascade(MockedType mockedType)
    {
       this.mockedType = mockedType;
       cascadedTypesAndMocks = new HashMap<String, Class<?>>(4);
+      returnTypesToCascadedTypes = new HashMap<String, Object>(4);
+      genericReturnTypesToCascadedTypes = new HashMap<String, Object>(2);
+      cascadedTypesToInstanceFactories = new HashMap<Class<?>, InstanceFactory>(4);
    }
 
    public boolean isSharedBetweenTests() { return mockedType != null && mockedType.fieldFromTestClass; }
@@ -42,16 +55,42 @@ public final class MockedTypeCascade
       String returnTypeInternalName = null;
 
       if (genericReturnTypeDesc != null) {
-         returnTypeInternalName = getGenericReturnType(genericReturnTypeDesc, cascade);
+         returnTypeInternalName = cascade.getCascadedTypeForGenericReturnType(genericReturnTypeDesc);
       }
 
       if (returnTypeInternalName == null) {
-         returnTypeInternalName = getReturnTypeIfCascadingSupportedForIt(returnTypeDesc);
+         returnTypeInternalName = cascade.getCascadedTypeForReturnType(returnTypeDesc);
       }
 
       return returnTypeInternalName == null ? null : cascade.getCascadedMock(returnTypeInternalName);
    }
 
+   private String getCascadedTypeForGenericReturnType(String genericReturnTypeDesc)
+   {
+      Object typeName = genericReturnTypesToCascadedTypes.get(genericReturnTypeDesc);
+
+      if (typeName == null) {
+         String cascadedTypeName = getGenericReturnType(genericReturnTypeDesc, this);
+         typeName = cascadedTypeName == null ? NO_CASCADING : cascadedTypeName;
+         genericReturnTypesToCascadedTypes.put(genericReturnTypeDesc, typeName);
+      }
+
+      return typeName == NO_CASCADING ? null : (String) typeName;
+   }
+
+   private String getCascadedTypeForReturnType(String returnTypeDesc)
+   {
+      Object typeName = returnTypesToCascadedTypes.get(returnTypeDesc);
+
+      if (typeName == null) {
+         String cascadedTypeName = getReturnTypeIfCascadingSupportedForIt(returnTypeDesc);
+         typeName = cascadedTypeName == null ? NO_CASCADING : cascadedTypeName;
+         returnTypesToCascadedTypes.put(returnTypeDesc, typeName);
+      }
+
+      return typeName == NO_CASCADING ? null : (String) typeName;
+   }
+
    private static String getGenericReturnType(String genericReturnTypeDesc, MockedTypeCascade cascade)
    {
       String typeName = getInternalTypeName(genericReturnTypeDesc);
@@ -132,11 +171,12 @@ public final class MockedTypeCascade
 
    private Object createNewCascadedInstanceOrUseNonCascadedOneIfAvailable(Class<?> mockedType)
    {
-      InstanceFactory instanceFactory = TestRun.mockFixture().findInstanceFactory(mockedType);
+      InstanceFactory instanceFactory = getInstanceFactory(mockedType);
 
       if (instanceFactory == null) {
          CascadingTypeRedefinition typeRedefinition = new CascadingTypeRedefinition(mockedType);
          instanceFactory = typeRedefinition.redefineType();
+         cacheInstanceFactory(mockedType, instanceFactory);
       }
       else {
          Object lastInstance = instanceFactory.getLastInstance();
@@ -149,11 +189,56 @@ public final class MockedTypeCascade
       Object cascadedInstance = instanceFactory.create();
       instanceFactory.clearLastInstance();
       TestRun.getExecutingTest().addInjectableMock(cascadedInstance);
+      cascadedInstancesCreated++;
+      RuntimeMetrics.cascadedInstanceCreated();
       return cascadedInstance;
    }
 
+   /**
+    * Returns the number of cascaded mock instances created through this cascade since it was instantiated.
+    */
+   public int getCascadedInstancesCreated() { return cascadedInstancesCreated; }
+
+   /**
+    * Gets the instance factory for the given cascaded type, reusing the one found in a previous call as long as no
+    * instance factory was registered or removed since then in the mock fixture.
+    */
+   private InstanceFactory getInstanceFactory(Class<?> cascadedType)
+   {
+      MockFixture mockFixture = TestRun.mockFixture();
+      int currentVersion = mockFixture.getInstanceFactoriesVersion();
+
+      if (currentVersion != instanceFactoriesVersion) {
+         cascadedTypesToInstanceFactories.clear();
+         instanceFactoriesVersion = currentVersion;
+      }
+
+      InstanceFactory instanceFactory = cascadedTypesToInstanceFactories.get(cascadedType);
+
+      if (instanceFactory == null) {
+         instanceFactory = mockFixture.findInstanceFactory(cascadedType);
+
+         if (instanceFactory != null) {
+            cascadedTypesToInstanceFactories.put(cascadedType, instanceFactory);
+         }
+      }
+
+      return instanceFactory;
+   }
+
+   private void cacheInstanceFactory(Class<?> cascadedType, InstanceFactory instanceFactory)
+   {
+      cascadedTypesToInstanceFactories.put(cascadedType, instanceFactory);
+      instanceFactoriesVersion = TestRun.mockFixture().getInstanceFactoriesVersion();
+   }
+
+   /**
+    * Discards the cascaded types registered so far, along with their instance factories, while keeping the memoized
+    * cascading decisions for the return types already seen, since those depend only on the mocked type.
+    */
    public void discardCascadedMocks()
    {
       cascadedTypesAndMocks.clear();
+      cascadedTypesToInstanceFactories.clear();
    }
 }
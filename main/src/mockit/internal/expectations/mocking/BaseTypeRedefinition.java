@@ -152,8 +152,10 @@ abstract class BaseTypeRedefinition
 
    private void redefineClass(Class<?> realClass, ClassReader classReader, ClassVisitor modifier)
    {
+      long startTime = RuntimeMetrics.startTiming();
       classReader.accept(modifier, 0);
       byte[] modifiedClass = modifier.toByteArray();
+      RuntimeMetrics.classTransformed(startTime);
 
       ClassDefinition classDefinition = new ClassDefinition(realClass, modifiedClass);
       RedefinitionEngine.redefineClasses(classDefinition);
@@ -102,12 +102,14 @@ public final class DynamicPartialMocking
    private void redefineClass(Class<?> realClass, boolean methodsOnly)
    {
       ClassReader classReader = ClassFile.createReaderOrGetFromCache(realClass);
+      long startTime = RuntimeMetrics.startTiming();
 
       ExpectationsModifier modifier = new ExpectationsModifier(realClass.getClassLoader(), classReader, null);
       modifier.useDynamicMocking(methodsOnly);
 
       classReader.accept(modifier, 0);
       byte[] modifiedClass = modifier.toByteArray();
+      RuntimeMetrics.classTransformed(startTime);
 
       modifiedClassfiles.put(realClass, modifiedClass);
    }
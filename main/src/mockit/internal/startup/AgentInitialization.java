@@ -15,10 +15,15 @@ final class AgentInitialization
 
    boolean initializeAccordingToJDKVersion()
    {
+      StartupTimer timer = new StartupTimer();
       String jarFilePath = discoverPathToJarFile();
+      timer.endPhase("discovery of jar file");
 
       if (Startup.jdk6OrLater) {
-         return new JDK6AgentLoader(jarFilePath).loadAgent();
+         boolean agentLoaded = new JDK6AgentLoader(jarFilePath).loadAgent();
+         timer.endPhase("attachment to running VM and agent initialization");
+         timer.printBreakdownIfRequested("loaded on demand");
+         return agentLoaded;
       }
       else if ("1.5".equals(Startup.javaSpecVersion)) {
          throw new IllegalStateException(
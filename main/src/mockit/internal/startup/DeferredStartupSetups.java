@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.startup;
+
+import java.io.*;
+import java.lang.instrument.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static mockit.external.asm4.Opcodes.*;
+
+import mockit.external.asm4.*;
+import mockit.internal.*;
+import mockit.internal.annotations.*;
+import mockit.internal.state.*;
+import mockit.internal.util.*;
+
+/**
+ * Holds the startup mocks and stubs whose application was deferred because of the "lazy" startup option, until the
+ * real classes they target get initialized.
+ * <p/>
+ * When a target class is loaded, a call to {@link Startup#applyDeferredStartupSetup(String)} is inserted at the
+ * beginning of its static initializer. The deferred setup is then applied before any other code in the class gets
+ * executed, so that targets which are never used by the test run are neither loaded nor redefined.
+ */
+final class DeferredStartupSetups implements ClassFileTransformer
+{
+   static final DeferredStartupSetups INSTANCE = new DeferredStartupSetups();
+
+   private abstract static class DeferredSetup
+   {
+      final String description;
+      volatile ClassLoader loader;
+      DeferredSetup(String description) { this.description = description; }
+      abstract void apply();
+
+      /**
+       * Loads the given class through the class loader of the target class, as captured when the target got
+       * transformed, so that the setup applies to the same class which is being initialized.
+       */
+      final Class<?> loadClass(String className)
+      {
+         ClassLoader targetLoader = loader;
+
+         if (targetLoader == null) {
+            return ClassLoad.loadClass(className);
+         }
+
+         try {
+            return Class.forName(className, true, targetLoader);
+         }
+         catch (ClassNotFoundException ignore) {
+            throw new IllegalArgumentException("No class with name \"" + className + "\" found");
+         }
+      }
+   }
+
+   private final ConcurrentMap<String, List<DeferredSetup>> classesToSetups =
+      new ConcurrentHashMap<String, List<DeferredSetup>>();
+
+   private DeferredStartupSetups() {}
+
+   boolean deferStartupMock(final String mockClassName)
+   {
+      String realClassDesc = getRealClassFromMockClassAnnotation(mockClassName);
+
+      return realClassDesc != null && deferSetup(realClassDesc, new DeferredSetup("startup mock " + mockClassName) {
+         @Override
+         void apply()
+         {
+            Class<?> mockClass = loadClass(mockClassName);
+            new MockClassSetup(mockClass).setUpStartupMock();
+         }
+      });
+   }
+
+   private static String getRealClassFromMockClassAnnotation(String mockClassName)
+   {
+      final String[] realClassDesc = {null};
+
+      try {
+         ClassFile.readClass(mockClassName.replace('.', '/')).accept(new ClassVisitor() {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible)
+            {
+               if (!"Lmockit/MockClass;".equals(desc)) {
+                  return null;
+               }
+
+               return new AnnotationVisitor() {
+                  @Override
+                  public void visit(String name, Object value)
+                  {
+                     if ("realClass".equals(name)) {
+                        realClassDesc[0] = ((Type) value).getInternalName();
+                     }
+                  }
+               };
+            }
+         }, ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES);
+      }
+      catch (IOException ignore) {
+         return null;
+      }
+      catch (ClassFile.NotFoundException ignore) {
+         return null;
+      }
+
+      return realClassDesc[0];
+   }
+
+   boolean deferStubbing(final String realClassName, final String[] filters)
+   {
+      String realClassDesc = realClassName.replace('.', '/');
+
+      return deferSetup(realClassDesc, new DeferredSetup("stubbing") {
+         @Override
+         void apply()
+         {
+            Class<?> realClass = loadClass(realClassName);
+            new ClassStubbing(realClass, true, filters).stubOutAtStartup();
+         }
+      });
+   }
+
+   /**
+    * Registers the given setup to be applied when the target class gets initialized, after any other setups already
+    * deferred for the same class.
+    * <p/>
+    * The target class is checked for having been loaded only after registration, so that a class loaded concurrently
+    * is either seen here or seen by the transformer; in the first case, the setup is withdrawn and the caller applies
+    * it eagerly.
+    */
+   private boolean deferSetup(String realClassDesc, DeferredSetup setup)
+   {
+      if (!canBeDeferred(realClassDesc)) {
+         return false;
+      }
+
+      List<DeferredSetup> setups = classesToSetups.get(realClassDesc);
+
+      if (setups == null) {
+         List<DeferredSetup> newSetups = new CopyOnWriteArrayList<DeferredSetup>();
+         setups = classesToSetups.putIfAbsent(realClassDesc, newSetups);
+
+         if (setups == null) {
+            setups = newSetups;
+         }
+      }
+
+      setups.add(setup);
+
+      if (isAlreadyLoaded(realClassDesc.replace('/', '.'))) {
+         setups.remove(setup);
+
+         if (setups.isEmpty()) {
+            classesToSetups.remove(realClassDesc, setups);
+         }
+
+         return false;
+      }
+
+      return true;
+   }
+
+   /**
+    * A setup can only be deferred if the target class will be loaded by the same class loader as JMockit, so that its
+    * static initializer can call back into JMockit.
+    */
+   private static boolean canBeDeferred(String realClassDesc)
+   {
+      ClassLoader jmockitLoader = DeferredStartupSetups.class.getClassLoader();
+
+      if (jmockitLoader == null || realClassDesc.startsWith("java/") || realClassDesc.startsWith("javax/")) {
+         return false;
+      }
+
+      String classFileName = realClassDesc + ".class";
+      ClassLoader parentLoader = jmockitLoader.getParent();
+
+      if (
+         jmockitLoader.getResource(classFileName) == null ||
+         parentLoader != null && parentLoader.getResource(classFileName) != null
+      ) {
+         return false;
+      }
+
+      return true;
+   }
+
+   private static boolean isAlreadyLoaded(String className)
+   {
+      for (Class<?> loadedClass : Startup.instrumentation().getAllLoadedClasses()) {
+         if (className.equals(loadedClass.getName())) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   boolean hasDeferredSetups() { return !classesToSetups.isEmpty(); }
+
+   public byte[] transform(
+      ClassLoader loader, String classDesc, Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+      byte[] classfileBuffer)
+   {
+      if (classBeingRedefined != null || classDesc == null) {
+         return null;
+      }
+
+      List<DeferredSetup> setups = classesToSetups.get(classDesc);
+
+      if (setups == null || setups.isEmpty()) {
+         return null;
+      }
+
+      if (!isJMockitVisibleFrom(loader)) {
+         classesToSetups.remove(classDesc);
+
+         for (DeferredSetup setup : setups) {
+            System.out.println(
+               "JMockit: unable to defer " + setup.description + " for " + classDesc.replace('/', '.') +
+               ", since it was loaded by a class loader which can't access JMockit");
+         }
+
+         return null;
+      }
+
+      for (DeferredSetup setup : setups) {
+         setup.loader = loader;
+      }
+
+      ClassReader cr = new ClassReader(classfileBuffer);
+      ClassInitializationHook hook = new ClassInitializationHook(cr);
+      cr.accept(hook, 0);
+      byte[] modifiedClassfile = hook.toByteArray();
+
+      // Later redefinitions of the class must preserve the static initializer inserted here.
+      CachedClassfiles.addTransformedClassfile(loader, classDesc, modifiedClassfile);
+
+      return modifiedClassfile;
+   }
+
+   private static boolean isJMockitVisibleFrom(ClassLoader loader)
+   {
+      ClassLoader jmockitLoader = DeferredStartupSetups.class.getClassLoader();
+
+      for (ClassLoader cl = loader; cl != null; cl = cl.getParent()) {
+         if (cl == jmockitLoader) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   private static final class ClassInitializationHook extends ClassVisitor
+   {
+      private String classDesc;
+      private boolean staticInitializerFound;
+
+      ClassInitializationHook(ClassReader cr) { super(new ClassWriter(cr, ClassWriter.COMPUTE_MAXS)); }
+
+      @Override
+      public void visit(
+         int version, int access, String name, String signature, String superName, String[] interfaces)
+      {
+         super.visit(version, access, name, signature, superName, interfaces);
+         classDesc = name;
+      }
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions)
+      {
+         MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+
+         if (!"<clinit>".equals(name)) {
+            return mv;
+         }
+
+         staticInitializerFound = true;
+
+         return new MethodVisitor(mv) {
+            @Override
+            public void visitCode()
+            {
+               super.visitCode();
+               generateCallToApplyDeferredSetup(mv);
+            }
+         };
+      }
+
+      private void generateCallToApplyDeferredSetup(MethodVisitor mv)
+      {
+         mv.visitLdcInsn(classDesc);
+         mv.visitMethodInsn(
+            INVOKESTATIC, "mockit/internal/startup/Startup", "applyDeferredStartupSetup", "(Ljava/lang/String;)V");
+      }
+
+      @Override
+      public void visitEnd()
+      {
+         if (!staticInitializerFound) {
+            MethodVisitor mv = super.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+            mv.visitCode();
+            generateCallToApplyDeferredSetup(mv);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(1, 0);
+            mv.visitEnd();
+         }
+
+         super.visitEnd();
+      }
+   }
+
+   void applySetupFor(String classDesc)
+   {
+      List<DeferredSetup> setups = classesToSetups.remove(classDesc);
+
+      if (setups != null) {
+         for (DeferredSetup setup : setups) {
+            applySetup(classDesc, setup);
+         }
+      }
+   }
+
+   private static void applySetup(String classDesc, DeferredSetup setup)
+   {
+      long startTime = System.nanoTime();
+
+      try {
+         setup.apply();
+      }
+      catch (TypeNotPresentException ignore) {
+         // OK, ignores the setup if the necessary third-party class files are not in the classpath.
+      }
+      catch (RuntimeException e) {
+         // Failing here would break the static initialization of the real class, so the error is only reported.
+         e.printStackTrace();
+      }
+
+      if (StartupConfiguration.isStartupOptionSet("timed")) {
+         long elapsedTime = System.nanoTime() - startTime;
+         System.out.println(
+            "JMockit: applied deferred " + setup.description + " to " + classDesc.replace('/', '.') + " in " +
+            StartupTimer.inMillis(elapsedTime) + " ms");
+      }
+   }
+}
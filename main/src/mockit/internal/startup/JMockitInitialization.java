@@ -16,22 +16,51 @@ import mockit.internal.util.*;
 final class JMockitInitialization
 {
    private static final String[] NO_STUBBING_FILTERS = {};
+   private final StartupTimer timer;
    private final StartupConfiguration config;
+   private final DeferredStartupSetups deferredSetups;
 
-   JMockitInitialization() throws IOException { config = new StartupConfiguration(); }
+   JMockitInitialization() throws IOException
+   {
+      timer = new StartupTimer();
+      config = new StartupConfiguration();
+      deferredSetups = config.lazyInitialization ? DeferredStartupSetups.INSTANCE : null;
+      timer.endPhase("configuration");
+   }
 
    void initialize(boolean initializeTestNG)
    {
       MockingBridge.preventEventualClassLoadingConflicts();
+      timer.endPhase("preloading of internal classes");
+
+      if (deferredSetups != null) {
+         Startup.instrumentation().addTransformer(deferredSetups);
+      }
+
       loadInternalStartupMocksForJUnitIntegration();
+      timer.endPhase("JUnit integration");
 
       if (initializeTestNG) {
          try { setUpInternalStartupMock(MockTestNG.class); } catch (Error ignored) {}
+         timer.endPhase("TestNG integration");
       }
 
       loadExternalToolsIfAny();
+      timer.endPhase("external tools");
       stubOutClassesIfAny();
+      timer.endPhase("stubs");
       setUpStartupMocksIfAny();
+      timer.endPhase("startup mocks");
+
+      if (deferredSetups != null && !deferredSetups.hasDeferredSetups()) {
+         Startup.instrumentation().removeTransformer(deferredSetups);
+      }
+   }
+
+   void completeStartup(String lastPhase)
+   {
+      timer.endPhase(lastPhase);
+      timer.printBreakdownIfRequested("initialized");
    }
 
    private void loadInternalStartupMocksForJUnitIntegration()
@@ -53,6 +82,10 @@ final class JMockitInitialization
 
    private boolean setUpInternalStartupMock(Class<?> mockClass)
    {
+      if (deferredSetups != null && deferredSetups.deferStartupMock(mockClass.getName())) {
+         return true;
+      }
+
       try {
          new MockClassSetup(mockClass).setUpStartupMock();
          return true;
@@ -82,14 +115,22 @@ final class JMockitInitialization
             filters = stubbing.substring(p + 1).split("\\|");
          }
 
-         Class<?> realClass = ClassLoad.loadClass(realClassName.trim());
-         new ClassStubbing(realClass, true, filters).stubOutAtStartup();
+         realClassName = realClassName.trim();
+
+         if (deferredSetups == null || !deferredSetups.deferStubbing(realClassName, filters)) {
+            Class<?> realClass = ClassLoad.loadClass(realClassName);
+            new ClassStubbing(realClass, true, filters).stubOutAtStartup();
+         }
       }
    }
 
    private void setUpStartupMocksIfAny()
    {
       for (String mockClassName : config.mockClasses) {
+         if (deferredSetups != null && deferredSetups.deferStartupMock(mockClassName)) {
+            continue;
+         }
+
          Class<?> mockClass = ClassLoad.loadClass(mockClassName);
 
          //noinspection UnnecessaryFullyQualifiedName
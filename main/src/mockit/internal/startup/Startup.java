@@ -50,6 +50,10 @@ public final class Startup
     * The real classes can be specified in one of two ways: by providing a regular expression matching class names as
     * the tool arguments, or by annotating the external mock class with {@link mockit.MockClass}.</li>
     * </ol>
+    * The "jmockit-startup" system property accepts the following options, separated by commas or spaces: "lazy",
+    * which defers the application of startup mocks and stubs to the initialization of the real classes they target
+    * (if not loaded yet), so that test runs which never use such classes don't pay for them; and "timed", which prints
+    * a breakdown of the time spent in each phase of JMockit initialization.
     *
     * @param agentArgs not used
     * @param inst      the instrumentation service provided by the JVM
@@ -63,9 +67,11 @@ public final class Startup
    {
       if (instrumentation == null) {
          instrumentation = inst;
-         new JMockitInitialization().initialize(initializeTestNG);
+         JMockitInitialization initialization = new JMockitInitialization();
+         initialization.initialize(initializeTestNG);
          inst.addTransformer(CachedClassfiles.INSTANCE);
          inst.addTransformer(new ExpectationsTransformer(inst));
+         initialization.completeStartup("class file transformers");
       }
    }
 
@@ -171,12 +177,38 @@ public final class Startup
       }
    }
 
+   /**
+    * Only to be called from the static initializer of a class for which the application of a startup mock or stubbing
+    * was deferred, when the "lazy" startup option is used.
+    */
+   public static void applyDeferredStartupSetup(String classDesc)
+   {
+      DeferredStartupSetups.INSTANCE.applySetupFor(classDesc);
+   }
+
    public static void redefineMethods(Class<?> classToRedefine, byte[] modifiedClassfile)
    {
       redefineMethods(new ClassDefinition(classToRedefine, modifiedClassfile));
    }
 
    public static void redefineMethods(ClassDefinition... classDefs)
+   {
+      long startTime = RuntimeMetrics.startTiming();
+      redefineClasses(classDefs);
+      RuntimeMetrics.classesRedefined(classDefs, startTime);
+   }
+
+   /**
+    * Same as {@link #redefineMethods(Class, byte[])}, but for restoring the class to a previous definition.
+    */
+   public static void restoreMethods(Class<?> classToRestore, byte[] classfileToRestore)
+   {
+      long startTime = RuntimeMetrics.startTiming();
+      redefineClasses(new ClassDefinition(classToRestore, classfileToRestore));
+      RuntimeMetrics.classRestored(startTime);
+   }
+
+   private static void redefineClasses(ClassDefinition... classDefs)
    {
       CachedClassfiles.INSTANCE.setClassesBeingMocked(classDefs);
 
@@ -12,11 +12,13 @@ import java.util.Map.Entry;
 final class StartupConfiguration
 {
    private static final Iterable<String> NO_VALUES = Collections.emptyList();
+   private static final String STARTUP_OPTIONS_PROPERTY = "jmockit-startup";
 
    private final Properties config;
    final Iterable<String> externalTools;
    final Iterable<String> classesToBeStubbedOut;
    final Iterable<String> mockClasses;
+   final boolean lazyInitialization;
 
    StartupConfiguration() throws IOException
    {
@@ -28,6 +30,17 @@ final class StartupConfiguration
       externalTools = getMultiValuedProperty("jmockit-tools");
       classesToBeStubbedOut = getMultiValuedProperty("jmockit-stubs");
       mockClasses = getMultiValuedProperty("jmockit-mocks");
+      lazyInitialization = isStartupOptionSet("lazy");
+   }
+
+   /**
+    * Checks whether the given option (such as "lazy" or "timed") is one of the values of the "jmockit-startup" system
+    * property.
+    */
+   static boolean isStartupOptionSet(String option)
+   {
+      String startupOptions = System.getProperty(STARTUP_OPTIONS_PROPERTY);
+      return startupOptions != null && getValues(startupOptions).contains(option);
    }
 
    private void loadJMockitPropertiesFilesFromClasspath() throws IOException
@@ -93,6 +106,11 @@ final class StartupConfiguration
          return NO_VALUES;
       }
 
+      return getValues(commaOrSpaceSeparatedValues);
+   }
+
+   private static Set<String> getValues(String commaOrSpaceSeparatedValues)
+   {
       List<String> allValues = Arrays.asList(commaOrSpaceSeparatedValues.split("\\s*,\\s*|\\s+"));
       Set<String> uniqueValues = new HashSet<String>(allValues);
       uniqueValues.remove("");
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.startup;
+
+/**
+ * Measures the time spent in each successive phase of JMockit initialization, so that a breakdown can be printed when
+ * the "jmockit-startup" system property includes the "timed" option.
+ */
+final class StartupTimer
+{
+   private final StringBuilder breakdown;
+   private long phaseStartTime;
+   private long totalTime;
+
+   StartupTimer()
+   {
+      breakdown = new StringBuilder();
+      phaseStartTime = System.nanoTime();
+   }
+
+   void endPhase(String phaseName)
+   {
+      long now = System.nanoTime();
+      long elapsedTime = now - phaseStartTime;
+      totalTime += elapsedTime;
+      phaseStartTime = now;
+
+      breakdown.append("\n   ").append(phaseName).append(": ").append(inMillis(elapsedTime)).append(" ms");
+   }
+
+   static String inMillis(long nanos) { return String.valueOf(nanos / 100000 / 10.0); }
+
+   void printBreakdownIfRequested(String description)
+   {
+      if (StartupConfiguration.isStartupOptionSet("timed")) {
+         System.out.println("JMockit: " + description + " in " + inMillis(totalTime) + " ms" + breakdown);
+      }
+   }
+}
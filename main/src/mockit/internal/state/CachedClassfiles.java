@@ -118,6 +118,11 @@ public final class CachedClassfiles implements ClassFileTransformer
       return INSTANCE.findClassfile(loader, internalClassName);
    }
 
+   public static void addTransformedClassfile(ClassLoader loader, String internalClassName, byte[] classfile)
+   {
+      INSTANCE.addClassfile(loader, internalClassName, classfile);
+   }
+
    public static void addClassfile(Class<?> aClass, byte[] classfile)
    {
       INSTANCE.addClassfile(aClass.getClassLoader(), aClass.getName().replace('.', '/'), classfile);
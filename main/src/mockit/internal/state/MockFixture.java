@@ -57,6 +57,12 @@ public final class MockFixture
    private final Map<Class<?>, InstanceFactory> mockedTypesAndInstances =
       new IdentityHashMap<Class<?>, InstanceFactory>();
 
+   /**
+    * Incremented whenever an instance factory is registered or removed, so that callers caching the result of
+    * {@link #findInstanceFactory(Class)} can tell when it may no longer be valid.
+    */
+   private int instanceFactoriesVersion;
+
    // Methods to add/remove transformed/redefined classes /////////////////////////////////////////////////////////////
 
    public void addTransformedClass(String className, byte[] pretransformClassfile)
@@ -109,8 +115,11 @@ public final class MockFixture
    {
       registerMockedClass(mockedType);
       mockedTypesAndInstances.put(mockedType, mockedInstanceFactory);
+      instanceFactoriesVersion++;
    }
 
+   public int getInstanceFactoriesVersion() { return instanceFactoriesVersion; }
+
    public InstanceFactory findInstanceFactory(Class<?> mockedType)
    {
       if (mockedType.isInterface() || Modifier.isAbstract(mockedType.getModifiers())) {
@@ -153,7 +162,10 @@ public final class MockFixture
          reregisterNativeMethodsForRestoredClass(redefinedClass);
       }
 
-      mockedTypesAndInstances.remove(redefinedClass);
+      if (mockedTypesAndInstances.remove(redefinedClass) != null) {
+         instanceFactoriesVersion++;
+      }
+
       mockedClasses.remove(redefinedClass);
    }
 
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.state;
+
+import java.io.*;
+import java.lang.instrument.*;
+import java.util.*;
+import java.util.Map.*;
+
+/**
+ * Optional counters and timers for the costliest operations performed by JMockit during a test run: class
+ * redefinitions (per class), restorations of redefined classes, bytecode transformations, scans of loaded classes for
+ * implementations of captured types, and mocked calls handled by the record/replay engine; also counts the cascaded
+ * mock instances created.
+ * <p/>
+ * Activated with the "jmockit-metrics" system property, whose value is the path of the file where the collected data
+ * is written at JVM exit, as tab-separated values; if no path is specified, "jmockit-metrics.txt" in the working
+ * directory is used.
+ * A summary is also printed to standard output at the end of each test class.
+ * <p/>
+ * When not active, each hook method reduces to the test of a boolean constant.
+ */
+public final class RuntimeMetrics
+{
+   private static final String METRICS_PROPERTY = "jmockit-metrics";
+   private static final boolean ENABLED = System.getProperty(METRICS_PROPERTY) != null;
+
+   private static final class Timing
+   {
+      int count;
+      long totalNanos;
+
+      void add(long nanos)
+      {
+         count++;
+         totalNanos += nanos;
+      }
+
+      @Override
+      public String toString() { return count + " (" + totalNanos / 100000 / 10.0 + " ms)"; }
+   }
+
+   private static final int RESTORATIONS = 0;
+   private static final int TRANSFORMATIONS = 1;
+   private static final int CAPTURED_CLASS_SCANS = 2;
+   private static final int MOCKED_CALLS = 3;
+   private static final String[] METRIC_NAMES = {
+      "restorations", "transformations", "capturedClassScans", "mockedCalls"
+   };
+
+   private static final class Counters
+   {
+      final String scope;
+      final Map<String, Timing> redefinitionsPerClass = new TreeMap<String, Timing>();
+      final Timing redefinitions = new Timing();
+      final Timing[] timings = new Timing[METRIC_NAMES.length];
+      int tests;
+      int maxMockedCallsInATest;
+      int cascadedInstances;
+
+      Counters(String scope)
+      {
+         this.scope = scope;
+
+         for (int i = 0; i < timings.length; i++) {
+            timings[i] = new Timing();
+         }
+      }
+
+      void addRedefinition(String className, long nanos)
+      {
+         Timing timing = redefinitionsPerClass.get(className);
+
+         if (timing == null) {
+            timing = new Timing();
+            redefinitionsPerClass.put(className, timing);
+         }
+
+         timing.add(nanos);
+         redefinitions.add(nanos);
+      }
+
+      void addTest(int mockedCallsInTest)
+      {
+         tests++;
+
+         if (mockedCallsInTest > maxMockedCallsInATest) {
+            maxMockedCallsInATest = mockedCallsInTest;
+         }
+      }
+
+      String getSummary()
+      {
+         return
+            "JMockit metrics for " + scope + ": " + tests + " tests, redefinitions " + redefinitions +
+            ", restorations " + timings[RESTORATIONS] + ", transformations " + timings[TRANSFORMATIONS] +
+            ", captured class scans " + timings[CAPTURED_CLASS_SCANS] + ", mocked calls " + timings[MOCKED_CALLS] +
+            " (max per test: " + maxMockedCallsInATest + "), cascaded instances " + cascadedInstances;
+      }
+
+      void writeTo(PrintWriter out)
+      {
+         writeLine(out, "redefinitions", "", redefinitions);
+
+         for (int i = 0; i < timings.length; i++) {
+            writeLine(out, METRIC_NAMES[i], "", timings[i]);
+         }
+
+         out.println(scope + "\ttests\t\t" + tests + "\t0");
+         out.println(scope + "\tmaxMockedCallsPerTest\t\t" + maxMockedCallsInATest + "\t0");
+         out.println(scope + "\tcascadedInstances\t\t" + cascadedInstances + "\t0");
+
+         for (Entry<String, Timing> classAndTiming : redefinitionsPerClass.entrySet()) {
+            writeLine(out, "redefinition", classAndTiming.getKey(), classAndTiming.getValue());
+         }
+      }
+
+      private void writeLine(PrintWriter out, String metric, String item, Timing timing)
+      {
+         out.println(scope + '\t' + metric + '\t' + item + '\t' + timing.count + '\t' + timing.totalNanos);
+      }
+   }
+
+   private static final Counters TOTALS = new Counters("all tests");
+   private static final List<Counters> COMPLETED_TEST_CLASSES = new ArrayList<Counters>();
+   private static Counters currentTestClass;
+   private static int mockedCallsInCurrentTest;
+   private static boolean insideTest;
+
+   static
+   {
+      if (ENABLED) {
+         Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() { writeMetricsFile(); }
+         });
+      }
+   }
+
+   private RuntimeMetrics() {}
+
+   public static boolean isEnabled() { return ENABLED; }
+
+   /**
+    * Returns the start time to be passed to one of the other hook methods once the measured operation completes, or
+    * zero if metrics are not active.
+    */
+   public static long startTiming() { return ENABLED ? System.nanoTime() : 0L; }
+
+   public static void classesRedefined(ClassDefinition[] classDefs, long startTime)
+   {
+      if (ENABLED) {
+         // Classes redefined together share the elapsed time evenly.
+         long elapsedTimePerClass = (System.nanoTime() - startTime) / classDefs.length;
+
+         synchronized (TOTALS) {
+            for (ClassDefinition classDef : classDefs) {
+               String className = classDef.getDefinitionClass().getName();
+               TOTALS.addRedefinition(className, elapsedTimePerClass);
+
+               if (currentTestClass != null) {
+                  currentTestClass.addRedefinition(className, elapsedTimePerClass);
+               }
+            }
+         }
+      }
+   }
+
+   public static void classRestored(long startTime) { addTiming(RESTORATIONS, startTime); }
+   public static void classTransformed(long startTime) { addTiming(TRANSFORMATIONS, startTime); }
+   public static void capturedClassScanned(long startTime) { addTiming(CAPTURED_CLASS_SCANS, startTime); }
+
+   public static void mockedCallHandled(long startTime) { addTiming(MOCKED_CALLS, startTime); }
+
+   public static void cascadedInstanceCreated()
+   {
+      if (ENABLED) {
+         synchronized (TOTALS) {
+            TOTALS.cascadedInstances++;
+
+            if (currentTestClass != null) {
+               currentTestClass.cascadedInstances++;
+            }
+         }
+      }
+   }
+
+   private static void addTiming(int metric, long startTime)
+   {
+      if (ENABLED) {
+         long elapsedTime = System.nanoTime() - startTime;
+
+         synchronized (TOTALS) {
+            TOTALS.timings[metric].add(elapsedTime);
+
+            if (currentTestClass != null) {
+               currentTestClass.timings[metric].add(elapsedTime);
+            }
+
+            if (metric == MOCKED_CALLS) {
+               mockedCallsInCurrentTest++;
+            }
+         }
+      }
+   }
+
+   static void testStarting()
+   {
+      if (ENABLED) {
+         synchronized (TOTALS) {
+            endCurrentTest();
+            insideTest = true;
+         }
+      }
+   }
+
+   private static void endCurrentTest()
+   {
+      if (insideTest) {
+         TOTALS.addTest(mockedCallsInCurrentTest);
+
+         if (currentTestClass != null) {
+            currentTestClass.addTest(mockedCallsInCurrentTest);
+         }
+      }
+
+      insideTest = false;
+      mockedCallsInCurrentTest = 0;
+   }
+
+   /**
+    * Starts counting for a new test class, before the mocks of the previous one are cleaned up and those of the new one
+    * are set up, ending the current test class if not already ended.
+    */
+   public static void testClassStarting(Class<?> testClass)
+   {
+      if (ENABLED) {
+         synchronized (TOTALS) {
+            endCurrentTestClass();
+            currentTestClass = new Counters(testClass.getName());
+         }
+      }
+   }
+
+   /**
+    * Ends the current test class, if any, printing its summary; costs incurred until the next test class starts are
+    * only included in the totals.
+    */
+   public static void testClassEnded()
+   {
+      if (ENABLED) {
+         synchronized (TOTALS) {
+            endCurrentTestClass();
+         }
+      }
+   }
+
+   private static void endCurrentTestClass()
+   {
+      endCurrentTest();
+
+      if (currentTestClass != null) {
+         System.out.println(currentTestClass.getSummary());
+         COMPLETED_TEST_CLASSES.add(currentTestClass);
+         currentTestClass = null;
+      }
+   }
+
+   private static void writeMetricsFile()
+   {
+      String outputPath;
+
+      synchronized (TOTALS) {
+         endCurrentTestClass();
+         System.out.println(TOTALS.getSummary());
+         outputPath = System.getProperty(METRICS_PROPERTY);
+      }
+
+      if (outputPath.length() == 0 || "true".equals(outputPath)) {
+         outputPath = "jmockit-metrics.txt";
+      }
+
+      try {
+         PrintWriter out = new PrintWriter(new FileWriter(outputPath));
+
+         try {
+            out.println("# scope\tmetric\titem\tcount\ttotalNanos");
+
+            synchronized (TOTALS) {
+               for (Counters testClassCounters : COMPLETED_TEST_CLASSES) {
+                  testClassCounters.writeTo(out);
+               }
+
+               TOTALS.writeTo(out);
+            }
+         }
+         finally {
+            out.close();
+         }
+      }
+      catch (IOException e) {
+         System.out.println("JMockit: unable to write metrics to " + outputPath + ": " + e);
+      }
+   }
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.state;
+
+import java.lang.reflect.*;
+
+/**
+ * Notified by the test runner integrations at the boundaries between tests, so that tools which run together with the
+ * tests (such as JMockit Coverage) can act on them.
+ */
+public interface TestBoundaryListener
+{
+   /**
+    * Called in the thread which executed the test, right after the test finishes (but before any tear down methods).
+    *
+    * @param testClass the class of the test that finished, or {@code null} if unknown
+    * @param testMethod the test method that finished, or {@code null} if unknown
+    */
+   void testFinished(Class<?> testClass, Method testMethod);
+}
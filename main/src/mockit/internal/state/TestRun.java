@@ -4,7 +4,9 @@
  */
 package mockit.internal.state;
 
+import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static java.util.Collections.*;
 
@@ -72,6 +74,9 @@ public final class TestRun
 
    // Used only by the Coverage tool:
    private int testId;
+   private static final ThreadLocal<Method> runningTestMethod = new ThreadLocal<Method>();
+   private static final List<TestBoundaryListener> testBoundaryListeners =
+      new CopyOnWriteArrayList<TestBoundaryListener>();
 
    private Class<?> currentTestClass;
    private Object currentTestInstance;
@@ -95,6 +100,11 @@ public final class TestRun
    @SuppressWarnings("UnusedDeclaration")
    public static int getTestId() { return getInstance().testId; }
 
+   /**
+    * Returns the test method currently executing in the calling thread, if any.
+    */
+   public static Method getRunningTestMethod() { return runningTestMethod.get(); }
+
    public static SavePoint getSavePointForTestMethod() { return getInstance().savePointForTestMethod; }
    public static SavePoint getSavePointForTestClass() { return getInstance().savePointForTestClass; }
 
@@ -145,6 +155,7 @@ public final class TestRun
 
    public static void prepareForNextTest()
    {
+      RuntimeMetrics.testStarting();
       TestRun testRun = getInstance();
       testRun.testId++;
       testRun.executingTest.setRecordAndReplay(null);
@@ -168,6 +179,10 @@ public final class TestRun
       getInstance().currentTestInstance = testInstance;
    }
 
+   public static void setRunningTestMethod(Method testMethod) { runningTestMethod.set(testMethod); }
+
+   public static void addTestBoundaryListener(TestBoundaryListener listener) { testBoundaryListeners.add(listener); }
+
    public static void setSavePointForTestClass(SavePoint savePoint)
    {
       getInstance().savePointForTestClass = savePoint;
@@ -180,9 +195,15 @@ public final class TestRun
 
    public static void finishCurrentTestExecution(boolean clearSharedMocks)
    {
+      Method testMethod = runningTestMethod.get();
+      runningTestMethod.set(null);
       TestRun testRun = getInstance();
       testRun.savePointForTestMethod = null;
       testRun.executingTest.finishExecution(clearSharedMocks);
+
+      for (TestBoundaryListener listener : testBoundaryListeners) {
+         listener.testFinished(testRun.currentTestClass, testMethod);
+      }
    }
 
    // Methods to be called only from generated bytecode or from the MockingBridge /////////////////////////////////////
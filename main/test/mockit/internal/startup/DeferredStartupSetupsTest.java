@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.startup;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import mockit.*;
+
+public final class DeferredStartupSetupsTest
+{
+   private static final String TEST_CLASS_NAME = DeferredStartupSetupsTest.class.getName();
+
+   private final DeferredStartupSetups deferredSetups = DeferredStartupSetups.INSTANCE;
+
+   @Before
+   public void addTransformerForDeferredSetups()
+   {
+      Startup.instrumentation().addTransformer(deferredSetups);
+   }
+
+   @After
+   public void removeTransformerForDeferredSetups()
+   {
+      Startup.instrumentation().removeTransformer(deferredSetups);
+   }
+
+   // Real classes to be mocked lazily are only referenced by name until the deferred setups for them are registered,
+   // so that they don't get loaded too soon. The one to be mocked eagerly is loaded with the test class, before the
+   // classes already loaded get listed.
+
+   public static final class EagerlyMocked
+   {
+      public static int getValue() { return 1; }
+   }
+
+   static { assertEquals(1, EagerlyMocked.getValue()); }
+
+   @MockClass(realClass = EagerlyMocked.class)
+   public static final class MockForEagerlyMocked
+   {
+      @Mock public int getValue() { return 2; }
+   }
+
+   @Test
+   public void applyStartupMockEagerlyWhenRealClassIsAlreadyLoaded()
+   {
+      assertFalse(deferredSetups.deferStartupMock(TEST_CLASS_NAME + "$MockForEagerlyMocked"));
+
+      Mockit.setUpStartupMocks(MockForEagerlyMocked.class);
+      assertEquals(2, EagerlyMocked.getValue());
+   }
+
+   public static final class LazilyMocked
+   {
+      public static int getValue() { return 1; }
+   }
+
+   @MockClass(realClass = LazilyMocked.class)
+   public static final class MockForLazilyMocked
+   {
+      @Mock public int getValue() { return 2; }
+   }
+
+   @Test
+   public void applyStartupMockLazilyWhenRealClassGetsInitialized() throws Exception
+   {
+      assertTrue(deferredSetups.deferStartupMock(TEST_CLASS_NAME + "$MockForLazilyMocked"));
+      assertTrue(deferredSetups.hasDeferredSetups());
+
+      Class<?> realClass = Class.forName(TEST_CLASS_NAME + "$LazilyMocked");
+
+      assertEquals(2, realClass.getMethod("getValue").invoke(null));
+   }
+
+   public static final class LazilyMockedTwice
+   {
+      public static int getValue() { return 1; }
+      public static String getName() { return "real"; }
+   }
+
+   @MockClass(realClass = LazilyMockedTwice.class)
+   public static final class FirstMockForLazilyMockedTwice
+   {
+      @Mock public int getValue() { return 2; }
+   }
+
+   @MockClass(realClass = LazilyMockedTwice.class)
+   public static final class SecondMockForLazilyMockedTwice
+   {
+      @Mock public String getName() { return "mock"; }
+   }
+
+   @Test
+   public void applyAllStartupMocksDeferredForTheSameRealClass() throws Exception
+   {
+      assertTrue(deferredSetups.deferStartupMock(TEST_CLASS_NAME + "$FirstMockForLazilyMockedTwice"));
+      assertTrue(deferredSetups.deferStartupMock(TEST_CLASS_NAME + "$SecondMockForLazilyMockedTwice"));
+
+      Class<?> realClass = Class.forName(TEST_CLASS_NAME + "$LazilyMockedTwice");
+
+      assertEquals(2, realClass.getMethod("getValue").invoke(null));
+      assertEquals("mock", realClass.getMethod("getName").invoke(null));
+   }
+
+   public static final class LazilyMockedBeforeOtherIsLoaded
+   {
+      public static int getValue() { return 1; }
+   }
+
+   @MockClass(realClass = LazilyMockedBeforeOtherIsLoaded.class)
+   public static final class MockForLazilyMockedBeforeOtherIsLoaded
+   {
+      @Mock public int getValue() { return 2; }
+   }
+
+   public static final class LoadedAfterOtherIsDeferred
+   {
+      public static int getValue() { return 1; }
+   }
+
+   @MockClass(realClass = LoadedAfterOtherIsDeferred.class)
+   public static final class MockForLoadedAfterOtherIsDeferred
+   {
+      @Mock public int getValue() { return 2; }
+   }
+
+   @Test
+   public void doNotDeferStartupMockForRealClassLoadedAfterEarlierDeferral() throws Exception
+   {
+      assertTrue(deferredSetups.deferStartupMock(TEST_CLASS_NAME + "$MockForLazilyMockedBeforeOtherIsLoaded"));
+      Class.forName(TEST_CLASS_NAME + "$LoadedAfterOtherIsDeferred");
+
+      assertFalse(deferredSetups.deferStartupMock(TEST_CLASS_NAME + "$MockForLoadedAfterOtherIsDeferred"));
+
+      Class<?> lazilyMocked = Class.forName(TEST_CLASS_NAME + "$LazilyMockedBeforeOtherIsLoaded");
+      assertEquals(2, lazilyMocked.getMethod("getValue").invoke(null));
+   }
+
+   public static final class IsolatedLazilyMocked
+   {
+      public static int getValue() { return 1; }
+   }
+
+   @MockClass(realClass = IsolatedLazilyMocked.class)
+   public static final class IsolatedMockForLazilyMocked
+   {
+      @Mock public int getValue() { return 2; }
+   }
+
+   @Test
+   public void applyStartupMockLazilyToRealClassLoadedByChildClassLoader() throws Exception
+   {
+      ClassLoader childLoader = new IsolatingClassLoader(TEST_CLASS_NAME + "$Isolated");
+
+      assertTrue(deferredSetups.deferStartupMock(TEST_CLASS_NAME + "$IsolatedMockForLazilyMocked"));
+
+      Class<?> realClass = Class.forName(TEST_CLASS_NAME + "$IsolatedLazilyMocked", true, childLoader);
+
+      assertSame(childLoader, realClass.getClassLoader());
+      assertEquals(2, realClass.getMethod("getValue").invoke(null));
+   }
+
+   /**
+    * Defines its own copy of the classes having the given name prefix, rather than delegating to the parent loader.
+    */
+   static final class IsolatingClassLoader extends ClassLoader
+   {
+      private final String classNamePrefix;
+
+      IsolatingClassLoader(String classNamePrefix)
+      {
+         super(DeferredStartupSetupsTest.class.getClassLoader());
+         this.classNamePrefix = classNamePrefix;
+      }
+
+      @Override
+      protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+      {
+         if (!name.startsWith(classNamePrefix)) {
+            return super.loadClass(name, resolve);
+         }
+
+         Class<?> loadedClass = findLoadedClass(name);
+
+         if (loadedClass == null) {
+            byte[] classfile = readClassfile(name);
+            loadedClass = defineClass(name, classfile, 0, classfile.length);
+         }
+
+         return loadedClass;
+      }
+
+      private byte[] readClassfile(String className) throws ClassNotFoundException
+      {
+         InputStream input = getParent().getResourceAsStream(className.replace('.', '/') + ".class");
+
+         if (input == null) {
+            throw new ClassNotFoundException(className);
+         }
+
+         try {
+            ByteArrayOutputStream classfile = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+
+            while ((bytesRead = input.read(buffer)) > 0) {
+               classfile.write(buffer, 0, bytesRead);
+            }
+
+            return classfile.toByteArray();
+         }
+         catch (IOException e) {
+            throw new ClassNotFoundException(className, e);
+         }
+         finally {
+            try { input.close(); } catch (IOException ignore) {}
+         }
+      }
+   }
+}